@@ -0,0 +1,75 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import io.github.jedvardsson.fuelcost.account.AccountName;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary page token codec with the legacy Smile format. For the keys below the binary tokens
+ * are 7 and 14 characters, the Smile tokens 28 and 48.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageTokensBenchmark {
+
+    private final AccountName accountName = new AccountName(123456L);
+    private final VehicleName vehicleName = new VehicleName(123456L, 987654321L);
+    private final String accountToken = PageTokens.format(accountName, AccountName.PAGE_TOKEN_CODEC);
+    private final String vehicleToken = PageTokens.format(vehicleName, VehicleName.PAGE_TOKEN_CODEC);
+    private final String accountSmileToken = PageTokens.format(accountName);
+    private final String vehicleSmileToken = PageTokens.format(vehicleName);
+
+    @Benchmark
+    public String formatAccountName() {
+        return PageTokens.format(accountName, AccountName.PAGE_TOKEN_CODEC);
+    }
+
+    @Benchmark
+    public String formatVehicleName() {
+        return PageTokens.format(vehicleName, VehicleName.PAGE_TOKEN_CODEC);
+    }
+
+    @Benchmark
+    public AccountName parseAccountName() {
+        return PageTokens.parseOptional(accountToken, AccountName.PAGE_TOKEN_CODEC).orElseThrow();
+    }
+
+    @Benchmark
+    public VehicleName parseVehicleName() {
+        return PageTokens.parseOptional(vehicleToken, VehicleName.PAGE_TOKEN_CODEC).orElseThrow();
+    }
+
+    @Benchmark
+    public String formatAccountNameSmile() {
+        return PageTokens.format(accountName);
+    }
+
+    @Benchmark
+    public String formatVehicleNameSmile() {
+        return PageTokens.format(vehicleName);
+    }
+
+    @Benchmark
+    public AccountName parseAccountNameSmile() {
+        return PageTokens.parseOptional(accountSmileToken, AccountName.class).orElseThrow();
+    }
+
+    @Benchmark
+    public VehicleName parseVehicleNameSmile() {
+        return PageTokens.parseOptional(vehicleSmileToken, VehicleName.class).orElseThrow();
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatchedPathTemplateBenchmark {
+
+    private final PatchedPathTemplate template = PatchedPathTemplate.create("accounts/{account}/vehicles/{vehicle}");
+    private final CompiledPathTemplate compiled = template.compile();
+    private final String path = "accounts/123456/vehicles/987654321";
+
+    @Benchmark
+    public Map<String, String> parse() {
+        return template.parse(path);
+    }
+
+    @Benchmark
+    public String instantiate() {
+        return template.instantiate("account", "123456", "vehicle", "987654321");
+    }
+
+    @Benchmark
+    public long parseCompiled() {
+        return compiled.parse(path, (accountId, vehicleId) -> accountId ^ vehicleId);
+    }
+
+    @Benchmark
+    public String formatCompiled() {
+        return compiled.format(123456L, 987654321L);
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionEtagBenchmark {
+
+    @Param({"1", "123456789"})
+    private long version;
+
+    private String etag;
+
+    @Setup
+    public void setup() {
+        etag = VersionEtag.format(version);
+    }
+
+    @Benchmark
+    public String format() {
+        return VersionEtag.format(version);
+    }
+
+    @Benchmark
+    public VersionEtag parse() {
+        return VersionEtag.parse(etag);
+    }
+
+    @Benchmark
+    public Long tryParseVersion() {
+        return VersionEtag.tryParseVersion(etag);
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import com.google.protobuf.Timestamp;
+import com.google.type.Date;
+import org.jdbi.v3.core.argument.Argument;
+import org.jdbi.v3.core.mapper.ColumnMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures the Jdbi codecs registered in {@link DbConfig}. The JDBC objects are stubbed with dynamic proxies
+ * returning constant values, so the numbers include a small constant proxy overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbConfigCodecBenchmark {
+
+    private final java.sql.Timestamp sqlTimestamp = java.sql.Timestamp.from(Instant.parse("2024-04-01T12:34:56.789Z"));
+    private final LocalDate localDate = LocalDate.of(2024, 4, 1);
+
+    private final ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getTimestamp" -> sqlTimestamp;
+                case "getObject" -> localDate;
+                case "wasNull" -> false;
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+
+    private final PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+            (proxy, method, args) -> null);
+
+    private final ColumnMapper<Timestamp> timestampMapper = new DbConfig.ProtoTimestampJdbiCodec().getColumnMapper();
+    private final Function<Timestamp, Argument> timestampArgument = new DbConfig.ProtoTimestampJdbiCodec().getArgumentFunction();
+    private final ColumnMapper<Date> dateMapper = new DbConfig.ProtoDateJdbiCodec().getColumnMapper();
+    private final Function<Date, Argument> dateArgument = new DbConfig.ProtoDateJdbiCodec().getArgumentFunction();
+
+    private final Timestamp timestamp = Timestamp.newBuilder().setSeconds(1711974896L).setNanos(789_000_000).build();
+    private final Date date = Date.newBuilder().setYear(2024).setMonth(4).setDay(1).build();
+
+    @Benchmark
+    public Timestamp mapTimestamp() throws SQLException {
+        return timestampMapper.map(resultSet, 1, null);
+    }
+
+    @Benchmark
+    public void bindTimestamp(Blackhole bh) throws SQLException {
+        timestampArgument.apply(timestamp).apply(1, statement, null);
+        bh.consume(statement);
+    }
+
+    @Benchmark
+    public Date mapDate() throws SQLException {
+        return dateMapper.map(resultSet, 1, null);
+    }
+
+    @Benchmark
+    public void bindDate(Blackhole bh) throws SQLException {
+        dateArgument.apply(date).apply(1, statement, null);
+        bh.consume(statement);
+    }
+}
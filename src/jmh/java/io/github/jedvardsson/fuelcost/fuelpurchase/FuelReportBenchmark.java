@@ -0,0 +1,95 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Computing the account fuel report of {@code vehicleCount} vehicles with {@code purchasesPerVehicle} purchases each,
+ * once the purchases are loaded: {@link FuelReport} over {@link FuelReportColumns}, and a naive implementation over
+ * an object per purchase grouped by vehicle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuelReportBenchmark {
+
+    @Param({"2000"})
+    private int vehicleCount;
+
+    @Param({"1000"})
+    private int purchasesPerVehicle;
+
+    private FuelReportColumns columns;
+    private List<Purchase> purchases;
+
+    record Purchase(Long vehicleId, Double volumeLiters, Long priceMicros, Double odometerKm) {
+    }
+
+    record VehicleTotals(long vehicleId, long purchaseCount, double volumeLiters, long priceMicros, double distanceKm,
+                         double usedVolumeLiters, long usedPriceMicros) {
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        columns = new FuelReportColumns();
+        purchases = new ArrayList<>();
+        for (long v = 1; v <= vehicleCount; v++) {
+            double odometer = 10000;
+            for (int i = 0; i < purchasesPerVehicle; i++) {
+                odometer += 300 + random.nextInt(400);
+                double volume = 30 + random.nextInt(30);
+                long price = (long) (volume * 20_000_000);
+                double reading = random.nextInt(10) == 0 ? Double.NaN : odometer;
+                columns.add(v, volume, price, reading);
+                purchases.add(new Purchase(v, volume, price, Double.isNaN(reading) ? null : reading));
+            }
+        }
+    }
+
+    @Benchmark
+    public FuelReport columnar() {
+        return FuelReport.compute(columns);
+    }
+
+    @Benchmark
+    public List<VehicleTotals> naive() {
+        Map<Long, List<Purchase>> byVehicle = purchases.stream().collect(Collectors.groupingBy(Purchase::vehicleId, TreeMap::new, Collectors.toList()));
+        List<VehicleTotals> totals = new ArrayList<>();
+        for (Map.Entry<Long, List<Purchase>> e : byVehicle.entrySet()) {
+            List<Purchase> p = e.getValue();
+            List<Purchase> readings = p.stream().filter(x -> x.odometerKm() != null).toList();
+            List<Purchase> used = readings.isEmpty() ? List.of() : readings.subList(1, readings.size());
+            totals.add(new VehicleTotals(
+                    e.getKey(),
+                    p.size(),
+                    p.stream().mapToDouble(Purchase::volumeLiters).sum(),
+                    p.stream().mapToLong(Purchase::priceMicros).sum(),
+                    readings.isEmpty() ? 0 : Math.max(0, readings.getLast().odometerKm() - readings.getFirst().odometerKm()),
+                    used.stream().mapToDouble(Purchase::volumeLiters).sum(),
+                    used.stream().mapToLong(Purchase::priceMicros).sum()));
+        }
+        return totals;
+    }
+}
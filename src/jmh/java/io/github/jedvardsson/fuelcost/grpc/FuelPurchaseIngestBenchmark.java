@@ -0,0 +1,111 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import com.google.protobuf.util.Timestamps;
+import com.google.type.Money;
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.AccountServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
+import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchase;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchaseServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesResponse;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleServiceGrpc;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to ingest {@link #PURCHASE_COUNT} fuel purchases of one vehicle in a single {@code IngestFuelPurchases} call,
+ * sent {@link #PURCHASES_PER_MESSAGE} per message and written in COPY batches of {@code batchSize}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FuelPurchaseIngestBenchmark {
+
+    private static final int PURCHASE_COUNT = 100000;
+    private static final int PURCHASES_PER_MESSAGE = 100;
+
+    @Param({"1000", "5000"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private FuelPurchaseServiceGrpc.FuelPurchaseServiceStub fuelPurchaseStub;
+    private IngestFuelPurchasesRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(ApplicationTestConfig.class)
+                .profiles("test")
+                .properties("fuel-purchase.ingest.batch-size=" + batchSize)
+                .run();
+        GrpcChannelWrapper channelWrapper = context.getBean(GrpcChannelWrapper.class);
+        AccountServiceGrpc.AccountServiceBlockingStub accountStub = AccountServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+        VehicleServiceGrpc.VehicleServiceBlockingStub vehicleStub = VehicleServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+        fuelPurchaseStub = FuelPurchaseServiceGrpc.newStub(channelWrapper.getChannel());
+
+        Account account = accountStub.createAccount(CreateAccountRequest.newBuilder().setAccount(Account.getDefaultInstance()).build());
+        Vehicle vehicle = vehicleStub.createVehicle(CreateVehicleRequest.newBuilder().setParent(account.getName()).setVehicle(Vehicle.getDefaultInstance()).build());
+        IngestFuelPurchasesRequest.Builder builder = IngestFuelPurchasesRequest.newBuilder().setParent(vehicle.getName());
+        for (int i = 0; i < PURCHASES_PER_MESSAGE; i++) {
+            builder.addFuelPurchases(FuelPurchase.newBuilder()
+                    .setPurchaseTime(Timestamps.fromSeconds(1_700_000_000L + i))
+                    .setVolumeLiters(40 + i % 10)
+                    .setPrice(Money.newBuilder().setCurrencyCode("EUR").setUnits(70 + i % 10))
+                    .setOdometerKm(10000 + i));
+        }
+        request = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public IngestFuelPurchasesResponse ingestFuelPurchases() throws Exception {
+        CompletableFuture<IngestFuelPurchasesResponse> response = new CompletableFuture<>();
+        StreamObserver<IngestFuelPurchasesRequest> requests = fuelPurchaseStub.ingestFuelPurchases(new StreamObserver<>() {
+            @Override
+            public void onNext(IngestFuelPurchasesResponse value) {
+                response.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                response.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        for (int i = 0; i < PURCHASE_COUNT; i += PURCHASES_PER_MESSAGE) {
+            requests.onNext(request);
+        }
+        requests.onCompleted();
+        return response.get();
+    }
+}
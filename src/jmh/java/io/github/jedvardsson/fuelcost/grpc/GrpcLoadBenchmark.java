@@ -0,0 +1,104 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.AccountServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
+import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.GetVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleServiceGrpc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent load over the in-process transport, one benchmark per {@link GrpcProperties.ExecutorMode}.
+ * Reports the latency distribution (p99 included) per call; throughput is {@code threads / mean}.
+ * The peak number of live platform threads during the run is printed on tear down. With {@code readBatching},
+ * concurrent calls are batched into one query, see {@code db.read-batching}; run with {@code -t 1} to compare
+ * the latency of a lone caller.
+ * <p>
+ * Like {@link GrpcServiceBenchmark} this runs against a Testcontainers Postgres unless the datasource
+ * is overridden.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class GrpcLoadBenchmark {
+
+    @Param({"cached", "fixed", "virtual"})
+    private String executor;
+
+    @Param({"false", "true"})
+    private boolean readBatching;
+
+    @Param({"100"})
+    private int vehicleCount;
+
+    private ConfigurableApplicationContext context;
+    private VehicleServiceGrpc.VehicleServiceBlockingStub vehicleStub;
+    private GetVehicleRequest[] getVehicleRequests;
+    private ThreadMXBean threadMXBean;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(ApplicationTestConfig.class)
+                .profiles("test")
+                .properties("grpc.executor.mode=" + executor, "db.read-batching.enabled=" + readBatching)
+                .run();
+        GrpcChannelWrapper channelWrapper = context.getBean(GrpcChannelWrapper.class);
+        AccountServiceGrpc.AccountServiceBlockingStub accountStub = AccountServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+        vehicleStub = VehicleServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+
+        Account account = accountStub.createAccount(CreateAccountRequest.newBuilder().setAccount(Account.getDefaultInstance()).build());
+        getVehicleRequests = new GetVehicleRequest[vehicleCount];
+        for (int i = 0; i < vehicleCount; i++) {
+            Vehicle vehicle = vehicleStub.createVehicle(CreateVehicleRequest.newBuilder()
+                    .setParent(account.getName())
+                    .setVehicle(Vehicle.newBuilder().setDisplayName("vehicle " + i))
+                    .build());
+            getVehicleRequests[i] = GetVehicleRequest.newBuilder().setName(vehicle.getName()).build();
+        }
+        threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nexecutor=%s readBatching=%s peak platform threads=%d%n", executor, readBatching, threadMXBean.getPeakThreadCount());
+        context.close();
+    }
+
+    @Benchmark
+    public Vehicle getVehicle(Cursor cursor) {
+        GetVehicleRequest request = getVehicleRequests[cursor.next++ % getVehicleRequests.length];
+        return vehicleStub.getVehicle(request);
+    }
+}
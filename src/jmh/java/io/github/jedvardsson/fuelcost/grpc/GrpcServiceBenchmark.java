@@ -0,0 +1,121 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.AccountServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
+import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.GetAccountRequest;
+import io.github.jedvardsson.fuelcost.v1.GetVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.ListVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.ListVehiclesResponse;
+import io.github.jedvardsson.fuelcost.v1.StreamVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleServiceGrpc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of the gRPC services over the in-process transport created by {@link GrpcServer}
+ * (port -1). Boots the application with the {@code test} profile, i.e. against a Testcontainers Postgres,
+ * unless the datasource is overridden, e.g. with {@code SPRING_DATASOURCE_URL}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrpcServiceBenchmark {
+
+    @Param({"100", "1000"})
+    private int vehicleCount;
+
+    @Param({"false", "true"})
+    private boolean responseCache;
+
+    private ConfigurableApplicationContext context;
+    private AccountServiceGrpc.AccountServiceBlockingStub accountStub;
+    private VehicleServiceGrpc.VehicleServiceBlockingStub vehicleStub;
+    private GetAccountRequest getAccountRequest;
+    private GetVehicleRequest getVehicleRequest;
+    private GetVehicleRequest getVehicleNotModifiedRequest;
+    private ListVehiclesRequest listVehiclesRequest;
+    private StreamVehiclesRequest streamVehiclesRequest;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(ApplicationTestConfig.class)
+                .profiles("test")
+                // the test profile uses a tiny fetch size to exercise multiple fetches
+                .properties("db.stream-fetch-size=1000", "grpc.response-cache.enabled=" + responseCache)
+                .run();
+        GrpcChannelWrapper channelWrapper = context.getBean(GrpcChannelWrapper.class);
+        accountStub = AccountServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+        vehicleStub = VehicleServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+
+        Account account = accountStub.createAccount(CreateAccountRequest.newBuilder().setAccount(Account.getDefaultInstance()).build());
+        Vehicle vehicle = null;
+        for (int i = 0; i < vehicleCount; i++) {
+            vehicle = vehicleStub.createVehicle(CreateVehicleRequest.newBuilder()
+                    .setParent(account.getName())
+                    .setVehicle(Vehicle.newBuilder().setDisplayName("vehicle " + i))
+                    .build());
+        }
+        getAccountRequest = GetAccountRequest.newBuilder().setName(account.getName()).build();
+        getVehicleRequest = GetVehicleRequest.newBuilder().setName(vehicle.getName()).build();
+        getVehicleNotModifiedRequest = getVehicleRequest.toBuilder().setIfNoneMatch(vehicle.getEtag()).build();
+        listVehiclesRequest = ListVehiclesRequest.newBuilder().setParent(account.getName()).setPageSize(vehicleCount).build();
+        streamVehiclesRequest = StreamVehiclesRequest.newBuilder().setParent(account.getName()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Account getAccount() {
+        return accountStub.getAccount(getAccountRequest);
+    }
+
+    @Benchmark
+    public Vehicle getVehicle() {
+        return vehicleStub.getVehicle(getVehicleRequest);
+    }
+
+    @Benchmark
+    public Vehicle getVehicleNotModified() {
+        return vehicleStub.getVehicle(getVehicleNotModifiedRequest);
+    }
+
+    @Benchmark
+    public ListVehiclesResponse listVehicles() {
+        return vehicleStub.listVehicles(listVehiclesRequest);
+    }
+
+    @Benchmark
+    public void streamVehicles(Blackhole blackhole) {
+        Iterator<Vehicle> vehicles = vehicleStub.streamVehicles(streamVehiclesRequest);
+        while (vehicles.hasNext()) {
+            blackhole.consume(vehicles.next());
+        }
+    }
+}
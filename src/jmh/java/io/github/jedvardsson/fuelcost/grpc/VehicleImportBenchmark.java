@@ -0,0 +1,92 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.AccountServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.BatchCreateVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
+import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleServiceGrpc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to import {@link #VEHICLE_COUNT} vehicles into a new account, one {@code CreateVehicle} call per vehicle
+ * versus {@code BatchCreateVehicles} calls of {@code batchSize} vehicles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VehicleImportBenchmark {
+
+    private static final int VEHICLE_COUNT = 10000;
+
+    @Param({"1000", "10000"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private AccountServiceGrpc.AccountServiceBlockingStub accountStub;
+    private VehicleServiceGrpc.VehicleServiceBlockingStub vehicleStub;
+    private String parent;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(ApplicationTestConfig.class)
+                .profiles("test")
+                .run();
+        GrpcChannelWrapper channelWrapper = context.getBean(GrpcChannelWrapper.class);
+        accountStub = AccountServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+        vehicleStub = VehicleServiceGrpc.newBlockingStub(channelWrapper.getChannel());
+    }
+
+    @Setup(Level.Iteration)
+    public void createAccount() {
+        parent = accountStub.createAccount(CreateAccountRequest.newBuilder().setAccount(Account.getDefaultInstance()).build()).getName();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void createVehicle(Blackhole blackhole) {
+        for (int i = 0; i < VEHICLE_COUNT; i++) {
+            blackhole.consume(vehicleStub.createVehicle(CreateVehicleRequest.newBuilder()
+                    .setParent(parent)
+                    .setVehicle(Vehicle.newBuilder().setDisplayName("vehicle " + i))
+                    .build()));
+        }
+    }
+
+    @Benchmark
+    public void batchCreateVehicles(Blackhole blackhole) {
+        for (int i = 0; i < VEHICLE_COUNT; i += batchSize) {
+            BatchCreateVehiclesRequest.Builder request = BatchCreateVehiclesRequest.newBuilder().setParent(parent);
+            for (int j = i; j < Math.min(VEHICLE_COUNT, i + batchSize); j++) {
+                request.addRequestsBuilder().setVehicle(Vehicle.newBuilder().setDisplayName("vehicle " + j));
+            }
+            blackhole.consume(vehicleStub.batchCreateVehicles(request.build()));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.jedvardsson.fuelcost.vehicle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VehicleNameBenchmark {
+
+    private final VehicleName name = new VehicleName(123456L, 987654321L);
+    private final String path = name.toString();
+
+    @Benchmark
+    public VehicleName parse() {
+        return VehicleName.parse(path);
+    }
+
+    @Benchmark
+    public String format() {
+        return name.toString();
+    }
+}
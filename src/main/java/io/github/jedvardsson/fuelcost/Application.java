@@ -1,6 +1,13 @@
 package io.github.jedvardsson.fuelcost;
 
+import io.github.jedvardsson.fuelcost.account.AccountCacheProperties;
+import io.github.jedvardsson.fuelcost.db.DbProperties;
+import io.github.jedvardsson.fuelcost.fuelpurchase.FuelPurchaseIngestProperties;
+import io.github.jedvardsson.fuelcost.fuelpurchase.FuelPurchasePartitionProperties;
 import io.github.jedvardsson.fuelcost.grpc.GrpcProperties;
+import io.github.jedvardsson.fuelcost.statement.FuelStatementProperties;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleExportProperties;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleWatchProperties;
 import io.grpc.BindableService;
 import io.grpc.protobuf.services.ProtoReflectionService;
 import org.springframework.boot.SpringApplication;
@@ -9,7 +16,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
-@EnableConfigurationProperties({GrpcProperties.class})
+@EnableConfigurationProperties({GrpcProperties.class, DbProperties.class, AccountCacheProperties.class, VehicleWatchProperties.class,
+        FuelPurchaseIngestProperties.class, FuelPurchasePartitionProperties.class, FuelStatementProperties.class, VehicleExportProperties.class})
 public class Application {
     @Bean
     public BindableService reflectionService() {
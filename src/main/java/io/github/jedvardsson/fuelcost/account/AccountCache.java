@@ -0,0 +1,119 @@
+package io.github.jedvardsson.fuelcost.account;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.jedvardsson.fuelcost.common.VersionEtag;
+import io.github.jedvardsson.fuelcost.db.InvalidationBus;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of existing accounts, keyed by name. Only hits are cached so a new account is visible at once.
+ * <p>
+ * Changes made through this node invalidate the entry immediately and again when the transaction completes.
+ * A load that overlaps an invalidation of the same account is not cached, since it may have read the state before
+ * the change committed. Each load registers a token for its account, which an invalidation removes, and is only
+ * cached if its token is still there, so invalidations of other accounts do not get in the way. Changes made by
+ * other nodes arrive through the {@link InvalidationBus}, and the entry expires in case they do not. The version they
+ * announce is kept for as long as an entry would be, and older versions loaded meanwhile, e.g. from a replica that
+ * has not replayed the change, are not cached.
+ * Hit, miss and eviction counts are published as {@code cache.*} metrics tagged {@code cache=account}.
+ */
+@Service
+public class AccountCache implements InvalidationBus.Subscriber {
+
+    private final Cache<AccountName, Account> cache;
+    private final ConcurrentHashMap<AccountName, Object> loads = new ConcurrentHashMap<>();
+    // the newest version announced by another node, per account
+    private final Cache<AccountName, Long> minVersions;
+
+    public AccountCache(AccountCacheProperties properties, InvalidationBus invalidationBus, MeterRegistry meterRegistry) {
+        cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        minVersions = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "account");
+        invalidationBus.subscribe(this);
+    }
+
+    public Optional<Account> get(AccountName name, Function<AccountName, Optional<Account>> loader) {
+        Account account = cache.getIfPresent(name);
+        if (account != null) {
+            return Optional.of(account);
+        }
+        Object token = new Object();
+        loads.put(name, token);
+        try {
+            Optional<Account> loaded = loader.apply(name);
+            // an invalidation removes the token before evicting, so it either prevents or follows the put
+            loaded.ifPresent(a -> loads.computeIfPresent(name, (k, t) -> {
+                if (t == token && version(a) >= minVersions.asMap().getOrDefault(name, 0L)) {
+                    cache.put(name, a);
+                }
+                return t;
+            }));
+            return loaded;
+        } finally {
+            loads.remove(name, token);
+        }
+    }
+
+    public void invalidate(AccountName name) {
+        evict(name);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(name);
+                }
+            });
+        }
+    }
+
+    /**
+     * Evicts the account unless the cached version is at least the given one, and no longer caches loaded versions
+     * older than it, which a lagging replica may still return. Other resource names are ignored.
+     */
+    @Override
+    public void invalidate(String name, long version) {
+        AccountName key;
+        try {
+            key = AccountName.parse(name);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        minVersions.asMap().merge(key, version, Math::max);
+        Account account = cache.getIfPresent(key);
+        if (account == null || version(account) < version) {
+            evict(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        loads.clear();
+        cache.invalidateAll();
+    }
+
+    private static long version(Account account) {
+        return VersionEtag.parse(account.getEtag()).version();
+    }
+
+    private void evict(AccountName name) {
+        loads.remove(name);
+        cache.invalidate(name);
+    }
+}
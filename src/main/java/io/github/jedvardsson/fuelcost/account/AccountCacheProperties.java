@@ -0,0 +1,34 @@
+package io.github.jedvardsson.fuelcost.account;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "account.cache")
+public class AccountCacheProperties {
+
+    private final long maximumSize;
+    private final Duration ttl;
+
+    @ConstructorBinding
+    public AccountCacheProperties(@DefaultValue("10000") long maximumSize, @DefaultValue("60s") Duration ttl) {
+        this.maximumSize = maximumSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Maximum number of cached accounts. 0 disables the cache.
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Time after which an entry expires. Bounds staleness from changes made by other nodes.
+     */
+    public Duration getTtl() {
+        return ttl;
+    }
+}
@@ -2,35 +2,62 @@ package io.github.jedvardsson.fuelcost.account;
 
 import com.google.protobuf.Timestamp;
 import io.github.jedvardsson.fuelcost.common.Arguments;
+import io.github.jedvardsson.fuelcost.common.MicroBatcher;
 import io.github.jedvardsson.fuelcost.common.PageTokens;
+import io.github.jedvardsson.fuelcost.common.SingleFlight;
 import io.github.jedvardsson.fuelcost.common.VersionEtag;
 import io.github.jedvardsson.fuelcost.db.DbClient;
+import io.github.jedvardsson.fuelcost.db.DbProperties;
+import io.github.jedvardsson.fuelcost.db.InvalidationBus;
 import io.github.jedvardsson.fuelcost.grpc.GrpcException;
+import io.github.jedvardsson.fuelcost.grpc.ResponseCache;
+import io.github.jedvardsson.fuelcost.grpc.SerializedMessage;
 import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.BatchGetAccountsRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchGetAccountsResponse;
 import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.DeleteAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.GetAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.ListAccountsRequest;
 import io.github.jedvardsson.fuelcost.v1.ListAccountsResponse;
 import io.github.jedvardsson.fuelcost.v1.UpdateAccountRequest;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.jdbi.v3.core.result.RowView;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class AccountDao {
 
     private static final int MAX_PAGE_SIZE = 1000;
     private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final AccountRowMapper ACCOUNT_MAPPER = new AccountRowMapper();
 
     private final DbClient dbClient;
+    private final AccountCache accountCache;
+    private final ResponseCache responseCache;
+    private final InvalidationBus invalidationBus;
+    private final SingleFlight<AccountName, Optional<Account>> reads;
+    private final MicroBatcher<AccountName, Account> batcher;
 
-    public AccountDao(DbClient dbClient) {
+    public AccountDao(DbClient dbClient, AccountCache accountCache, ResponseCache responseCache, InvalidationBus invalidationBus, DbProperties dbProperties,
+                      MeterRegistry meterRegistry) {
         this.dbClient = dbClient;
+        this.accountCache = accountCache;
+        this.responseCache = responseCache;
+        this.invalidationBus = invalidationBus;
+        this.reads = new SingleFlight<>("account", meterRegistry);
+        DbProperties.ReadBatching readBatching = dbProperties.getReadBatching();
+        this.batcher = !readBatching.isEnabled() ? null : new MicroBatcher<>("account", readBatching.getWindow(), readBatching.getMaxSize(),
+                names -> getAccounts(names).stream().collect(Collectors.toMap(a -> AccountName.parse(a.getName()), Function.identity())), meterRegistry);
     }
 
     @Transactional
@@ -45,6 +72,7 @@ public class AccountDao {
                             values (:version, statement_timestamp(), statement_timestamp())
                             returning account_id, version, create_time, update_time
                             """)
+                    .define(DbClient.STATEMENT, "account.create")
                     .bind("version", 1)
                     .map(r -> request.getAccount().toBuilder()
                             .setName(getAccountName(r).toString())
@@ -67,14 +95,18 @@ public class AccountDao {
             String name = account.getName();
             AccountName key = Arguments.parse(name, "name", AccountName::parse);
             Long version = VersionEtag.tryParseVersion(account.getEtag());
+            accountCache.invalidate(key);
+            responseCache.invalidate(key.toString());
+            reads.forget(key);
 
-            return h.createQuery("""
+            Account updated = h.createQuery("""
                             update account t set
                                 version = version + 1,
                                 update_time = statement_timestamp()
                             where t.account_id = :account_id and (:version is null or t.version = :version)
                             returning account_id, version, create_time, update_time
                             """)
+                    .define(DbClient.STATEMENT, "account.update")
                     .bind("account_id", key.accountId())
                     .bind("version", version)
                     .map(r -> request.getAccount().toBuilder()
@@ -85,6 +117,8 @@ public class AccountDao {
                             .build())
                     .findFirst()
                     .orElseThrow(() -> version == null ? GrpcException.notFound(name) : GrpcException.etagNotMatching(name));
+            invalidationBus.publish(key.toString(), VersionEtag.parse(updated.getEtag()).version());
+            return updated;
         });
     }
 
@@ -93,34 +127,106 @@ public class AccountDao {
         String name = request.getName();
         AccountName key = Arguments.parse(name, "name", AccountName::parse);
         Long version = VersionEtag.parseOptionalVersion(request.getEtag()).orElse(null);
+        accountCache.invalidate(key);
+        responseCache.invalidate(key.toString());
+        reads.forget(key);
         dbClient.withHandle(h -> h.createQuery("""
                         delete from account t where t.account_id = :account_id and (:version is null or t.version = :version)
                         returning account_id, version
                         """)
+                .define(DbClient.STATEMENT, "account.delete")
                 .bind("account_id", key.accountId())
                 .bind("version", version)
                 .mapTo(String.class)
                 .findFirst()
                 .orElseThrow(() -> version == null ? GrpcException.notFound(name) : GrpcException.etagNotMatching(name)));
+        invalidationBus.publish(key.toString(), InvalidationBus.DELETED);
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * With {@code if_none_match}, returns just the name and etag if the etag matches. Accounts are read through
+     * the {@link AccountCache}, so a matching etag of a cached account costs no query.
+     */
     public Account getAccount(GetAccountRequest request) {
         String name = Arguments.requireNonEmpty(request.getName(), "name");
-        return getAccount(name).orElseThrow(() -> GrpcException.notFound(name));
+        Long ifNoneMatch = parseIfNoneMatch(request);
+        Account account = getAccount(name).orElseThrow(() -> GrpcException.notFound(name));
+        if (ifNoneMatch != null && ifNoneMatch == VersionEtag.parse(account.getEtag()).version()) {
+            return notModified(account);
+        }
+        return account;
+    }
+
+    /**
+     * Like {@link #getAccount(GetAccountRequest)} but answered from the {@link ResponseCache}, so an account is only
+     * serialized again when its version changes.
+     */
+    public SerializedMessage<Account> getSerializedAccount(GetAccountRequest request) {
+        String name = Arguments.requireNonEmpty(request.getName(), "name");
+        Long ifNoneMatch = parseIfNoneMatch(request);
+        Account account = getAccount(name).orElseThrow(() -> GrpcException.notFound(name));
+        long version = VersionEtag.parse(account.getEtag()).version();
+        if (ifNoneMatch != null && ifNoneMatch == version) {
+            return SerializedMessage.of(notModified(account));
+        }
+        SerializedMessage<Account> cached = responseCache.get(account.getName(), version);
+        return cached != null ? cached : responseCache.put(account.getName(), version, account);
+    }
+
+    private static Long parseIfNoneMatch(GetAccountRequest request) {
+        return request.getIfNoneMatch().isEmpty() ? null : Arguments.parse(request.getIfNoneMatch(), "if_none_match", VersionEtag::parse).version();
+    }
+
+    private static Account notModified(Account account) {
+        return Account.newBuilder()
+                .setName(account.getName())
+                .setEtag(account.getEtag())
+                .build();
     }
 
-    @Transactional(readOnly = true)
     public Optional<Account> getAccount(String name) {
         return getAccount(AccountName.parse(name));
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Reads through the {@link AccountCache}. Not transactional, so that a hit does not acquire a connection;
+     * a miss is a single query, shared by concurrent misses of the same account and, with
+     * {@link DbProperties.ReadBatching read batching}, of other accounts.
+     */
     public Optional<Account> getAccount(AccountName name) {
-        return getAccounts(List.of(name)).stream().findFirst();
+        return accountCache.get(name, n -> reads.execute(n, () -> batcher != null ? batcher.load(n) : getAccounts(List.of(n)).stream().findFirst()));
+    }
+
+    @Transactional(readOnly = true)
+    public BatchGetAccountsResponse batchGetAccounts(BatchGetAccountsRequest request) {
+        if (request.getNamesCount() > MAX_BATCH_SIZE) {
+            throw GrpcException.invalidArgument("names", "must be at most " + MAX_BATCH_SIZE + ": " + request.getNamesCount());
+        }
+        List<AccountName> names = new ArrayList<>(request.getNamesCount());
+        for (String name : request.getNamesList()) {
+            names.add(Arguments.parse(name, "names", AccountName::parse));
+        }
+
+        List<Account> accounts = names.isEmpty() ? List.of() : getAccounts(names);
+        if (accounts.size() != names.size()) {
+            // both lists are in request order, so the first name not matching is missing
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i).toString();
+                if (i >= accounts.size() || !accounts.get(i).getName().equals(name)) {
+                    throw GrpcException.notFound(name);
+                }
+            }
+        }
+        return BatchGetAccountsResponse.newBuilder()
+                .addAllAccounts(accounts)
+                .build();
     }
 
-    private List<Account> getAccounts(List<AccountName> names) {
+    /**
+     * Returns the existing accounts in the order of the given names, in a single query.
+     */
+    @Transactional(readOnly = true)
+    public List<Account> getAccounts(List<AccountName> names) {
         return dbClient.withHandle(h -> h.createQuery("""
                         select
                             t.account_id,
@@ -131,13 +237,9 @@ public class AccountDao {
                         join account t on t.account_id = x.account_id
                         order by x.ord
                         """)
+                .define(DbClient.STATEMENT, "account.get")
                 .bind("account_ids", names.stream().mapToLong(AccountName::accountId).toArray())
-                .map(r -> Account.newBuilder()
-                        .setName(getAccountName(r).toString())
-                        .setEtag(formatVersionEtag(r))
-                        .setCreateTime(r.getColumn("create_time", Timestamp.class))
-                        .setUpdateTime(r.getColumn("update_time", Timestamp.class))
-                        .build())
+                .map(ACCOUNT_MAPPER)
                 .list());
     }
 
@@ -152,30 +254,31 @@ public class AccountDao {
 
     @Transactional(readOnly = true)
     public ListAccountsResponse listAccounts(ListAccountsRequest request) {
-        AccountName pageToken = PageTokens.parseOptional(request.getPageToken(), AccountName.class).orElseGet(() -> new AccountName(0L));
+        AccountName pageToken = PageTokens.parseOptional(request.getPageToken(), AccountName.PAGE_TOKEN_CODEC).orElseGet(() -> new AccountName(0L));
         int pageSize = request.getPageSize() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(MAX_PAGE_SIZE, request.getPageSize());
 
-        return dbClient.withHandle(h -> {
-            List<AccountName> names = h.createQuery("""
-                            select
-                                t.account_id
-                            from account t
-                            where t.account_id > :page_token_account_id
-                            order by t.account_id
-                            limit :page_size
-                            """)
-                    .bind("page_token_account_id", pageToken.accountId())
-                    .bind("page_size", pageSize)
-                    .map(r -> getAccountName(r))
-                    .list();
-
-            var entities = getAccounts(names);
-            int size = names.size();
-            String nextPageToken = size != pageSize ? "" : PageTokens.format(names.get(size - 1));
-            return ListAccountsResponse.newBuilder()
-                    .addAllAccounts(entities)
-                    .setNextPageToken(nextPageToken)
-                    .build();
-        });
+        List<Account> accounts = dbClient.withHandle(h -> h.createQuery("""
+                        select
+                            t.account_id,
+                            t.version,
+                            t.create_time,
+                            t.update_time
+                        from account t
+                        where t.account_id > :page_token_account_id
+                        order by t.account_id
+                        limit :page_size
+                        """)
+                .define(DbClient.STATEMENT, "account.list")
+                .bind("page_token_account_id", pageToken.accountId())
+                .bind("page_size", pageSize)
+                .map(ACCOUNT_MAPPER)
+                .list());
+
+        int size = accounts.size();
+        String nextPageToken = size != pageSize ? "" : PageTokens.format(AccountName.parse(accounts.get(size - 1).getName()), AccountName.PAGE_TOKEN_CODEC);
+        return ListAccountsResponse.newBuilder()
+                .addAllAccounts(accounts)
+                .setNextPageToken(nextPageToken)
+                .build();
     }
 }
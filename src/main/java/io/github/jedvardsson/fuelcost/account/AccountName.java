@@ -1,36 +1,33 @@
-
 package io.github.jedvardsson.fuelcost.account;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
-import io.github.jedvardsson.fuelcost.common.Arguments;
+import io.github.jedvardsson.fuelcost.common.CompiledPathTemplate;
+import io.github.jedvardsson.fuelcost.common.PageTokens;
 import io.github.jedvardsson.fuelcost.common.PatchedPathTemplate;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Comparator;
-import java.util.Map;
+import java.util.List;
 
 public record AccountName(long accountId) implements Comparable<AccountName> {
-    private static final PatchedPathTemplate TEMPLATE = PatchedPathTemplate.create("accounts/{account}");
+    private static final CompiledPathTemplate TEMPLATE = PatchedPathTemplate.create("accounts/{account}").compile();
     public static final Comparator<AccountName> COMPARATOR = Comparator.comparing(AccountName::accountId);
-
-    private AccountName(Map<String, String> map) {
-        this(Arguments.parseAccountId(map.get("account"), "account"));
-    }
+    public static final PageTokens.Codec<AccountName> PAGE_TOKEN_CODEC = PageTokens.codec(1, AccountName.class,
+            k -> new AccountName(k[0]), List.of(AccountName::accountId));
 
     @JsonCreator
     public static AccountName parse(String name) {
-        Map<String, String> m = TEMPLATE.parse(name);
-        return new AccountName(m);
+        return TEMPLATE.parse(name, AccountName::new);
     }
 
     public static String format(long accountId) {
-        return new AccountName(accountId).toString();
+        return TEMPLATE.format(accountId);
     }
 
     @JsonValue
     public String toString() {
-        return TEMPLATE.instantiate("account", Long.toString(accountId));
+        return TEMPLATE.format(accountId);
     }
 
     @Override
@@ -0,0 +1,24 @@
+package io.github.jedvardsson.fuelcost.account;
+
+import com.google.protobuf.Timestamp;
+import io.github.jedvardsson.fuelcost.common.VersionEtag;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import org.jdbi.v3.core.mapper.RowViewMapper;
+import org.jdbi.v3.core.result.RowView;
+
+/**
+ * Maps the columns {@code account_id}, {@code version}, {@code create_time} and {@code update_time} of a row to an
+ * account.
+ */
+public class AccountRowMapper implements RowViewMapper<Account> {
+
+    @Override
+    public Account map(RowView r) {
+        return Account.newBuilder()
+                .setName(new AccountName(r.getColumn("account_id", Long.class)).toString())
+                .setEtag(VersionEtag.format(r.getColumn("version", Long.class)))
+                .setCreateTime(r.getColumn("create_time", Timestamp.class))
+                .setUpdateTime(r.getColumn("update_time", Timestamp.class))
+                .build();
+    }
+}
@@ -2,25 +2,39 @@ package io.github.jedvardsson.fuelcost.account;
 
 import com.google.protobuf.Empty;
 import io.github.jedvardsson.fuelcost.grpc.GrpcUtil;
+import io.github.jedvardsson.fuelcost.grpc.ResponseCache;
+import io.github.jedvardsson.fuelcost.grpc.SerializedResponses;
 import io.github.jedvardsson.fuelcost.v1.Account;
 import io.github.jedvardsson.fuelcost.v1.AccountServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.BatchGetAccountsRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchGetAccountsResponse;
 import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.DeleteAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.GetAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.ListAccountsRequest;
 import io.github.jedvardsson.fuelcost.v1.ListAccountsResponse;
 import io.github.jedvardsson.fuelcost.v1.UpdateAccountRequest;
+import io.grpc.MethodDescriptor;
 import io.grpc.stub.StreamObserver;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 
 @Service
-public class AccountService extends AccountServiceGrpc.AccountServiceImplBase {
+public class AccountService extends AccountServiceGrpc.AccountServiceImplBase implements SerializedResponses {
 
     private final io.github.jedvardsson.fuelcost.account.AccountDao accountDao;
+    private final ResponseCache responseCache;
 
-    public AccountService(AccountDao accountDao) {
+    public AccountService(AccountDao accountDao, ResponseCache responseCache) {
         this.accountDao = accountDao;
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public List<MethodDescriptor<?, ?>> getSerializedResponseMethods() {
+        return responseCache.isEnabled() ? List.of(AccountServiceGrpc.getGetAccountMethod()) : List.of();
     }
 
     @Override
@@ -43,7 +57,11 @@ public class AccountService extends AccountServiceGrpc.AccountServiceImplBase {
 
     @Override
     public void getAccount(GetAccountRequest request, StreamObserver<Account> responseObserver) {
-        GrpcUtil.handleResponse(responseObserver, () -> accountDao.getAccount(request));
+        if (responseCache.isEnabled()) {
+            GrpcUtil.handleSerializedResponse(responseObserver, () -> accountDao.getSerializedAccount(request));
+        } else {
+            GrpcUtil.handleResponse(responseObserver, () -> accountDao.getAccount(request));
+        }
     }
 
     @Override
@@ -51,4 +69,9 @@ public class AccountService extends AccountServiceGrpc.AccountServiceImplBase {
         GrpcUtil.handleResponse(responseObserver, () -> accountDao.listAccounts(request));
     }
 
+    @Override
+    public void batchGetAccounts(BatchGetAccountsRequest request, StreamObserver<BatchGetAccountsResponse> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> accountDao.batchGetAccounts(request));
+    }
+
 }
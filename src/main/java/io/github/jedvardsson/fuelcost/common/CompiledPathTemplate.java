@@ -0,0 +1,163 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * A {@link PatchedPathTemplate} compiled for resource names made of literal segments and single segment
+ * variables holding numeric ids, e.g. <code>accounts/{account}/vehicles/{vehicle}</code>.
+ * <p>
+ * Variables are parsed straight into <code>long</code>s and formatted with plain string concatenation,
+ * without intermediate maps or strings. The decimal form of a <code>long</code> only contains unreserved
+ * characters so percent-encoding is skipped entirely. Paths that need decoding (<code>%</code>), carry a
+ * host name or custom verb (<code>:</code>) or do not match, are handed to the wrapped {@link PatchedPathTemplate},
+ * so results and error messages are identical to parsing the values of {@link PatchedPathTemplate#parse(String)}
+ * with {@link Arguments#parse(Object, String, java.util.function.Function)}.
+ */
+public final class CompiledPathTemplate {
+
+    @FunctionalInterface
+    public interface LongBiFunction<R> {
+        R apply(long value1, long value2);
+    }
+
+    private final PatchedPathTemplate template;
+
+    // literals[i] precedes variables[i]. The last literal trails the last variable.
+    private final String[] literals;
+    private final String[] variables;
+
+    CompiledPathTemplate(PatchedPathTemplate template) {
+        this.template = template;
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        String[] segments = template.toString().split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (i > 0) {
+                literal.append('/');
+            }
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String variable = segment.substring(1, segment.length() - 1);
+                if (variable.endsWith("=*")) {
+                    variable = variable.substring(0, variable.length() - 2);
+                }
+                if (variable.isEmpty() || !variable.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '_')) {
+                    throw new IllegalArgumentException("template '%s' cannot be compiled: unsupported variable: %s".formatted(template, segment));
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                variables.add(variable);
+            } else if (segment.isEmpty() || segment.contains("{") || segment.contains("}") || segment.contains("*") || segment.contains(":")) {
+                throw new IllegalArgumentException("template '%s' cannot be compiled: unsupported segment: %s".formatted(template, segment));
+            } else {
+                literal.append(segment);
+            }
+        }
+        literals.add(literal.toString());
+        this.literals = literals.toArray(String[]::new);
+        this.variables = variables.toArray(String[]::new);
+    }
+
+    public <T> T parse(String path, LongFunction<T> factory) {
+        requireVariableCount(1);
+        if (!isSimpleMatch(path)) {
+            Map<String, String> m = template.parse(path);
+            return factory.apply(parseLong(m.get(variables[0]), variables[0]));
+        }
+        int start = literals[0].length();
+        int end = path.length() - literals[1].length();
+        return factory.apply(parseLong(path, start, end, variables[0]));
+    }
+
+    public <T> T parse(String path, LongBiFunction<T> factory) {
+        requireVariableCount(2);
+        if (!isSimpleMatch(path)) {
+            Map<String, String> m = template.parse(path);
+            return factory.apply(parseLong(m.get(variables[0]), variables[0]), parseLong(m.get(variables[1]), variables[1]));
+        }
+        int start1 = literals[0].length();
+        int end1 = path.indexOf('/', start1);
+        int start2 = end1 + literals[1].length();
+        int end2 = path.length() - literals[2].length();
+        long value1 = parseLong(path, start1, end1, variables[0]);
+        long value2 = parseLong(path, start2, end2, variables[1]);
+        return factory.apply(value1, value2);
+    }
+
+    public String format(long value) {
+        requireVariableCount(1);
+        return literals[0] + value + literals[1];
+    }
+
+    public String format(long value1, long value2) {
+        requireVariableCount(2);
+        return literals[0] + value1 + literals[1] + value2 + literals[2];
+    }
+
+    public PatchedPathTemplate getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return template.toString();
+    }
+
+    private void requireVariableCount(int count) {
+        if (variables.length != count) {
+            throw new IllegalStateException("template '%s' has %d variables, not %d".formatted(template, variables.length, count));
+        }
+    }
+
+    /**
+     * Returns true if the path matches the literals and has exactly one segment per variable,
+     * none of which needs percent-decoding. Everything else is left to the wrapped template.
+     */
+    private boolean isSimpleMatch(String path) {
+        if (path == null) {
+            return false;
+        }
+        int pos = 0;
+        for (int i = 0; i < literals.length; i++) {
+            String literal = literals[i];
+            if (!path.startsWith(literal, pos)) {
+                return false;
+            }
+            pos += literal.length();
+            if (i == variables.length) {
+                break;
+            }
+            int end = pos;
+            for (; end < path.length(); end++) {
+                char c = path.charAt(end);
+                if (c == '/') {
+                    break;
+                }
+                if (c == '%' || c == ':') {
+                    return false;
+                }
+            }
+            pos = end;
+        }
+        return pos == path.length() && !path.startsWith("/");
+    }
+
+    private static long parseLong(String value, String field) {
+        return Arguments.parse(value, field, Long::parseLong);
+    }
+
+    private static long parseLong(String path, int start, int end, String field) {
+        if (start == end) {
+            throw new IllegalArgumentException("required field: " + field);
+        }
+        try {
+            return Long.parseLong(path, start, end, 10);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid field %s: %s".formatted(field, path.substring(start, end)));
+        }
+    }
+}
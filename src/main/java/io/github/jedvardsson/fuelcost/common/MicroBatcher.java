@@ -0,0 +1,120 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import io.github.jedvardsson.fuelcost.db.PrimaryPin;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Collects concurrent lookups of single keys into batches, loaded with one call each, like a DataLoader.
+ * <p>
+ * The first caller of a batch leads it. If no batch is loading, it loads its key at once, so a lone caller waits
+ * for nothing. Otherwise it waits for up to the window, or until the batch holds the maximum number of keys, while
+ * other callers add their keys. The leader then loads the batch on its own thread and completes each caller's
+ * future with the value of its key, or with the exception of the load. Keys are loaded once per batch.
+ * <p>
+ * Callers in a read-write transaction or a scope {@link PrimaryPin pinned} to the primary always load for themselves,
+ * so they see their own writes rather than a batch that may have gone to a replica.
+ * Batch sizes are recorded as {@code microbatch.size}.
+ */
+public class MicroBatcher<K, V> {
+
+    private final class Batch {
+        private final Map<K, CompletableFuture<Optional<V>>> futures = new LinkedHashMap<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+    }
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Function<List<K>, Map<K, V>> loader;
+    private final DistributionSummary sizes;
+    private final AtomicInteger loading = new AtomicInteger();
+    private Batch open;
+
+    /**
+     * @param loader returns the values of the existing keys among the given ones
+     */
+    public MicroBatcher(String name, Duration window, int maxBatchSize, Function<List<K>, Map<K, V>> loader, MeterRegistry meterRegistry) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("window must not be negative: " + window);
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.loader = loader;
+        this.sizes = DistributionSummary.builder("microbatch.size")
+                .description("Keys loaded per batch")
+                .tag("name", name)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public Optional<V> load(K key) {
+        if (PrimaryPin.isPrimaryRequired()) {
+            return Optional.ofNullable(loader.apply(List.of(key)).get(key));
+        }
+        Batch batch;
+        CompletableFuture<Optional<V>> future;
+        boolean leader = false;
+        synchronized (this) {
+            if (open == null) {
+                open = new Batch();
+                leader = true;
+            }
+            batch = open;
+            future = batch.futures.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (batch.futures.size() >= maxBatchSize) {
+                open = null;
+                batch.full.countDown();
+            }
+        }
+        if (leader) {
+            if (loading.get() > 0) {
+                awaitFull(batch);
+            }
+            synchronized (this) {
+                if (open == batch) {
+                    open = null;
+                }
+            }
+            load(batch);
+        }
+        return SingleFlight.join(future);
+    }
+
+    private void awaitFull(Batch batch) {
+        try {
+            batch.full.await(windowNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load(Batch batch) {
+        // the batch is closed, so its keys no longer change
+        List<K> keys = new ArrayList<>(batch.futures.keySet());
+        sizes.record(keys.size());
+        loading.incrementAndGet();
+        try {
+            Map<K, V> values = loader.apply(keys);
+            batch.futures.forEach((key, future) -> future.complete(Optional.ofNullable(values.get(key))));
+        } catch (Throwable t) {
+            batch.futures.values().forEach(future -> future.completeExceptionally(t));
+        } finally {
+            loading.decrementAndGet();
+        }
+    }
+}
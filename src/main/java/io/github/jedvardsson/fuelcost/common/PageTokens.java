@@ -8,37 +8,228 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
+/**
+ * Opaque page tokens.
+ * <p>
+ * Keys with a {@link Codec} are written in a compact binary format: a format version byte, a varint type tag
+ * and one varint per key column, Base64url encoded without padding. The bytes are written into a reusable
+ * per-thread buffer. Tokens produced by the former Smile (Jackson) format start with the Smile header and
+ * are still accepted by {@link #parseOptional(String, Codec)} for a transition period.
+ */
 public class PageTokens {
 
-    private static final ObjectMapper MAPPER = SmileMapper.builder()
-            .addModule(new Jdk8Module())
-            .addModule(new JavaTimeModule())
-            .addModule(new ParameterNamesModule())
-            .build();
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte SMILE_HEADER = ':';
+    private static final int MAX_COLUMNS = 4;
+    // version + tag + columns, each varint at most 10 bytes
+    private static final int MAX_TOKEN_BYTES = 1 + 10 + 10 * MAX_COLUMNS;
+    private static final int MAX_TOKEN_CHARS = (MAX_TOKEN_BYTES * 4 + 2) / 3;
 
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        for (int i = 0; i < BASE64_ALPHABET.length; i++) {
+            BASE64_VALUES[BASE64_ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[MAX_TOKEN_BYTES + MAX_TOKEN_CHARS]);
+
+    // Lazy, so that Jackson is only initialized when a legacy token is seen.
+    private static final class Smile {
+        private static final ObjectMapper MAPPER = SmileMapper.builder()
+                .addModule(new Jdk8Module())
+                .addModule(new JavaTimeModule())
+                .addModule(new ParameterNamesModule())
+                .build();
+    }
+
+    /**
+     * Binary layout of a page token key of type {@code T}. The tag identifies the key type and must be unique and
+     * stable. Columns are written in order and passed to the factory in the same order.
+     */
+    public static final class Codec<T> {
+        private final int tag;
+        private final Class<T> type;
+        private final Function<long[], T> factory;
+        private final List<ToLongFunction<? super T>> columns;
+
+        private Codec(int tag, Class<T> type, Function<long[], T> factory, List<ToLongFunction<? super T>> columns) {
+            if (tag < 0) {
+                throw new IllegalArgumentException("tag must not be negative: " + tag);
+            }
+            if (columns.isEmpty() || columns.size() > MAX_COLUMNS) {
+                throw new IllegalArgumentException("columns must be between 1 and " + MAX_COLUMNS + ": " + columns.size());
+            }
+            this.tag = tag;
+            this.type = type;
+            this.factory = factory;
+            this.columns = List.copyOf(columns);
+        }
+
+        public Class<T> type() {
+            return type;
+        }
+    }
+
+    public static <T> Codec<T> codec(int tag, Class<T> type, Function<long[], T> factory, List<ToLongFunction<? super T>> columns) {
+        return new Codec<>(tag, type, factory, columns);
+    }
+
+    public static <T> String format(T token, Codec<T> codec) {
+        byte[] buf = BUFFER.get();
+        int n = 0;
+        buf[n++] = FORMAT_VERSION;
+        n = writeVarint(buf, n, codec.tag);
+        for (ToLongFunction<? super T> column : codec.columns) {
+            n = writeVarint(buf, n, column.applyAsLong(token));
+        }
+        int end = encodeBase64(buf, 0, n, buf, n);
+        return new String(buf, n, end - n, StandardCharsets.ISO_8859_1);
+    }
+
+    public static <T> Optional<T> parseOptional(String s, Codec<T> codec) {
+        if (s == null || s.isEmpty()) {
+            return Optional.empty();
+        }
+        byte[] buf = BUFFER.get();
+        int n = s.length() > MAX_TOKEN_CHARS ? -1 : decodeBase64(s, buf);
+        if (n < 0 || n == 0 || buf[0] == SMILE_HEADER) {
+            return parseOptional(s, codec.type);
+        }
+        if (buf[0] != FORMAT_VERSION) {
+            throw invalidToken(s, null);
+        }
+        long[] values = new long[codec.columns.size()];
+        int pos = 1;
+        // i == -1 is the type tag
+        for (int i = -1; i < values.length; i++) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos == n || shift > 63) {
+                    throw invalidToken(s, null);
+                }
+                b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (i >= 0) {
+                values[i] = value;
+            } else if (value != codec.tag) {
+                throw invalidToken(s, null);
+            }
+        }
+        if (pos != n) {
+            throw invalidToken(s, null);
+        }
+        return Optional.of(codec.factory.apply(values));
+    }
+
+    /**
+     * Parses a token written by {@link #format(Object)} in the legacy Smile format.
+     */
     public static <T> Optional<T> parseOptional(String s, Class<T> type) {
         try {
             if (s == null || s.isEmpty()) {
                 return Optional.empty();
             }
             byte[] bytes = Base64.getUrlDecoder().decode(s);
-            return Optional.of(MAPPER.readValue(bytes, type));
+            return Optional.of(Smile.MAPPER.readValue(bytes, type));
         } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException("Invalid page token: " + s, e);
+            throw invalidToken(s, e);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    /**
+     * Formats a token in the legacy Smile format. Prefer {@link #format(Object, Codec)}.
+     */
     public static String format(Object token) {
         try {
-            byte[] bytes = MAPPER.writeValueAsBytes(token);
+            byte[] bytes = Smile.MAPPER.writeValueAsBytes(token);
             return Base64.getUrlEncoder().encodeToString(bytes);
         } catch (JsonProcessingException e) {
             throw new IllegalStateException(e);
         }
     }
+
+    private static IllegalArgumentException invalidToken(String s, Throwable cause) {
+        return new IllegalArgumentException("Invalid page token: " + s, cause);
+    }
+
+    private static int writeVarint(byte[] buf, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int encodeBase64(byte[] src, int offset, int length, byte[] dst, int pos) {
+        int end = offset + length;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+            dst[pos++] = BASE64_ALPHABET[bits >>> 18];
+            dst[pos++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            dst[pos++] = BASE64_ALPHABET[(bits >>> 6) & 0x3F];
+            dst[pos++] = BASE64_ALPHABET[bits & 0x3F];
+        }
+        int remaining = end - i;
+        if (remaining == 1) {
+            int bits = (src[i] & 0xFF) << 16;
+            dst[pos++] = BASE64_ALPHABET[bits >>> 18];
+            dst[pos++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+        } else if (remaining == 2) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8;
+            dst[pos++] = BASE64_ALPHABET[bits >>> 18];
+            dst[pos++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            dst[pos++] = BASE64_ALPHABET[(bits >>> 6) & 0x3F];
+        }
+        return pos;
+    }
+
+    /**
+     * Decodes unpadded or padded Base64url into {@code dst}. Returns the number of bytes or -1 if invalid.
+     */
+    private static int decodeBase64(String s, byte[] dst) {
+        int length = s.length();
+        while (length > 0 && s.charAt(length - 1) == '=') {
+            length--;
+        }
+        if (length % 4 == 1) {
+            return -1;
+        }
+        int bits = 0;
+        int bitCount = 0;
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            int v = c < 128 ? BASE64_VALUES[c] : -1;
+            if (v < 0) {
+                return -1;
+            }
+            bits = bits << 6 | v;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                dst[n++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return n;
+    }
 }
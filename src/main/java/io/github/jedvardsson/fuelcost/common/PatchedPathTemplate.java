@@ -77,6 +77,13 @@ public final class PatchedPathTemplate {
         return new PatchedPathTemplate(template);
     }
 
+    /**
+     * Compiles this template into a matcher/formatter for numeric ids. See {@link CompiledPathTemplate}.
+     */
+    public CompiledPathTemplate compile() {
+        return new CompiledPathTemplate(this);
+    }
+
     public String instantiate(Map<String, String> values) {
         return instantiateEncoded(encode(values));
     }
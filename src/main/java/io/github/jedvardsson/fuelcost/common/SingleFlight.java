@@ -0,0 +1,128 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import io.github.jedvardsson.fuelcost.db.PrimaryPin;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent reads of the same key: the first caller runs the read and callers arriving while it is in
+ * flight wait for and share its result, or its exception.
+ * <p>
+ * Callers in a read-write transaction or a scope {@link PrimaryPin pinned} to the primary always read for themselves,
+ * so they see their own writes rather than a read that may have gone to a replica. Callers sharing a read wait for it
+ * no longer than the deadline of their gRPC call, if any. A writer should {@link #forget(Object) forget} the key, so
+ * that callers arriving after the write do not join a read that started before it. Calls are counted by
+ * {@code singleflight.calls} tagged {@code result=leader} or {@code result=shared}, and the share of shared calls is
+ * published as {@code singleflight.dedup.ratio}.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter shared;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.leaders = Counter.builder("singleflight.calls")
+                .description("Reads run by the caller")
+                .tag("name", name)
+                .tag("result", "leader")
+                .register(meterRegistry);
+        this.shared = Counter.builder("singleflight.calls")
+                .description("Reads that shared the result of a read in flight")
+                .tag("name", name)
+                .tag("result", "shared")
+                .register(meterRegistry);
+        Gauge.builder("singleflight.dedup.ratio", this, SingleFlight::getDedupRatio)
+                .description("Share of reads that shared the result of a read in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public V execute(K key, Supplier<V> read) {
+        if (PrimaryPin.isPrimaryRequired()) {
+            return read.get();
+        }
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            shared.increment();
+            return join(existing);
+        }
+        leaders.increment();
+        try {
+            V value = read.get();
+            flight.complete(value);
+            return value;
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Detaches the read in flight for the key, now and when the current transaction completes.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    inFlight.remove(key);
+                }
+            });
+        }
+    }
+
+    double getDedupRatio() {
+        double total = leaders.count() + shared.count();
+        return total == 0 ? 0 : shared.count() / total;
+    }
+
+    /**
+     * Waits for the result of a flight until the deadline of the current gRPC context, failing with
+     * {@code DEADLINE_EXCEEDED} when it passes.
+     */
+    static <V> V join(CompletableFuture<V> flight) {
+        Deadline deadline = Context.current().getDeadline();
+        if (deadline != null) {
+            try {
+                flight.get(deadline.timeRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw Status.DEADLINE_EXCEEDED.withDescription("deadline exceeded waiting for a shared read").asRuntimeException();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Status.CANCELLED.withDescription("interrupted waiting for a shared read").withCause(e).asRuntimeException();
+            } catch (ExecutionException e) {
+                // rethrown by join below
+            }
+        }
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) {
+                throw r;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
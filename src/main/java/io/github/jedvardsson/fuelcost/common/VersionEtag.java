@@ -3,11 +3,18 @@ package io.github.jedvardsson.fuelcost.common;
 import javax.annotation.Nullable;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public final class VersionEtag {
 
+    private static final String PREFIX = "W/\"";
+    private static final String[] FORMATTED = new String[256];
+
+    static {
+        for (int i = 0; i < FORMATTED.length; i++) {
+            FORMATTED[i] = PREFIX + i + "\"";
+        }
+    }
+
     private final long version;
 
     private VersionEtag(long value) {
@@ -27,15 +34,7 @@ public final class VersionEtag {
         if (etag == null || etag.isEmpty()) {
             return null;
         }
-        Matcher matcher = WEAK_ETAG_PATTERN.matcher(etag);
-        if (matcher.matches()) {
-            try {
-                return Long.parseLong(matcher.group(1));
-            } catch (NumberFormatException e) {
-                // fall-through
-            }
-        }
-        return -1L;
+        return parseVersion(etag);
     }
 
     public long version() {
@@ -46,18 +45,32 @@ public final class VersionEtag {
         return new VersionEtag(version + 1);
     }
 
-    private static final Pattern WEAK_ETAG_PATTERN = Pattern.compile("^W/\"(\\d+)\"$");
-
     public static VersionEtag parse(String etag) {
-        Matcher matcher = WEAK_ETAG_PATTERN.matcher(etag);
-        if (matcher.matches()) {
-            try {
-                return VersionEtag.of(Long.parseLong(matcher.group(1)));
-            } catch (NumberFormatException e) {
-                // fall-through
+        long version = parseVersion(etag);
+        if (version < 0) {
+            throw new IllegalArgumentException("Invalid or missing etag: " + etag);
+        }
+        return VersionEtag.of(version);
+    }
+
+    /**
+     * Parses a weak etag <code>W/"&lt;digits&gt;"</code>. Returns -1 if the etag is malformed or the
+     * version does not fit in a <code>long</code>.
+     */
+    private static long parseVersion(String etag) {
+        int end = etag.length() - 1;
+        if (end <= PREFIX.length() || !etag.startsWith(PREFIX) || etag.charAt(end) != '"') {
+            return -1;
+        }
+        long version = 0;
+        for (int i = PREFIX.length(); i < end; i++) {
+            int digit = etag.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || version > (Long.MAX_VALUE - digit) / 10) {
+                return -1;
             }
+            version = version * 10 + digit;
         }
-        throw new IllegalArgumentException("Invalid or missing etag: " + etag);
+        return version;
     }
 
     public static Optional<VersionEtag> parseOptional(String etag) {
@@ -65,7 +78,10 @@ public final class VersionEtag {
     }
 
     public static String format(long version) {
-        return of(version).toString();
+        if (version >= 0 && version < FORMATTED.length) {
+            return FORMATTED[(int) version];
+        }
+        return PREFIX + version + "\"";
     }
 
     @Override
@@ -83,6 +99,6 @@ public final class VersionEtag {
 
     @Override
     public String toString() {
-        return "W/\"" + version + "\"";
+        return format(version);
     }
 }
@@ -2,24 +2,69 @@ package io.github.jedvardsson.fuelcost.db;
 
 import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementCustomizers;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
 import org.springframework.stereotype.Service;
 
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
 public class DbClient {
 
+    /**
+     * Attribute naming a statement in metrics and the slow statement log, e.g.
+     * {@code h.createQuery(sql).define(DbClient.STATEMENT, "vehicle.list")}. Use a stable, low cardinality name.
+     */
+    public static final String STATEMENT = "statement";
+
     private final Jdbi jdbi;
+    private final Jdbi streamJdbi;
+    private final int streamFetchSize;
 
-    public DbClient(Jdbi jdbi, ObjectProvider<FlywayMigrationInitializer> flywayInitializer) {
+    public DbClient(Jdbi jdbi, DbProperties dbProperties, SqlLogger sqlLogger, ObjectProvider<ReplicaDataSource> replicaDataSource, ObjectProvider<FlywayMigrationInitializer> flywayInitializer) {
         // conditional depends-on flyway if enabled
         FlywayMigrationInitializer ignore = flywayInitializer.getIfAvailable();
+        // streams run outside Spring transactions, so they go to the replicas directly
+        ReplicaDataSource replicas = replicaDataSource.getIfAvailable();
+        Jdbi streamJdbi = replicas == null ? jdbi : DbConfig.createJdbi(replicas, sqlLogger);
         this.jdbi = jdbi;
+        this.streamJdbi = streamJdbi;
+        this.streamFetchSize = dbProperties.getStreamFetchSize();
     }
 
     public <R> R withHandle(Function<Handle, ? extends R> action) {
         return jdbi.withHandle(action::apply);
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams the result of a query from a server side cursor, fetching {@link DbProperties#getStreamFetchSize()}
+     * rows at a time. The query runs on its own connection, of a replica if {@link ReplicaConfig enabled}, in a
+     * read-only transaction, outside any Spring transaction, which is held until the returned stream is closed.
+     * The caller must close the stream.
+     */
+    public <T> Stream<T> stream(Function<Handle, ResultIterable<T>> query) {
+        Handle handle = streamJdbi.open();
+        try {
+            // the driver only uses a cursor when auto-commit is off
+            handle.begin();
+            handle.execute("set transaction read only");
+            handle.addCustomizer(StatementCustomizers.fetchSize(streamFetchSize));
+            return query.apply(handle).stream().onClose(() -> close(handle));
+        } catch (RuntimeException e) {
+            close(handle);
+            throw e;
+        }
+    }
+
+    private static void close(Handle handle) {
+        try {
+            handle.rollback();
+        } finally {
+            handle.close();
+        }
+    }
+}
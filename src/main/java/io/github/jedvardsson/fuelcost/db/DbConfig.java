@@ -9,6 +9,7 @@ import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 import com.google.protobuf.Any;
 import io.github.jedvardsson.fuelcost.common.VersionEtag;
 import io.github.jedvardsson.fuelcost.grpc.ProtoHelpers;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.jdbi.v3.core.Jdbi;
 import org.jdbi.v3.core.argument.Argument;
 import org.jdbi.v3.core.codec.Codec;
@@ -16,6 +17,8 @@ import org.jdbi.v3.core.codec.CodecFactory;
 import org.jdbi.v3.core.mapper.ColumnMapper;
 import org.jdbi.v3.core.mapper.RowMapperFactory;
 import org.jdbi.v3.core.mapper.reflect.ConstructorMapper;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.SqlStatements;
 import org.jdbi.v3.jackson2.Jackson2Config;
 import org.jdbi.v3.jackson2.Jackson2Plugin;
 import org.jdbi.v3.postgres.PostgresPlugin;
@@ -41,8 +44,18 @@ public class DbConfig {
             .build();
 
     @Bean
-    public Jdbi jdbi(DataSource dataSource) {
-        final Jdbi jdbi = Jdbi.create(new TransactionAwareDataSourceProxy(dataSource));
+    public SqlLogger dbStatementLogger(DbProperties dbProperties, MeterRegistry meterRegistry) {
+        return new DbStatementLogger(meterRegistry, dbProperties.getSlowStatementThreshold());
+    }
+
+    @Bean
+    public Jdbi jdbi(DataSource dataSource, SqlLogger sqlLogger) {
+        return createJdbi(new TransactionAwareDataSourceProxy(dataSource), sqlLogger);
+    }
+
+    static Jdbi createJdbi(DataSource dataSource, SqlLogger sqlLogger) {
+        final Jdbi jdbi = Jdbi.create(dataSource);
+        jdbi.getConfig(SqlStatements.class).setSqlLogger(sqlLogger);
         jdbi.installPlugin(new PostgresPlugin());
         jdbi.installPlugin(new Jackson2Plugin());
         jdbi.getConfig(Jackson2Config.class).setMapper(JSON_MAPPER);
@@ -0,0 +1,197 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "db")
+public class DbProperties {
+
+    private final int streamFetchSize;
+    private final Duration slowStatementThreshold;
+    private final Replicas replicas;
+    private final Notifications notifications;
+    private final ReadBatching readBatching;
+
+    @ConstructorBinding
+    public DbProperties(@DefaultValue("1000") int streamFetchSize, @DefaultValue("100ms") Duration slowStatementThreshold, @DefaultValue Replicas replicas,
+                        @DefaultValue Notifications notifications, @DefaultValue ReadBatching readBatching) {
+        if (streamFetchSize <= 0) {
+            throw new IllegalArgumentException("db.stream-fetch-size must be positive: " + streamFetchSize);
+        }
+        if (slowStatementThreshold.isNegative()) {
+            throw new IllegalArgumentException("db.slow-statement-threshold must not be negative: " + slowStatementThreshold);
+        }
+        this.streamFetchSize = streamFetchSize;
+        this.slowStatementThreshold = slowStatementThreshold;
+        this.replicas = replicas;
+        this.notifications = notifications;
+        this.readBatching = readBatching;
+    }
+
+    /**
+     * Number of rows fetched per round trip by {@link DbClient#stream}.
+     */
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    /**
+     * Statements executing for at least this long are logged by {@link DbStatementLogger}.
+     */
+    public Duration getSlowStatementThreshold() {
+        return slowStatementThreshold;
+    }
+
+    public Replicas getReplicas() {
+        return replicas;
+    }
+
+    public Notifications getNotifications() {
+        return notifications;
+    }
+
+    public ReadBatching getReadBatching() {
+        return readBatching;
+    }
+
+    public enum ReplicaSelection {
+        ROUND_ROBIN,
+        /**
+         * The replica with the fewest active connections and threads waiting for one.
+         */
+        LEAST_OUTSTANDING
+    }
+
+    public static class Replicas {
+        private final boolean enabled;
+        private final List<String> urls;
+        private final ReplicaSelection selection;
+        private final Duration maxLag;
+        private final Duration checkInterval;
+        private final int maximumPoolSize;
+
+        @ConstructorBinding
+        public Replicas(@DefaultValue("false") boolean enabled,
+                        @DefaultValue List<String> urls,
+                        @DefaultValue("round-robin") ReplicaSelection selection,
+                        @DefaultValue("10s") Duration maxLag,
+                        @DefaultValue("5s") Duration checkInterval,
+                        @DefaultValue("10") int maximumPoolSize) {
+            if (enabled && urls.isEmpty()) {
+                throw new IllegalArgumentException("db.replicas.urls must not be empty when db.replicas.enabled");
+            }
+            if (checkInterval.isNegative() || checkInterval.isZero()) {
+                throw new IllegalArgumentException("db.replicas.check-interval must be positive: " + checkInterval);
+            }
+            if (maximumPoolSize <= 0) {
+                throw new IllegalArgumentException("db.replicas.maximum-pool-size must be positive: " + maximumPoolSize);
+            }
+            this.enabled = enabled;
+            this.urls = List.copyOf(urls);
+            this.selection = selection;
+            this.maxLag = maxLag;
+            this.checkInterval = checkInterval;
+            this.maximumPoolSize = maximumPoolSize;
+        }
+
+        /**
+         * Routes read-only transactions to the replicas, see {@link ReplicaConfig}.
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * JDBC urls of the replicas. User name and password are the same as for the primary.
+         */
+        public List<String> getUrls() {
+            return urls;
+        }
+
+        public ReplicaSelection getSelection() {
+            return selection;
+        }
+
+        /**
+         * Replicas replaying WAL further behind the primary than this are not used.
+         */
+        public Duration getMaxLag() {
+            return maxLag;
+        }
+
+        public Duration getCheckInterval() {
+            return checkInterval;
+        }
+
+        /**
+         * Maximum pool size of each replica.
+         */
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+    }
+
+    public static class Notifications {
+        private final Duration reconnectDelay;
+
+        @ConstructorBinding
+        public Notifications(@DefaultValue("1s") Duration reconnectDelay) {
+            if (reconnectDelay.isNegative()) {
+                throw new IllegalArgumentException("db.notifications.reconnect-delay must not be negative: " + reconnectDelay);
+            }
+            this.reconnectDelay = reconnectDelay;
+        }
+
+        /**
+         * Time to wait before the {@link PgNotificationListener} reconnects after losing its connection.
+         */
+        public Duration getReconnectDelay() {
+            return reconnectDelay;
+        }
+    }
+
+    public static class ReadBatching {
+        private final boolean enabled;
+        private final Duration window;
+        private final int maxSize;
+
+        @ConstructorBinding
+        public ReadBatching(@DefaultValue("false") boolean enabled, @DefaultValue("200us") Duration window, @DefaultValue("64") int maxSize) {
+            if (window.isNegative()) {
+                throw new IllegalArgumentException("db.read-batching.window must not be negative: " + window);
+            }
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("db.read-batching.max-size must be positive: " + maxSize);
+            }
+            this.enabled = enabled;
+            this.window = window;
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Batches concurrent {@code GetVehicle} and {@code GetAccount} lookups into one query, see
+         * {@link io.github.jedvardsson.fuelcost.common.MicroBatcher}.
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Longest time a lookup waits for others to join its batch, while another batch is loading.
+         */
+        public Duration getWindow() {
+            return window;
+        }
+
+        /**
+         * A batch is loaded at once when it holds this many keys.
+         */
+        public int getMaxSize() {
+            return maxSize;
+        }
+    }
+}
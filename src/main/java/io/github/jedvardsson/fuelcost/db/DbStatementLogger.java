@@ -0,0 +1,108 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.slf4j.Logger;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Records the execution time of every Jdbi statement, tagged with the name given by
+ * {@link DbClient#STATEMENT}, and logs statements slower than a threshold.
+ * <ul>
+ *     <li>{@code db.statement}: execution time, tagged {@code statement} and {@code outcome} (success or error)</li>
+ *     <li>{@code db.statement.rows}: rows affected, for statements the driver reports an update count for</li>
+ * </ul>
+ * The time is from sending the statement until the driver returns; for queries without a fetch size it
+ * includes receiving all rows, but not mapping them. Connection acquire time is recorded by Hikari as
+ * {@code hikaricp.connections.acquire}.
+ */
+class DbStatementLogger implements SqlLogger {
+
+    private static final Logger LOGGER = getLogger(DbStatementLogger.class);
+    static final String UNNAMED = "unnamed";
+
+    private final MeterRegistry meterRegistry;
+    private final long slowThresholdNanos;
+    private final Map<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+
+    DbStatementLogger(MeterRegistry meterRegistry, Duration slowThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    public void logAfterExecution(StatementContext ctx) {
+        StatementMetrics metrics = getMetrics(ctx);
+        long nanos = ctx.getElapsedTime(ChronoUnit.NANOS);
+        metrics.success.record(nanos, TimeUnit.NANOSECONDS);
+        int updateCount = getUpdateCount(ctx.getStatement());
+        if (updateCount >= 0) {
+            metrics.rows.record(updateCount);
+        }
+        if (nanos >= slowThresholdNanos) {
+            LOGGER.warn("Slow statement {}: {} ms\n{}", metrics.name, TimeUnit.NANOSECONDS.toMillis(nanos), ctx.getRenderedSql());
+        }
+    }
+
+    @Override
+    public void logException(StatementContext ctx, SQLException ex) {
+        StatementMetrics metrics = getMetrics(ctx);
+        long nanos = ctx.getElapsedTime(ChronoUnit.NANOS);
+        metrics.error.record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos >= slowThresholdNanos) {
+            LOGGER.warn("Slow statement {} failed: {} ms: {}\n{}", metrics.name, TimeUnit.NANOSECONDS.toMillis(nanos), ex.getSQLState(), ctx.getRenderedSql());
+        }
+    }
+
+    private StatementMetrics getMetrics(StatementContext ctx) {
+        String name = ctx.getAttribute(DbClient.STATEMENT) instanceof String s ? s : UNNAMED;
+        StatementMetrics metrics = statements.get(name);
+        return metrics != null ? metrics : statements.computeIfAbsent(name, n -> new StatementMetrics(meterRegistry, n));
+    }
+
+    private static int getUpdateCount(PreparedStatement statement) {
+        try {
+            return statement == null ? -1 : statement.getUpdateCount();
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    private static final class StatementMetrics {
+        private final String name;
+        private final Timer success;
+        private final Timer error;
+        private final DistributionSummary rows;
+
+        StatementMetrics(MeterRegistry meterRegistry, String name) {
+            this.name = name;
+            this.success = timer(meterRegistry, name, "success");
+            this.error = timer(meterRegistry, name, "error");
+            this.rows = DistributionSummary.builder("db.statement.rows")
+                    .description("Rows affected by a statement")
+                    .tag("statement", name)
+                    .register(meterRegistry);
+        }
+
+        private static Timer timer(MeterRegistry meterRegistry, String name, String outcome) {
+            return Timer.builder("db.statement")
+                    .description("Statement execution time")
+                    .tag("statement", name)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .register(meterRegistry);
+        }
+    }
+}
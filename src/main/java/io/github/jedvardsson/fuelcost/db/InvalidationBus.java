@@ -0,0 +1,182 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Tells the in-process caches of all nodes that a resource has changed, over Postgres {@code NOTIFY} on the
+ * {@code cache_invalidation} channel.
+ * <p>
+ * Changes published in a transaction are collected and sent in one statement before it commits. Postgres delivers
+ * them when, and only if, the transaction commits. Outside a transaction they are sent at once. Each node skips its
+ * own notifications, since the writer invalidates its local caches itself. Notifications are lost while a node's
+ * listener is disconnected, so all subscribers are {@link Subscriber#invalidateAll() flushed} when it reconnects.
+ * <p>
+ * The time from publishing to receiving, on another node's clock, is recorded as {@code cache.invalidation.lag}.
+ */
+@Service
+public class InvalidationBus implements PgNotificationListener.Listener {
+
+    private static final Logger LOGGER = getLogger(InvalidationBus.class);
+
+    static final String CHANNEL = "cache_invalidation";
+
+    /**
+     * Version published for a deleted resource. Newer than any cached version.
+     */
+    public static final long DELETED = Long.MAX_VALUE;
+
+    // Postgres rejects payloads of 8000 bytes or more.
+    private static final int MAX_PAYLOAD_BYTES = 7999;
+
+    public interface Subscriber {
+        /**
+         * Drops any entry of the named resource older than the given version. Names of resources the subscriber
+         * does not cache are ignored.
+         */
+        void invalidate(String name, long version);
+
+        void invalidateAll();
+    }
+
+    private final DbClient dbClient;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Timer lag;
+    private final Counter received;
+    private final Counter flushes;
+
+    public InvalidationBus(DbClient dbClient, PgNotificationListener notificationListener, MeterRegistry meterRegistry) {
+        this.dbClient = dbClient;
+        this.lag = Timer.builder("cache.invalidation.lag")
+                .description("Time from publishing an invalidation on another node until it is received")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.received = Counter.builder("cache.invalidations")
+                .description("Invalidations received from other nodes")
+                .register(meterRegistry);
+        this.flushes = Counter.builder("cache.invalidation.flushes")
+                .description("Times all caches were flushed since invalidations may have been missed")
+                .register(meterRegistry);
+        notificationListener.listen(CHANNEL, this);
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Publishes that the named resource now has the given version, or was {@link #DELETED}.
+     */
+    public void publish(String name, long version) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            send(Map.of(name, version));
+            return;
+        }
+        Batch batch = (Batch) TransactionSynchronizationManager.getResource(this);
+        if (batch == null) {
+            batch = new Batch();
+            TransactionSynchronizationManager.bindResource(this, batch);
+            TransactionSynchronizationManager.registerSynchronization(batch);
+        }
+        batch.versions.merge(name, version, Math::max);
+    }
+
+    private void send(Map<String, Long> versions) {
+        List<String> payloads = format(nodeId, System.currentTimeMillis(), versions);
+        dbClient.withHandle(h -> h.createQuery("""
+                        select pg_notify(:channel, p) from unnest(:payloads) p
+                        """)
+                .define(DbClient.STATEMENT, "cache.invalidate")
+                .bind("channel", CHANNEL)
+                .bind("payloads", payloads.toArray(String[]::new))
+                .mapTo(String.class)
+                .list());
+    }
+
+    /**
+     * Writes a header line {@code node time} followed by one {@code version name} line per resource, split into
+     * as many payloads as needed.
+     */
+    static List<String> format(String nodeId, long timeMillis, Map<String, Long> versions) {
+        String header = nodeId + " " + timeMillis;
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(header);
+        int bytes = header.length();
+        for (Map.Entry<String, Long> e : versions.entrySet()) {
+            String line = "\n" + e.getValue() + " " + e.getKey();
+            int lineBytes = line.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes + lineBytes > MAX_PAYLOAD_BYTES && bytes > header.length()) {
+                payloads.add(payload.toString());
+                payload.setLength(0);
+                payload.append(header);
+                bytes = header.length();
+            }
+            payload.append(line);
+            bytes += lineBytes;
+        }
+        payloads.add(payload.toString());
+        return payloads;
+    }
+
+    @Override
+    public void onNotification(String payload) {
+        String[] lines = payload.split("\n");
+        String[] header = lines[0].split(" ", 2);
+        if (header[0].equals(nodeId)) {
+            return;
+        }
+        lag.record(Math.max(0, System.currentTimeMillis() - Long.parseLong(header[1])), TimeUnit.MILLISECONDS);
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            int space = line.indexOf(' ');
+            long version = Long.parseLong(line, 0, space, 10);
+            String name = line.substring(space + 1);
+            received.increment();
+            for (Subscriber subscriber : subscribers) {
+                subscriber.invalidate(name, version);
+            }
+        }
+    }
+
+    @Override
+    public void onReconnect() {
+        flushes.increment();
+        LOGGER.info("Flushing caches since invalidations may have been missed");
+        for (Subscriber subscriber : subscribers) {
+            subscriber.invalidateAll();
+        }
+    }
+
+    private final class Batch implements TransactionSynchronization {
+        private final Map<String, Long> versions = new LinkedHashMap<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (!versions.isEmpty()) {
+                send(versions);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(InvalidationBus.this);
+        }
+    }
+}
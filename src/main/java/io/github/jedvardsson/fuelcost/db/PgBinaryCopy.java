@@ -0,0 +1,141 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import com.google.protobuf.Timestamp;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Rows encoded in the binary format of {@code COPY ... from stdin (format binary)}, see
+ * <a href="https://www.postgresql.org/docs/current/sql-copy.html">COPY</a>, and written
+ * with {@link #copyIn(Connection, String)}. Each row is started with the number of values, which are then written
+ * in the order and with the types of the columns listed by the statement. Skips parsing text on the server and
+ * sends many rows per round trip.
+ */
+public final class PgBinaryCopy {
+
+    private static final byte[] SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    // Postgres counts timestamps in microseconds from 2000-01-01 UTC.
+    private static final long POSTGRES_EPOCH_SECONDS = 946_684_800L;
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(8192);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private final Buffer buffer = new Buffer();
+    private int rowCount;
+
+    public PgBinaryCopy() {
+        buffer.writeBytes(SIGNATURE);
+        // flags and header extension length
+        writeInt(0);
+        writeInt(0);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Size of the encoded rows in bytes.
+     */
+    public int size() {
+        return buffer.size();
+    }
+
+    public PgBinaryCopy startRow(int valueCount) {
+        writeShort(valueCount);
+        rowCount++;
+        return this;
+    }
+
+    public PgBinaryCopy writeNull() {
+        writeInt(-1);
+        return this;
+    }
+
+    /**
+     * Writes a {@code bigint}.
+     */
+    public PgBinaryCopy writeLong(long value) {
+        writeInt(8);
+        writeRawLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a {@code double precision}.
+     */
+    public PgBinaryCopy writeDouble(double value) {
+        writeInt(8);
+        writeRawLong(Double.doubleToLongBits(value));
+        return this;
+    }
+
+    /**
+     * Writes a {@code text}, or null.
+     */
+    public PgBinaryCopy writeText(String value) {
+        if (value == null) {
+            return writeNull();
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        buffer.writeBytes(bytes);
+        return this;
+    }
+
+    /**
+     * Writes a {@code timestamptz}, truncated to microseconds.
+     */
+    public PgBinaryCopy writeTimestamp(Timestamp value) {
+        writeInt(8);
+        writeRawLong(Math.addExact(Math.multiplyExact(value.getSeconds() - POSTGRES_EPOCH_SECONDS, 1_000_000L), value.getNanos() / 1000));
+        return this;
+    }
+
+    /**
+     * Runs the {@code copy ... from stdin (format binary)} statement with the rows on the connection, and returns
+     * the number of rows copied. The rows can not be copied again.
+     */
+    public long copyIn(Connection connection, String sql) throws SQLException {
+        writeShort(-1);
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+        try {
+            copyIn.writeToCopy(buffer.array(), 0, buffer.size());
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void writeShort(int v) {
+        buffer.write(v >>> 8);
+        buffer.write(v);
+    }
+
+    private void writeInt(int v) {
+        buffer.write(v >>> 24);
+        buffer.write(v >>> 16);
+        buffer.write(v >>> 8);
+        buffer.write(v);
+    }
+
+    private void writeRawLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Receives Postgres notifications ({@code LISTEN}/{@code NOTIFY}) on a single dedicated connection, outside the
+ * connection pool, and dispatches them to the listeners of each channel on the thread {@code db-notification-listener}.
+ * <p>
+ * Notifications sent while the connection is down are lost. Listeners are told with {@link Listener#onReconnect()}
+ * once the connection is back, so they can resynchronize. Channels must be listened to before the application
+ * context has started, i.e. from a constructor.
+ */
+@Service
+public class PgNotificationListener implements SmartLifecycle {
+
+    private static final Logger LOGGER = getLogger(PgNotificationListener.class);
+
+    // Bounds how long stop() waits for the listener thread.
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+
+    public interface Listener {
+        /**
+         * Called on the listener thread for every notification on the channel. Must not block.
+         */
+        void onNotification(String payload);
+
+        /**
+         * Called on the listener thread after the connection was lost and re-established.
+         */
+        default void onReconnect() {
+        }
+    }
+
+    private final DataSource dataSource;
+    private final Duration reconnectDelay;
+    private final MeterRegistry meterRegistry;
+    private final Counter reconnects;
+    private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<>();
+    private final Map<String, Counter> notifications = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread thread;
+    private Connection connection;
+
+    public PgNotificationListener(DataSourceProperties dataSourceProperties, DbProperties dbProperties, MeterRegistry meterRegistry) {
+        this.dataSource = dataSourceProperties.initializeDataSourceBuilder().type(SimpleDriverDataSource.class).build();
+        this.reconnectDelay = dbProperties.getNotifications().getReconnectDelay();
+        this.meterRegistry = meterRegistry;
+        this.reconnects = Counter.builder("db.notification.reconnects")
+                .description("Times the notification connection was re-established after it was lost")
+                .register(meterRegistry);
+    }
+
+    public void listen(String channel, Listener listener) {
+        if (running) {
+            throw new IllegalStateException("cannot listen to channel %s after start".formatted(channel));
+        }
+        listeners.computeIfAbsent(channel, c -> {
+            notifications.put(c, Counter.builder("db.notifications")
+                    .description("Notifications received")
+                    .tag("channel", c)
+                    .register(meterRegistry));
+            return new CopyOnWriteArrayList<>();
+        }).add(listener);
+    }
+
+    /**
+     * Connects and listens before returning, so that notifications sent after the application has started
+     * are received. If that fails, the listener thread keeps trying.
+     */
+    @Override
+    public synchronized void start() {
+        if (running || listeners.isEmpty()) {
+            return;
+        }
+        running = true;
+        try {
+            connect();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to listen for notifications, retrying in {}", reconnectDelay, e);
+            close();
+        }
+        thread = new Thread(this::run, "db-notification-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            try {
+                t.join(POLL_TIMEOUT_MILLIS * 2L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        boolean reconnect = connection == null;
+        while (running) {
+            try {
+                if (connection == null) {
+                    connect();
+                    if (reconnect) {
+                        reconnects.increment();
+                        LOGGER.info("Listening for notifications again: {}", listeners.keySet());
+                        listeners.values().forEach(l -> l.forEach(PgNotificationListener::onReconnect));
+                    }
+                }
+                PGNotification[] received = connection.unwrap(PGConnection.class).getNotifications(POLL_TIMEOUT_MILLIS);
+                if (received != null) {
+                    for (PGNotification notification : received) {
+                        dispatch(notification);
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                LOGGER.warn("Lost notification connection, reconnecting in {}", reconnectDelay, e);
+                close();
+                reconnect = true;
+                sleep(reconnectDelay);
+            }
+        }
+        close();
+    }
+
+    private void connect() throws SQLException {
+        connection = dataSource.getConnection();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            for (String channel : listeners.keySet()) {
+                statement.execute("listen " + connection.unwrap(PGConnection.class).escapeIdentifier(channel));
+            }
+        }
+    }
+
+    private void dispatch(PGNotification notification) {
+        String channel = notification.getName();
+        List<Listener> channelListeners = listeners.get(channel);
+        if (channelListeners == null) {
+            return;
+        }
+        notifications.get(channel).increment();
+        for (Listener listener : channelListeners) {
+            try {
+                listener.onNotification(notification.getParameter());
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to handle notification on {}: {}", channel, notification.getParameter(), e);
+            }
+        }
+    }
+
+    private static void onReconnect(Listener listener) {
+        try {
+            listener.onReconnect();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to handle reconnect", e);
+        }
+    }
+
+    private void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOGGER.debug("Failed to close notification connection", e);
+            }
+            connection = null;
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
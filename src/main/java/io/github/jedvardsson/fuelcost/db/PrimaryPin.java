@@ -0,0 +1,80 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.grpc.Context;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Keeps reads on the primary for the rest of a scope, typically a gRPC call, once the scope has started a
+ * read-write transaction. A replica may not have replayed the write yet, so a read-only transaction following
+ * it would not see it. Outside a scope nothing is pinned.
+ */
+public final class PrimaryPin {
+
+    private static final Context.Key<PrimaryPin> KEY = Context.key("primary-pin");
+
+    private volatile boolean pinned;
+
+    private PrimaryPin() {
+    }
+
+    /**
+     * Returns the current context with a new, unpinned scope.
+     */
+    public static Context newScope() {
+        return Context.current().withValue(KEY, new PrimaryPin());
+    }
+
+    public static boolean isPinned() {
+        PrimaryPin pin = KEY.get();
+        return pin != null && pin.pinned;
+    }
+
+    /**
+     * Whether reads must see the writes of the current transaction or scope, so that they can neither be served
+     * by a replica nor share a read that may be: in a read-write transaction, or in a pinned scope.
+     */
+    public static boolean isPrimaryRequired() {
+        return isReadWriteTransaction() || isPinned();
+    }
+
+    static void pin() {
+        PrimaryPin pin = KEY.get();
+        if (pin != null) {
+            pin.pinned = true;
+        }
+    }
+
+    /**
+     * Wraps the primary so that acquiring a connection for a read-write transaction pins the current scope.
+     */
+    static DataSource pinning(DataSource primary) {
+        return new DelegatingDataSource(primary) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                pinIfReadWrite();
+                return super.getConnection();
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                pinIfReadWrite();
+                return super.getConnection(username, password);
+            }
+        };
+    }
+
+    private static void pinIfReadWrite() {
+        if (isReadWriteTransaction()) {
+            pin();
+        }
+    }
+
+    private static boolean isReadWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive() && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes read-only transactions to replicas when {@code db.replicas.enabled}.
+ * <p>
+ * The primary pool is created here as Spring Boot would, and the {@link Primary} data source used by Jdbi,
+ * Flyway and the transaction manager becomes a {@link LazyConnectionDataSourceProxy} over it. The proxy only
+ * gets a connection on the first statement, when the transaction manager has marked the connection read-only,
+ * and then takes it from the {@link ReplicaDataSource}. Each gRPC call is a {@link PrimaryPin} scope, so reads
+ * after a write in the same call stay on the primary. {@link DbClient#stream} runs outside Spring transactions and
+ * takes its connections from the {@link ReplicaDataSource} directly.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "db.replicas", name = "enabled", havingValue = "true")
+public class ReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaDataSource replicaDataSource(DataSourceProperties dataSourceProperties, DbProperties dbProperties, HikariDataSource primaryDataSource, MeterRegistry meterRegistry) {
+        DbProperties.Replicas properties = dbProperties.getReplicas();
+        List<ReplicaDataSource.Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.getUrls().size(); i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + (i + 1));
+            dataSource.setJdbcUrl(properties.getUrls().get(i));
+            dataSource.setUsername(dataSourceProperties.determineUsername());
+            dataSource.setPassword(dataSourceProperties.determinePassword());
+            dataSource.setMaximumPoolSize(properties.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            // started on first use, and a replica that is down must not fail startup
+            dataSource.setInitializationFailTimeout(-1);
+            dataSource.setMetricRegistry(meterRegistry);
+            replicas.add(ReplicaDataSource.Replica.of(dataSource));
+        }
+        ReplicaDataSource replicaDataSource = new ReplicaDataSource(primaryDataSource, replicas, properties.getSelection(), properties.getMaxLag(), meterRegistry);
+        replicaDataSource.start(properties.getCheckInterval());
+        return replicaDataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(PrimaryPin.pinning(primaryDataSource));
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+
+    @Bean
+    public ServerInterceptor primaryPinInterceptor() {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                return Contexts.interceptCall(PrimaryPin.newScope(), call, headers, next);
+            }
+        };
+    }
+}
@@ -0,0 +1,239 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The read-only target of the {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} set up by
+ * {@link ReplicaConfig}. Hands out connections of a healthy replica, chosen by {@link DbProperties.ReplicaSelection},
+ * and of the primary when no replica is healthy or the current scope is {@link PrimaryPin pinned}.
+ * <p>
+ * Replicas are checked every check interval. A replica is healthy if it answers, is streaming WAL from the
+ * primary, and has replayed the WAL it has received, or the last transaction it replayed is at most max lag old.
+ * Until the first check, replicas are not healthy.
+ */
+public class ReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final Logger LOGGER = getLogger(ReplicaDataSource.class);
+
+    // At most one WAL receiver runs. Its status is only visible with the privileges of pg_read_all_stats.
+    private static final String LAG_QUERY = """
+            select
+                pg_is_in_recovery() as in_recovery,
+                r.pid is not null as receiving,
+                r.status as receiver_status,
+                pg_last_wal_receive_lsn() is not distinct from pg_last_wal_replay_lsn() as replayed,
+                extract(epoch from clock_timestamp() - pg_last_xact_replay_timestamp())::float8 as replay_age
+            from (select) x
+            left join pg_stat_wal_receiver r on true
+            """;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final DbProperties.ReplicaSelection selection;
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter fallbacks;
+    private ScheduledExecutorService scheduler;
+
+    public ReplicaDataSource(DataSource primary, List<Replica> replicas, DbProperties.ReplicaSelection selection, Duration maxLag, MeterRegistry meterRegistry) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("replicas must not be empty");
+        }
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.selection = selection;
+        this.maxLagSeconds = maxLag.toNanos() / 1e9;
+        this.fallbacks = Counter.builder("db.replica.fallbacks")
+                .description("Read-only connections taken from the primary since no replica was healthy")
+                .register(meterRegistry);
+        for (Replica replica : this.replicas) {
+            Gauge.builder("db.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+            Gauge.builder("db.replica.lag", replica, r -> r.lagSeconds)
+                    .baseUnit("seconds")
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return selectDataSource().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return selectDataSource().getConnection(username, password);
+    }
+
+    DataSource selectDataSource() {
+        if (PrimaryPin.isPinned()) {
+            return primary;
+        }
+        Replica replica = selectReplica();
+        if (replica == null) {
+            fallbacks.increment();
+            return primary;
+        }
+        return replica.dataSource;
+    }
+
+    private Replica selectReplica() {
+        int n = replicas.size();
+        if (selection == DbProperties.ReplicaSelection.LEAST_OUTSTANDING) {
+            Replica best = null;
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                Replica replica = replicas.get(i);
+                if (replica.healthy) {
+                    int outstanding = replica.outstanding.getAsInt();
+                    if (outstanding < min) {
+                        best = replica;
+                        min = outstanding;
+                    }
+                }
+            }
+            return best;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica replica = replicas.get((start + i) % n);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    public void start(Duration checkInterval) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(5);
+                try (ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                    rs.next();
+                    ReplicaStatus status = new ReplicaStatus(rs.getBoolean("in_recovery"), rs.getBoolean("receiving"), rs.getString("receiver_status"),
+                            rs.getBoolean("replayed"), rs.getObject("replay_age", Double.class));
+                    update(replica, true, status.lagSeconds());
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (replica.healthy) {
+                    LOGGER.warn("Replica {} is unavailable", replica.name, e);
+                }
+                update(replica, false, Double.NaN);
+            }
+        }
+    }
+
+    void update(Replica replica, boolean reachable, double lagSeconds) {
+        boolean healthy = reachable && lagSeconds <= maxLagSeconds;
+        if (reachable && !healthy && replica.healthy && Double.isInfinite(lagSeconds)) {
+            LOGGER.warn("Replica {} is not streaming from the primary", replica.name);
+        } else if (reachable && !healthy && replica.healthy) {
+            LOGGER.warn("Replica {} lags {} s behind the primary", replica.name, lagSeconds);
+        } else if (healthy && !replica.healthy) {
+            LOGGER.info("Replica {} is available", replica.name);
+        }
+        replica.lagSeconds = lagSeconds;
+        replica.healthy = healthy;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable c) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * The result of the lag query of a replica.
+     *
+     * @param receiverStatus null if not visible to the user
+     * @param replayAge      seconds since the last replayed transaction committed on the primary, null if none
+     */
+    record ReplicaStatus(boolean inRecovery, boolean receiving, String receiverStatus, boolean replayed, Double replayAge) {
+
+        /**
+         * Returns the replay lag in seconds, or infinity if it is unknown. A replica that is not receiving WAL
+         * reports no lag once it has replayed what it received, while the primary moves on, so it is considered
+         * infinitely behind. An idle primary sends no new transactions, so the replay age only tells the lag
+         * while received WAL is not yet replayed.
+         */
+        double lagSeconds() {
+            if (!inRecovery) {
+                return 0;
+            }
+            if (!receiving || receiverStatus != null && !receiverStatus.equals("streaming")) {
+                return Double.POSITIVE_INFINITY;
+            }
+            if (replayed) {
+                return 0;
+            }
+            return replayAge == null ? 0 : Math.max(0, replayAge);
+        }
+    }
+
+    public static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final IntSupplier outstanding;
+        private volatile boolean healthy;
+        private volatile double lagSeconds = Double.NaN;
+
+        /**
+         * @param outstanding number of connections in use or waited for, used by
+         *                    {@link DbProperties.ReplicaSelection#LEAST_OUTSTANDING}
+         */
+        public Replica(String name, DataSource dataSource, IntSupplier outstanding) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.outstanding = outstanding;
+        }
+
+        public static Replica of(HikariDataSource dataSource) {
+            return new Replica(dataSource.getPoolName(), dataSource, () -> {
+                HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+                return pool == null ? 0 : pool.getActiveConnections() + pool.getThreadsAwaitingConnection();
+            });
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+    }
+}
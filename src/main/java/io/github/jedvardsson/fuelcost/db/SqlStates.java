@@ -0,0 +1,26 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import java.sql.SQLException;
+
+/**
+ * Postgres error codes, see <a href="https://www.postgresql.org/docs/current/errcodes-appendix.html">Appendix A</a>.
+ */
+public final class SqlStates {
+
+    public static final String FOREIGN_KEY_VIOLATION = "23503";
+
+    private SqlStates() {
+    }
+
+    /**
+     * Returns true if the throwable or any of its causes is a {@link SQLException} with the given SQL state.
+     */
+    public static boolean hasSqlState(Throwable throwable, String sqlState) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof SQLException e && sqlState.equals(e.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
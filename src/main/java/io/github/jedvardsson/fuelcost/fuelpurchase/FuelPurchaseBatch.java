@@ -0,0 +1,112 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import com.google.protobuf.util.Timestamps;
+import com.google.type.Money;
+import io.github.jedvardsson.fuelcost.common.Arguments;
+import io.github.jedvardsson.fuelcost.db.PgBinaryCopy;
+import io.github.jedvardsson.fuelcost.grpc.GrpcException;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchase;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Fuel purchases validated and encoded for {@code COPY} as they are received, to be written by
+ * {@link FuelPurchaseDao#insertFuelPurchases(FuelPurchaseBatch)}.
+ */
+public final class FuelPurchaseBatch {
+
+    static final String COPY = """
+            copy fuel_purchase (account_id, vehicle_id, purchase_time, volume_liters, price_micros, currency_code, odometer_km)
+            from stdin (format binary)
+            """;
+    private static final int COLUMN_COUNT = 7;
+    static final Pattern CURRENCY_CODE = Pattern.compile("[A-Z]{3}");
+
+    private final PgBinaryCopy rows = new PgBinaryCopy();
+    private final Set<VehicleName> vehicles = new LinkedHashSet<>();
+
+    public int getRowCount() {
+        return rows.getRowCount();
+    }
+
+    PgBinaryCopy getRows() {
+        return rows;
+    }
+
+    /**
+     * The vehicles the purchases were made by.
+     */
+    Set<VehicleName> getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Adds the purchases of a request. Nothing is added if any of them is invalid.
+     */
+    public void add(IngestFuelPurchasesRequest request) {
+        VehicleName parent = Arguments.parse(request.getParent(), "parent", VehicleName::parse);
+        for (int i = 0; i < request.getFuelPurchasesCount(); i++) {
+            validate(request.getFuelPurchases(i), "fuel_purchases[" + i + "].");
+        }
+        if (request.getFuelPurchasesCount() == 0) {
+            return;
+        }
+        vehicles.add(parent);
+        for (FuelPurchase p : request.getFuelPurchasesList()) {
+            rows.startRow(COLUMN_COUNT)
+                    .writeLong(parent.accountId())
+                    .writeLong(parent.vehicleId())
+                    .writeTimestamp(p.getPurchaseTime())
+                    .writeDouble(p.getVolumeLiters())
+                    .writeLong(toMicros(p.getPrice()))
+                    .writeText(p.getPrice().getCurrencyCode());
+            if (p.hasOdometerKm()) {
+                rows.writeDouble(p.getOdometerKm());
+            } else {
+                rows.writeNull();
+            }
+        }
+    }
+
+    private static void validate(FuelPurchase p, String prefix) {
+        if (!p.hasPurchaseTime()) {
+            throw GrpcException.requiredArgument(prefix + "purchase_time");
+        }
+        if (!Timestamps.isValid(p.getPurchaseTime())) {
+            throw GrpcException.invalidArgument(prefix + "purchase_time", "out of range: " + p.getPurchaseTime().getSeconds() + "s");
+        }
+        if (!(p.getVolumeLiters() > 0) || Double.isInfinite(p.getVolumeLiters())) {
+            throw GrpcException.invalidArgument(prefix + "volume_liters", "must be positive: " + p.getVolumeLiters());
+        }
+        if (!p.hasPrice()) {
+            throw GrpcException.requiredArgument(prefix + "price");
+        }
+        Money price = p.getPrice();
+        if (!CURRENCY_CODE.matcher(price.getCurrencyCode()).matches()) {
+            throw GrpcException.invalidArgument(prefix + "price.currency_code", "must be an ISO 4217 code: " + price.getCurrencyCode());
+        }
+        if (price.getNanos() > 999_999_999) {
+            throw GrpcException.invalidArgument(prefix + "price.nanos", "must be at most 999999999: " + price.getNanos());
+        }
+        if (price.getUnits() < 0 || price.getNanos() < 0) {
+            throw GrpcException.invalidArgument(prefix + "price", "must not be negative: " + price.getUnits() + "." + price.getNanos());
+        }
+        if (price.getNanos() % 1000 != 0) {
+            throw GrpcException.invalidArgument(prefix + "price.nanos", "must be whole micro units: " + price.getNanos());
+        }
+        if (price.getUnits() > Long.MAX_VALUE / 1_000_000 - 1) {
+            throw GrpcException.invalidArgument(prefix + "price.units", "too large: " + price.getUnits());
+        }
+        if (p.hasOdometerKm() && (!(p.getOdometerKm() >= 0) || Double.isInfinite(p.getOdometerKm()))) {
+            throw GrpcException.invalidArgument(prefix + "odometer_km", "must not be negative: " + p.getOdometerKm());
+        }
+    }
+
+    static long toMicros(Money price) {
+        return price.getUnits() * 1_000_000 + price.getNanos() / 1000;
+    }
+}
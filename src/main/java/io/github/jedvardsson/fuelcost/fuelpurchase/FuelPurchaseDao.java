@@ -0,0 +1,449 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+import com.google.type.Money;
+import io.github.jedvardsson.fuelcost.account.AccountName;
+import io.github.jedvardsson.fuelcost.common.Arguments;
+import io.github.jedvardsson.fuelcost.common.PageTokens;
+import io.github.jedvardsson.fuelcost.db.DbClient;
+import io.github.jedvardsson.fuelcost.grpc.GrpcException;
+import io.github.jedvardsson.fuelcost.grpc.ProtoHelpers;
+import io.github.jedvardsson.fuelcost.v1.AccountFuelReport;
+import io.github.jedvardsson.fuelcost.v1.FuelCostSummary;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchase;
+import io.github.jedvardsson.fuelcost.v1.GetAccountFuelReportRequest;
+import io.github.jedvardsson.fuelcost.v1.GetFuelCostSummaryRequest;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesResponse;
+import io.github.jedvardsson.fuelcost.v1.MonthlyFuelCost;
+import io.github.jedvardsson.fuelcost.v1.VehicleFuelReport;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.result.RowView;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+@Service
+public class FuelPurchaseDao {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int REPORT_FETCH_SIZE = 10000;
+    // a fork/join task per thread of the common pool
+    private static final int REPORT_CHUNK_ROWS = FuelReport.ROWS_PER_TASK * ForkJoinPool.getCommonPoolParallelism();
+    private static final double SECONDS_PER_MONTH = 30.436875 * 24 * 60 * 60;
+
+    // Bounded by constants comparable to the partition key, so that the planner only reads the partitions of the
+    // range: when planning if the values are known, otherwise when executing (Subplans Removed).
+    static final String LIST = """
+            select
+                t.account_id,
+                t.vehicle_id,
+                t.fuel_purchase_id,
+                t.purchase_time,
+                t.volume_liters,
+                t.price_micros,
+                t.currency_code,
+                t.odometer_km
+            from fuel_purchase t
+            where
+                t.account_id = :account_id
+                and t.vehicle_id = :vehicle_id
+                and t.purchase_time >= :start_time
+                and t.purchase_time < :end_time
+                and (t.purchase_time, t.fuel_purchase_id) > (:page_token_purchase_time, :page_token_fuel_purchase_id)
+            order by t.purchase_time, t.fuel_purchase_id
+            limit :page_size
+            """;
+
+    private record PageToken(long purchaseTimeMicros, long fuelPurchaseId) {
+        static final PageTokens.Codec<PageToken> CODEC = PageTokens.codec(3, PageToken.class,
+                k -> new PageToken(k[0], k[1]), List.of(PageToken::purchaseTimeMicros, PageToken::fuelPurchaseId));
+    }
+
+    private final DbClient dbClient;
+
+    public FuelPurchaseDao(DbClient dbClient) {
+        this.dbClient = dbClient;
+    }
+
+    /**
+     * Writes the purchases of the batch with a single binary {@code COPY} and returns the number written.
+     * The vehicles are locked against deletion first, so a missing vehicle fails the batch with NOT_FOUND
+     * naming it rather than with a foreign key violation.
+     */
+    @Transactional
+    public long insertFuelPurchases(FuelPurchaseBatch batch) {
+        if (batch.getRowCount() == 0) {
+            return 0;
+        }
+        return dbClient.withHandle(h -> {
+            lockVehicles(h, batch.getVehicles());
+            try {
+                return batch.getRows().copyIn(h.getConnection(), FuelPurchaseBatch.COPY);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to copy fuel purchases: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private static void lockVehicles(Handle h, Set<VehicleName> vehicles) {
+        List<VehicleName> found = h.createQuery("""
+                        select t.account_id, t.vehicle_id
+                        from unnest(:account_ids, :vehicle_ids) as x(account_id, vehicle_id)
+                        join vehicle t on t.account_id = x.account_id and t.vehicle_id = x.vehicle_id
+                        order by t.account_id, t.vehicle_id
+                        for key share of t
+                        """)
+                .define(DbClient.STATEMENT, "fuelPurchase.lockVehicles")
+                .bind("account_ids", vehicles.stream().mapToLong(VehicleName::accountId).toArray())
+                .bind("vehicle_ids", vehicles.stream().mapToLong(VehicleName::vehicleId).toArray())
+                .map(r -> new VehicleName(r.getColumn("account_id", Long.class), r.getColumn("vehicle_id", Long.class)))
+                .list();
+        if (found.size() != vehicles.size()) {
+            for (VehicleName vehicle : vehicles) {
+                if (!found.contains(vehicle)) {
+                    throw GrpcException.notFound(vehicle.toString());
+                }
+            }
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public ListFuelPurchasesResponse listFuelPurchases(ListFuelPurchasesRequest request) {
+        VehicleName parent = Arguments.parse(request.getParent(), "parent", VehicleName::parse);
+        Timestamp startTime = requireTimestamp(request.hasStartTime(), request.getStartTime(), "start_time");
+        Timestamp endTime = requireTimestamp(request.hasEndTime(), request.getEndTime(), "end_time");
+        if (Timestamps.compare(startTime, endTime) > 0) {
+            throw GrpcException.invalidArgument("end_time", "must not be before start_time");
+        }
+        PageToken pageToken = PageTokens.parseOptional(request.getPageToken(), PageToken.CODEC).orElse(null);
+        int pageSize = request.getPageSize() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(MAX_PAGE_SIZE, request.getPageSize());
+
+        Timestamp pageTokenTime = pageToken == null ? startTime : Timestamps.fromMicros(pageToken.purchaseTimeMicros());
+        long pageTokenId = pageToken == null ? 0L : pageToken.fuelPurchaseId();
+        List<FuelPurchase> purchases = dbClient.withHandle(h -> {
+            List<FuelPurchase> page = h.createQuery(LIST)
+                    .define(DbClient.STATEMENT, "fuelPurchase.list")
+                    .bind("account_id", parent.accountId())
+                    .bind("vehicle_id", parent.vehicleId())
+                    // the start of the next page is also a bound of the partition key
+                    .bind("start_time", Timestamps.compare(pageTokenTime, startTime) > 0 ? pageTokenTime : startTime)
+                    .bind("end_time", endTime)
+                    .bind("page_token_purchase_time", pageTokenTime)
+                    .bind("page_token_fuel_purchase_id", pageTokenId)
+                    .bind("page_size", pageSize)
+                    .map(FuelPurchaseDao::getFuelPurchase)
+                    .list();
+            if (page.isEmpty() && pageToken == null) {
+                requireExists(h, parent);
+            }
+            return page;
+        });
+
+        int size = purchases.size();
+        String nextPageToken = "";
+        if (size == pageSize) {
+            FuelPurchase last = purchases.get(size - 1);
+            long lastId = Long.parseLong(last.getName().substring(last.getName().lastIndexOf('/') + 1));
+            nextPageToken = PageTokens.format(new PageToken(Timestamps.toMicros(last.getPurchaseTime()), lastId), PageToken.CODEC);
+        }
+        return ListFuelPurchasesResponse.newBuilder()
+                .addAllFuelPurchases(purchases)
+                .setNextPageToken(nextPageToken)
+                .build();
+    }
+
+    /**
+     * Computes the report from the purchases of the account loaded into {@link FuelReportColumns}, without an
+     * object per purchase. The purchases are computed in chunks of at least {@link #REPORT_CHUNK_ROWS} ending at a
+     * vehicle while they are read, so only one chunk is held at a time.
+     */
+    @Transactional(readOnly = true)
+    public AccountFuelReport getAccountFuelReport(GetAccountFuelReportRequest request) {
+        String name = request.getName();
+        AccountName account = Arguments.parse(name, "name", AccountName::parse);
+        Timestamp startTime = requireTimestamp(request.hasStartTime(), request.getStartTime(), "start_time");
+        Timestamp endTime = requireTimestamp(request.hasEndTime(), request.getEndTime(), "end_time");
+        if (Timestamps.compare(startTime, endTime) > 0) {
+            throw GrpcException.invalidArgument("end_time", "must not be before start_time");
+        }
+        String currencyCode = request.getCurrencyCode();
+        if (!FuelPurchaseBatch.CURRENCY_CODE.matcher(currencyCode).matches()) {
+            throw GrpcException.invalidArgument("currency_code", "must be an ISO 4217 code: " + currencyCode);
+        }
+
+        // the account is joined to tell an account without vehicles from a missing one
+        List<Long> vehicleIds = dbClient.withHandle(h -> h.createQuery("""
+                        select v.vehicle_id
+                        from account a
+                        left join vehicle v on v.account_id = a.account_id
+                        where a.account_id = :account_id
+                        order by v.vehicle_id
+                        """)
+                .define(DbClient.STATEMENT, "fuelPurchase.reportVehicles")
+                .bind("account_id", account.accountId())
+                .mapTo(Long.class)
+                .list());
+        if (vehicleIds.isEmpty()) {
+            throw GrpcException.notFound(name);
+        }
+
+        List<FuelReport> reports = dbClient.withHandle(h -> h.createQuery("""
+                        select t.vehicle_id, t.volume_liters, t.price_micros, t.odometer_km
+                        from fuel_purchase t
+                        where
+                            t.account_id = :account_id
+                            and t.purchase_time >= :start_time
+                            and t.purchase_time < :end_time
+                            and t.currency_code = :currency_code
+                        order by t.vehicle_id, t.purchase_time
+                        """)
+                .define(DbClient.STATEMENT, "fuelPurchase.report")
+                .setFetchSize(REPORT_FETCH_SIZE)
+                .bind("account_id", account.accountId())
+                .bind("start_time", startTime)
+                .bind("end_time", endTime)
+                .bind("currency_code", currencyCode)
+                .scanResultSet((supplier, ctx) -> {
+                    List<FuelReport> chunks = new ArrayList<>();
+                    FuelReportColumns c = new FuelReportColumns();
+                    ResultSet rs = supplier.get();
+                    while (rs.next()) {
+                        long vehicleId = rs.getLong(1);
+                        if (c.size() >= REPORT_CHUNK_ROWS && vehicleId != c.lastVehicleId()) {
+                            chunks.add(FuelReport.compute(c));
+                            c.clear();
+                        }
+                        double odometerKm = rs.getDouble(4);
+                        c.add(vehicleId, rs.getDouble(2), rs.getLong(3), rs.wasNull() ? Double.NaN : odometerKm);
+                    }
+                    chunks.add(FuelReport.compute(c));
+                    return chunks;
+                }));
+
+        double months = Timestamps.between(startTime, endTime).getSeconds() / SECONDS_PER_MONTH;
+        AccountFuelReport.Builder builder = AccountFuelReport.newBuilder().setName(name);
+        int k = 0;
+        int r = 0;
+        for (Long vehicleId : vehicleIds) {
+            if (vehicleId == null) {
+                continue;
+            }
+            VehicleFuelReport.Builder vehicle = VehicleFuelReport.newBuilder()
+                    .setVehicle(new VehicleName(account.accountId(), vehicleId).toString())
+                    .setTotalPrice(Money.newBuilder().setCurrencyCode(currencyCode));
+            // both ordered by vehicle id, a vehicle may have been created after the purchases were read
+            while (k < reports.size()) {
+                FuelReport report = reports.get(k);
+                if (r == report.vehicleCount) {
+                    k++;
+                    r = 0;
+                } else if (report.vehicleIds[r] < vehicleId) {
+                    r++;
+                } else {
+                    break;
+                }
+            }
+            if (k < reports.size() && reports.get(k).vehicleIds[r] == vehicleId) {
+                FuelReport report = reports.get(k);
+                long priceMicros = report.priceMicros[r];
+                double distanceKm = report.distanceKm[r];
+                vehicle.setPurchaseCount(report.purchaseCounts[r])
+                        .setVolumeLiters(report.volumeLiters[r])
+                        .setTotalPrice(Money.newBuilder()
+                                .setCurrencyCode(currencyCode)
+                                .setUnits(priceMicros / 1_000_000)
+                                .setNanos((int) (priceMicros % 1_000_000) * 1000))
+                        .setDistanceKm(distanceKm)
+                        .setLitersPer100Km(distanceKm > 0 ? report.usedVolumeLiters[r] / distanceKm * 100 : 0)
+                        .setCostPerKm(distanceKm > 0 ? report.usedPriceMicros[r] / 1e6 / distanceKm : 0)
+                        .setCostPerMonth(months > 0 ? priceMicros / 1e6 / months : 0);
+            }
+            builder.addVehicles(vehicle);
+        }
+        return builder.build();
+    }
+
+    private static void requireExists(Handle h, VehicleName vehicle) {
+        h.createQuery("select 1 from vehicle t where t.account_id = :account_id and t.vehicle_id = :vehicle_id")
+                .define(DbClient.STATEMENT, "fuelPurchase.vehicleExists")
+                .bind("account_id", vehicle.accountId())
+                .bind("vehicle_id", vehicle.vehicleId())
+                .mapTo(Integer.class)
+                .findOne()
+                .orElseThrow(() -> GrpcException.notFound(vehicle.toString()));
+    }
+
+    private static Timestamp requireTimestamp(boolean present, Timestamp value, String field) {
+        if (!present) {
+            throw GrpcException.requiredArgument(field);
+        }
+        if (!Timestamps.isValid(value)) {
+            throw GrpcException.invalidArgument(field, "out of range: " + value.getSeconds() + "s");
+        }
+        return value;
+    }
+
+    private static FuelPurchase getFuelPurchase(RowView r) {
+        VehicleName vehicle = new VehicleName(r.getColumn("account_id", Long.class), r.getColumn("vehicle_id", Long.class));
+        long priceMicros = r.getColumn("price_micros", Long.class);
+        FuelPurchase.Builder purchase = FuelPurchase.newBuilder()
+                .setName(vehicle + "/fuelPurchases/" + r.getColumn("fuel_purchase_id", Long.class))
+                .setPurchaseTime(r.getColumn("purchase_time", Timestamp.class))
+                .setVolumeLiters(r.getColumn("volume_liters", Double.class))
+                .setPrice(Money.newBuilder()
+                        .setCurrencyCode(r.getColumn("currency_code", String.class))
+                        .setUnits(priceMicros / 1_000_000)
+                        .setNanos((int) (priceMicros % 1_000_000) * 1000));
+        Double odometerKm = r.getColumn("odometer_km", Double.class);
+        if (odometerKm != null) {
+            purchase.setOdometerKm(odometerKm);
+        }
+        return purchase.build();
+    }
+
+    /**
+     * Creates the partitions of {@code fuel_purchase} for the months from {@code fromMonth} to {@code toMonth}
+     * inclusive that do not exist, and returns the names of those created.
+     */
+    public List<String> createPartitions(LocalDate fromMonth, LocalDate toMonth) {
+        return dbClient.withHandle(h -> h.createQuery("""
+                        select fuel_purchase_create_partition(cast(m as date)) as name
+                        from generate_series(cast(:from_month as date), cast(:to_month as date), interval '1 month') m
+                        """)
+                .define(DbClient.STATEMENT, "fuelPurchase.createPartitions")
+                .bind("from_month", fromMonth.withDayOfMonth(1))
+                .bind("to_month", toMonth.withDayOfMonth(1))
+                .mapTo(String.class)
+                .list()
+                .stream()
+                .filter(Objects::nonNull)
+                .toList());
+    }
+
+    /**
+     * Creates the partitions of {@code fuel_purchase} for the months of the purchases in the default partition, which
+     * moves the purchases there, and returns the names of those created.
+     */
+    public List<String> createDefaultPartitions() {
+        List<LocalDate> months = dbClient.withHandle(h -> h.createQuery("""
+                        select distinct fuel_purchase_month(purchase_time) as month from fuel_purchase_default order by 1
+                        """)
+                .define(DbClient.STATEMENT, "fuelPurchase.selectDefaultMonths")
+                .mapTo(LocalDate.class)
+                .list());
+        List<String> created = new ArrayList<>();
+        for (LocalDate month : months) {
+            created.addAll(createPartitions(month, month));
+        }
+        return created;
+    }
+
+    /**
+     * Drops the partitions of {@code fuel_purchase} of the months before {@code beforeMonth}, and returns their
+     * names. Purchases of these months in the default partition are removed by {@link #deleteDefaultPurchases}.
+     */
+    public List<String> dropPartitions(LocalDate beforeMonth) {
+        return dbClient.withHandle(h -> h.createQuery("select fuel_purchase_drop_partitions(:before_month) as name")
+                .define(DbClient.STATEMENT, "fuelPurchase.dropPartitions")
+                .bind("before_month", beforeMonth.withDayOfMonth(1))
+                .mapTo(String.class)
+                .list());
+    }
+
+    /**
+     * Deletes the purchases of the months before {@code beforeMonth} from the default partition, and returns their
+     * number. Deleted from the partition directly, the {@code fuel_cost_monthly} rollups are kept as when dropping
+     * partitions.
+     */
+    public int deleteDefaultPurchases(LocalDate beforeMonth) {
+        return dbClient.withHandle(h -> h.createUpdate("""
+                        delete from fuel_purchase_default
+                        where purchase_time < cast(:before_month as date)::timestamp at time zone 'UTC'
+                        """)
+                .define(DbClient.STATEMENT, "fuelPurchase.deleteDefaultPurchases")
+                .bind("before_month", beforeMonth.withDayOfMonth(1))
+                .execute());
+    }
+
+    /**
+     * Reads the monthly rollups maintained by the {@code fuel_cost_monthly} triggers, so the cost is proportional
+     * to the number of months rather than purchases.
+     */
+    @Transactional(readOnly = true)
+    public FuelCostSummary getFuelCostSummary(GetFuelCostSummaryRequest request) {
+        String name = request.getName();
+        VehicleName key = Arguments.parse(name, "name", VehicleName::parse);
+        LocalDate startMonth = request.hasStartMonth() ? ProtoHelpers.javaMonthOf(request.getStartMonth(), "start_month") : null;
+        LocalDate endMonth = request.hasEndMonth() ? ProtoHelpers.javaMonthOf(request.getEndMonth(), "end_month") : null;
+
+        // the vehicle is joined to tell a vehicle without purchases from a missing one
+        List<MonthlyFuelCost> months = dbClient.withHandle(h -> h.createQuery("""
+                        select
+                            t.month,
+                            t.currency_code,
+                            t.purchase_count,
+                            t.price_micros,
+                            t.volume_liters,
+                            t.min_price_per_liter,
+                            t.max_price_per_liter
+                        from vehicle v
+                        left join fuel_cost_monthly t on t.account_id = v.account_id and t.vehicle_id = v.vehicle_id
+                            and (cast(:start_month as date) is null or t.month >= :start_month)
+                            and (cast(:end_month as date) is null or t.month <= :end_month)
+                        where v.account_id = :account_id and v.vehicle_id = :vehicle_id
+                        order by t.month, t.currency_code
+                        """)
+                .define(DbClient.STATEMENT, "fuelPurchase.getFuelCostSummary")
+                .bind("account_id", key.accountId())
+                .bind("vehicle_id", key.vehicleId())
+                .bind("start_month", startMonth)
+                .bind("end_month", endMonth)
+                .map(FuelPurchaseDao::getMonthlyFuelCost)
+                .list());
+        if (months.isEmpty()) {
+            throw GrpcException.notFound(name);
+        }
+        FuelCostSummary.Builder summary = FuelCostSummary.newBuilder().setName(name);
+        for (MonthlyFuelCost month : months) {
+            if (month != null) {
+                summary.addMonths(month);
+            }
+        }
+        return summary.build();
+    }
+
+    /**
+     * Returns null for the row of a vehicle without rollups.
+     */
+    private static MonthlyFuelCost getMonthlyFuelCost(RowView r) {
+        LocalDate month = r.getColumn("month", LocalDate.class);
+        if (month == null) {
+            return null;
+        }
+        long priceMicros = r.getColumn("price_micros", Long.class);
+        return MonthlyFuelCost.newBuilder()
+                .setMonth(ProtoHelpers.protoMonthOf(month))
+                .setTotalPrice(Money.newBuilder()
+                        .setCurrencyCode(r.getColumn("currency_code", String.class))
+                        .setUnits(priceMicros / 1_000_000)
+                        .setNanos((int) (priceMicros % 1_000_000) * 1000))
+                .setVolumeLiters(r.getColumn("volume_liters", BigDecimal.class).doubleValue())
+                .setPurchaseCount(r.getColumn("purchase_count", Long.class))
+                .setMinPricePerLiter(r.getColumn("min_price_per_liter", Double.class))
+                .setMaxPricePerLiter(r.getColumn("max_price_per_liter", Double.class))
+                .build();
+    }
+}
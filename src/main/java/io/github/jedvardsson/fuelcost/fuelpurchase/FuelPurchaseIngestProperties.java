@@ -0,0 +1,54 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "fuel-purchase.ingest")
+public class FuelPurchaseIngestProperties {
+
+    private final int batchSize;
+    private final Duration maxDelay;
+    private final int flushThreads;
+
+    @ConstructorBinding
+    public FuelPurchaseIngestProperties(@DefaultValue("5000") int batchSize, @DefaultValue("1s") Duration maxDelay, @DefaultValue("4") int flushThreads) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("fuel-purchase.ingest.batch-size must be positive: " + batchSize);
+        }
+        if (maxDelay.isNegative() || maxDelay.isZero()) {
+            throw new IllegalArgumentException("fuel-purchase.ingest.max-delay must be positive: " + maxDelay);
+        }
+        if (flushThreads <= 0) {
+            throw new IllegalArgumentException("fuel-purchase.ingest.flush-threads must be positive: " + flushThreads);
+        }
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.flushThreads = flushThreads;
+    }
+
+    /**
+     * Purchases received by an {@code IngestFuelPurchases} call are written once this many are buffered. A batch
+     * may exceed it by the purchases of one message.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Longest time a received purchase is buffered before it is written.
+     */
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Threads writing batches whose maximum delay has passed, shared by all calls. Each holds a connection while
+     * writing, so keep it below the connection pool size.
+     */
+    public int getFlushThreads() {
+        return flushThreads;
+    }
+}
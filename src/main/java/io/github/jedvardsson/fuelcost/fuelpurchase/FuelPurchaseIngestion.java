@@ -0,0 +1,151 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import io.github.jedvardsson.fuelcost.grpc.GrpcUtil;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesResponse;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@code IngestFuelPurchases} call. Received purchases are buffered in a {@link FuelPurchaseBatch} that is
+ * written when it holds the batch size, when its first purchase has waited for the maximum delay, and when the
+ * client completes. The next message is only requested once the previous one is handled, including writing
+ * a full batch, so a client sending faster than purchases are written is held back by gRPC flow control.
+ * <p>
+ * Messages are handled on the gRPC executor, and delayed batches are timed by the flush scheduler and written on
+ * the flush executor, so that a slow write of one call does not hold up the delayed batches of others. Both
+ * synchronize on the ingestion. Purchases still buffered when the call fails or is cancelled are discarded.
+ */
+final class FuelPurchaseIngestion implements StreamObserver<IngestFuelPurchasesRequest> {
+
+    private final FuelPurchaseDao fuelPurchaseDao;
+    private final ServerCallStreamObserver<IngestFuelPurchasesResponse> responseObserver;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Executor flushExecutor;
+    private final Timer flushes;
+    private final Counter ingested;
+
+    private FuelPurchaseBatch batch = new FuelPurchaseBatch();
+    private ScheduledFuture<?> delayedFlush;
+    private long requestCount;
+    private long fuelPurchaseCount;
+    private long batchCount;
+    private boolean done;
+
+    FuelPurchaseIngestion(FuelPurchaseDao fuelPurchaseDao, StreamObserver<IngestFuelPurchasesResponse> responseObserver, FuelPurchaseIngestProperties properties,
+                          ScheduledExecutorService scheduler, Executor flushExecutor, Timer flushes, Counter ingested) {
+        this.fuelPurchaseDao = fuelPurchaseDao;
+        this.responseObserver = (ServerCallStreamObserver<IngestFuelPurchasesResponse>) responseObserver;
+        this.batchSize = properties.getBatchSize();
+        this.maxDelayNanos = properties.getMaxDelay().toNanos();
+        this.scheduler = scheduler;
+        this.flushExecutor = flushExecutor;
+        this.flushes = flushes;
+        this.ingested = ingested;
+    }
+
+    /**
+     * Must be called by the service method, before it returns.
+     */
+    void start() {
+        responseObserver.disableAutoRequest();
+        responseObserver.setOnCancelHandler(this::cancel);
+        responseObserver.request(1);
+    }
+
+    @Override
+    public synchronized void onNext(IngestFuelPurchasesRequest request) {
+        if (done) {
+            return;
+        }
+        try {
+            requestCount++;
+            batch.add(request);
+            if (batch.getRowCount() >= batchSize) {
+                flush();
+            } else if (batch.getRowCount() > 0 && delayedFlush == null) {
+                delayedFlush = scheduler.schedule(() -> flushExecutor.execute(this::flushDelayed), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (Throwable t) {
+            fail(t);
+            return;
+        }
+        responseObserver.request(1);
+    }
+
+    private synchronized void flushDelayed() {
+        if (done) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void flush() {
+        if (delayedFlush != null) {
+            delayedFlush.cancel(false);
+            delayedFlush = null;
+        }
+        if (batch.getRowCount() == 0) {
+            return;
+        }
+        FuelPurchaseBatch flushed = batch;
+        batch = new FuelPurchaseBatch();
+        long count = flushes.record(() -> fuelPurchaseDao.insertFuelPurchases(flushed));
+        fuelPurchaseCount += count;
+        batchCount++;
+        ingested.increment(count);
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        cancel();
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+        if (done) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Throwable t) {
+            fail(t);
+            return;
+        }
+        done = true;
+        responseObserver.onNext(IngestFuelPurchasesResponse.newBuilder()
+                .setRequestCount(requestCount)
+                .setFuelPurchaseCount(fuelPurchaseCount)
+                .setBatchCount(batchCount)
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    private synchronized void cancel() {
+        done = true;
+        if (delayedFlush != null) {
+            delayedFlush.cancel(false);
+            delayedFlush = null;
+        }
+    }
+
+    private void fail(Throwable t) {
+        cancel();
+        Status status = GrpcUtil.getStatus(t).augmentDescription(fuelPurchaseCount + " fuel purchases were recorded before the failure");
+        responseObserver.onError(status.withCause(t).asRuntimeException());
+    }
+}
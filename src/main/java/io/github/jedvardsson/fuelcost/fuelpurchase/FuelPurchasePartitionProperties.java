@@ -0,0 +1,64 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "fuel-purchase.partitions")
+public class FuelPurchasePartitionProperties {
+
+    private final boolean enabled;
+    private final Duration interval;
+    private final int premadeMonths;
+    private final int retentionMonths;
+
+    @ConstructorBinding
+    public FuelPurchasePartitionProperties(@DefaultValue("true") boolean enabled, @DefaultValue("1h") Duration interval,
+                                           @DefaultValue("3") int premadeMonths, @DefaultValue("0") int retentionMonths) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("fuel-purchase.partitions.interval must be positive: " + interval);
+        }
+        if (premadeMonths < 0) {
+            throw new IllegalArgumentException("fuel-purchase.partitions.premade-months must not be negative: " + premadeMonths);
+        }
+        if (retentionMonths < 0) {
+            throw new IllegalArgumentException("fuel-purchase.partitions.retention-months must not be negative: " + retentionMonths);
+        }
+        this.enabled = enabled;
+        this.interval = interval;
+        this.premadeMonths = premadeMonths;
+        this.retentionMonths = retentionMonths;
+    }
+
+    /**
+     * Whether partitions are created and dropped by this application. Disable on all but one deployment if several
+     * share the database, although concurrent maintenance is safe.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Time between partition maintenance runs. Maintenance also runs on start.
+     */
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * Number of months after the current month to keep partitions created for.
+     */
+    public int getPremadeMonths() {
+        return premadeMonths;
+    }
+
+    /**
+     * Number of months before the current month to keep the purchases of. The partitions of older months are
+     * dropped. Zero keeps all purchases.
+     */
+    public int getRetentionMonths() {
+        return retentionMonths;
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the monthly partitions of {@code fuel_purchase} created {@link FuelPurchasePartitionProperties#getPremadeMonths()}
+ * ahead and for the purchases in the default partition, and drops those older than
+ * {@link FuelPurchasePartitionProperties#getRetentionMonths()}, on start and then periodically on the thread
+ * {@code fuel-purchase-partitions}. Months are calendar months in UTC. Created and dropped partitions are counted by
+ * {@code fuel.purchase.partitions} tagged {@code action=created} or {@code action=dropped}.
+ */
+@Service
+public class FuelPurchasePartitions implements SmartLifecycle {
+
+    private static final Logger LOGGER = getLogger(FuelPurchasePartitions.class);
+
+    private final FuelPurchaseDao fuelPurchaseDao;
+    private final FuelPurchasePartitionProperties properties;
+    private final Counter created;
+    private final Counter dropped;
+    private ScheduledExecutorService scheduler;
+
+    public FuelPurchasePartitions(FuelPurchaseDao fuelPurchaseDao, FuelPurchasePartitionProperties properties, MeterRegistry meterRegistry) {
+        this.fuelPurchaseDao = fuelPurchaseDao;
+        this.properties = properties;
+        this.created = Counter.builder("fuel.purchase.partitions")
+                .description("Partitions of fuel purchases created or dropped")
+                .tag("action", "created")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("fuel.purchase.partitions")
+                .description("Partitions of fuel purchases created or dropped")
+                .tag("action", "dropped")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Maintains the partitions once before returning, so that the partitions of the current month exist when the
+     * application has started. If that fails, the next run tries again.
+     */
+    @Override
+    public synchronized void start() {
+        if (scheduler != null || !properties.isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fuel-purchase-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        run();
+        long interval = properties.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::run, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private void run() {
+        try {
+            maintain(LocalDate.now(ZoneOffset.UTC));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to maintain fuel purchase partitions, retrying in {}", properties.getInterval(), e);
+        }
+    }
+
+    /**
+     * Drops the partitions of the months more than {@code retention-months} before the month of {@code today}, and
+     * deletes the purchases of these months from the default partition. Then creates the partitions from the month of
+     * {@code today} to {@code premade-months} after it, and of the months of the purchases left in the default
+     * partition, such as purchases far in the past or future.
+     */
+    public void maintain(LocalDate today) {
+        LocalDate month = today.withDayOfMonth(1);
+        if (properties.getRetentionMonths() > 0) {
+            LocalDate beforeMonth = month.minusMonths(properties.getRetentionMonths());
+            List<String> droppedPartitions = fuelPurchaseDao.dropPartitions(beforeMonth);
+            if (!droppedPartitions.isEmpty()) {
+                dropped.increment(droppedPartitions.size());
+                LOGGER.info("Dropped fuel purchase partitions: {}", droppedPartitions);
+            }
+            int deleted = fuelPurchaseDao.deleteDefaultPurchases(beforeMonth);
+            if (deleted > 0) {
+                LOGGER.info("Deleted {} fuel purchases before {} from the default partition", deleted, beforeMonth);
+            }
+        }
+        List<String> createdPartitions = new ArrayList<>(fuelPurchaseDao.createPartitions(month, month.plusMonths(properties.getPremadeMonths())));
+        createdPartitions.addAll(fuelPurchaseDao.createDefaultPartitions());
+        if (!createdPartitions.isEmpty()) {
+            created.increment(createdPartitions.size());
+            LOGGER.info("Created fuel purchase partitions: {}", createdPartitions);
+        }
+    }
+}
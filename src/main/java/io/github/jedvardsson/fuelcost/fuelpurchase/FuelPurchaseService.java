@@ -0,0 +1,80 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import io.github.jedvardsson.fuelcost.grpc.GrpcUtil;
+import io.github.jedvardsson.fuelcost.v1.AccountFuelReport;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchaseServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.GetAccountFuelReportRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesResponse;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesResponse;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+@Service
+public class FuelPurchaseService extends FuelPurchaseServiceGrpc.FuelPurchaseServiceImplBase {
+
+    private final FuelPurchaseDao fuelPurchaseDao;
+    private final FuelPurchaseIngestProperties properties;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService flushExecutor;
+    private final Timer flushes;
+    private final Counter ingested;
+
+    public FuelPurchaseService(FuelPurchaseDao fuelPurchaseDao, FuelPurchaseIngestProperties properties, MeterRegistry meterRegistry) {
+        this.fuelPurchaseDao = fuelPurchaseDao;
+        this.properties = properties;
+        // only times delayed batches, which are written by the flush executor
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fuel-purchase-flush-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.flushExecutor = Executors.newFixedThreadPool(properties.getFlushThreads(), r -> {
+            Thread thread = new Thread(r, "fuel-purchase-flush-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushes = Timer.builder("fuel.purchase.ingest.flushes")
+                .description("Time to write a batch of ingested fuel purchases")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.ingested = Counter.builder("fuel.purchase.ingested")
+                .description("Fuel purchases written by IngestFuelPurchases")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public StreamObserver<IngestFuelPurchasesRequest> ingestFuelPurchases(StreamObserver<IngestFuelPurchasesResponse> responseObserver) {
+        FuelPurchaseIngestion ingestion = new FuelPurchaseIngestion(fuelPurchaseDao, responseObserver, properties, scheduler, flushExecutor, flushes, ingested);
+        ingestion.start();
+        return ingestion;
+    }
+
+    @Override
+    public void listFuelPurchases(ListFuelPurchasesRequest request, StreamObserver<ListFuelPurchasesResponse> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> fuelPurchaseDao.listFuelPurchases(request));
+    }
+
+    @Override
+    public void getAccountFuelReport(GetAccountFuelReportRequest request, StreamObserver<AccountFuelReport> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> fuelPurchaseDao.getAccountFuelReport(request));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flushExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Per vehicle totals of {@link FuelReportColumns}, computed in one pass over the columns of each vehicle. Vehicles
+ * are computed in parallel on the common {@link ForkJoinPool}, split into tasks of about {@link #ROWS_PER_TASK}
+ * purchases.
+ */
+final class FuelReport {
+
+    static final int ROWS_PER_TASK = 1 << 16;
+
+    final int vehicleCount;
+    final long[] vehicleIds;
+    final long[] purchaseCounts;
+    final double[] volumeLiters;
+    final long[] priceMicros;
+    // from the first to the last odometer reading
+    final double[] distanceKm;
+    // purchased at the odometer readings after the first
+    final double[] usedVolumeLiters;
+    final long[] usedPriceMicros;
+
+    private final FuelReportColumns columns;
+    // rows of vehicle i are starts[i] until starts[i + 1]
+    private final int[] starts;
+
+    private FuelReport(FuelReportColumns columns, int[] starts, int vehicleCount) {
+        this.columns = columns;
+        this.starts = starts;
+        this.vehicleCount = vehicleCount;
+        this.vehicleIds = new long[vehicleCount];
+        this.purchaseCounts = new long[vehicleCount];
+        this.volumeLiters = new double[vehicleCount];
+        this.priceMicros = new long[vehicleCount];
+        this.distanceKm = new double[vehicleCount];
+        this.usedVolumeLiters = new double[vehicleCount];
+        this.usedPriceMicros = new long[vehicleCount];
+    }
+
+    static FuelReport compute(FuelReportColumns columns) {
+        long[] vehicleIds = columns.vehicleIds;
+        int size = columns.size;
+        int vehicleCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || vehicleIds[i] != vehicleIds[i - 1]) {
+                vehicleCount++;
+            }
+        }
+        int[] starts = new int[vehicleCount + 1];
+        for (int i = 0, v = 0; i < size; i++) {
+            if (i == 0 || vehicleIds[i] != vehicleIds[i - 1]) {
+                starts[v++] = i;
+            }
+        }
+        starts[vehicleCount] = size;
+
+        FuelReport report = new FuelReport(columns, starts, vehicleCount);
+        if (size <= ROWS_PER_TASK) {
+            report.computeVehicles(0, vehicleCount);
+        } else {
+            ForkJoinPool.commonPool().invoke(report.new Task(0, vehicleCount));
+        }
+        return report;
+    }
+
+    private void computeVehicles(int from, int to) {
+        long[] rowVehicleIds = columns.vehicleIds;
+        double[] volumes = columns.volumeLiters;
+        long[] prices = columns.priceMicros;
+        double[] odometers = columns.odometerKm;
+        for (int v = from; v < to; v++) {
+            int start = starts[v];
+            int end = starts[v + 1];
+            double volume = 0;
+            long price = 0;
+            for (int i = start; i < end; i++) {
+                volume += volumes[i];
+                price += prices[i];
+            }
+            int first = start;
+            while (first < end && Double.isNaN(odometers[first])) {
+                first++;
+            }
+            double lastOdometer = first < end ? odometers[first] : 0;
+            double usedVolume = 0;
+            long usedPrice = 0;
+            for (int i = first + 1; i < end; i++) {
+                double odometer = odometers[i];
+                if (!Double.isNaN(odometer)) {
+                    usedVolume += volumes[i];
+                    usedPrice += prices[i];
+                    lastOdometer = odometer;
+                }
+            }
+            vehicleIds[v] = rowVehicleIds[start];
+            purchaseCounts[v] = end - start;
+            volumeLiters[v] = volume;
+            priceMicros[v] = price;
+            distanceKm[v] = first < end ? Math.max(0, lastOdometer - odometers[first]) : 0;
+            usedVolumeLiters[v] = usedVolume;
+            usedPriceMicros[v] = usedPrice;
+        }
+    }
+
+    private class Task extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        Task(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1 || starts[to] - starts[from] <= ROWS_PER_TASK) {
+                computeVehicles(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Task(from, middle), new Task(middle, to));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import java.util.Arrays;
+
+/**
+ * The purchases a {@link FuelReport} is computed from, one primitive array per column rather than an object per
+ * purchase. Purchases must be added ordered by vehicle and purchase time.
+ */
+final class FuelReportColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    long[] vehicleIds = new long[INITIAL_CAPACITY];
+    double[] volumeLiters = new double[INITIAL_CAPACITY];
+    long[] priceMicros = new long[INITIAL_CAPACITY];
+    // NaN if not known
+    double[] odometerKm = new double[INITIAL_CAPACITY];
+    int size;
+
+    void add(long vehicleId, double volumeLiters, long priceMicros, double odometerKm) {
+        if (size == vehicleIds.length) {
+            int capacity = size * 2;
+            this.vehicleIds = Arrays.copyOf(this.vehicleIds, capacity);
+            this.volumeLiters = Arrays.copyOf(this.volumeLiters, capacity);
+            this.priceMicros = Arrays.copyOf(this.priceMicros, capacity);
+            this.odometerKm = Arrays.copyOf(this.odometerKm, capacity);
+        }
+        this.vehicleIds[size] = vehicleId;
+        this.volumeLiters[size] = volumeLiters;
+        this.priceMicros[size] = priceMicros;
+        this.odometerKm[size] = odometerKm;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long lastVehicleId() {
+        return vehicleIds[size - 1];
+    }
+
+    /**
+     * Removes all purchases, keeping the capacity.
+     */
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.BindableService;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records per-method server metrics, tagged {@code method=<Service>/<Method>}:
+ * <ul>
+ *     <li>{@code grpc.server.calls}: latency timer publishing p50, p99 and p99.9</li>
+ *     <li>{@code grpc.server.calls.status}: completed calls per status code, including calls cancelled by the client
+ *     ({@code CANCELLED}) or by their deadline ({@code DEADLINE_EXCEEDED})</li>
+ *     <li>{@code grpc.server.calls.active}: calls in flight</li>
+ *     <li>{@code grpc.server.request.size} and {@code grpc.server.response.size}: serialized message sizes</li>
+ * </ul>
+ * Meters of the methods of all {@link BindableService}s are created up front. Recording only looks up the
+ * method by its full name and updates striped counters, so the forwarding call, its completion flag and the
+ * listener are the only allocations per call.
+ */
+@Component
+public class GrpcMetricsInterceptor implements ServerInterceptor {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, MethodMetrics> methods;
+    private final Map<String, MethodMetrics> otherMethods = new ConcurrentHashMap<>();
+
+    public GrpcMetricsInterceptor(MeterRegistry meterRegistry, List<BindableService> services) {
+        this.meterRegistry = meterRegistry;
+        Map<String, MethodMetrics> methods = new HashMap<>();
+        for (BindableService service : services) {
+            for (ServerMethodDefinition<?, ?> method : SerializedMessage.bindService(service).getMethods()) {
+                String fullMethodName = method.getMethodDescriptor().getFullMethodName();
+                methods.put(fullMethodName, new MethodMetrics(meterRegistry, fullMethodName));
+            }
+        }
+        this.methods = Map.copyOf(methods);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        MethodMetrics metrics = getMethodMetrics(call.getMethodDescriptor());
+        MetricsServerCall<ReqT, RespT> metricsCall = new MetricsServerCall<>(call, metrics);
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(metricsCall, headers);
+        } catch (RuntimeException | Error e) {
+            metricsCall.complete(Status.fromThrowable(e));
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                metrics.requestSize.record(serializedSize(message));
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onCancel() {
+                metricsCall.complete(cancelledStatus());
+                super.onCancel();
+            }
+
+            @Override
+            public void onComplete() {
+                metricsCall.complete(Status.OK);
+                super.onComplete();
+            }
+        };
+    }
+
+    /**
+     * The status of a call cancelled without {@link ServerCall#close}, as seen by the client. Listeners are called
+     * in the context of the call.
+     */
+    private static Status cancelledStatus() {
+        Deadline deadline = Context.current().getDeadline();
+        return deadline != null && deadline.isExpired() ? Status.DEADLINE_EXCEEDED : Status.CANCELLED;
+    }
+
+    private MethodMetrics getMethodMetrics(MethodDescriptor<?, ?> method) {
+        String fullMethodName = method.getFullMethodName();
+        MethodMetrics metrics = methods.get(fullMethodName);
+        return metrics != null ? metrics : otherMethods.computeIfAbsent(fullMethodName, n -> new MethodMetrics(meterRegistry, n));
+    }
+
+    private static int serializedSize(Object message) {
+        return switch (message) {
+            case MessageLite m -> m.getSerializedSize();
+            case SerializedMessage<?> m -> m.size();
+            default -> 0;
+        };
+    }
+
+    private static final class MetricsServerCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        private final MethodMetrics metrics;
+        private final long startTime;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        MetricsServerCall(ServerCall<ReqT, RespT> delegate, MethodMetrics metrics) {
+            super(delegate);
+            this.metrics = metrics;
+            this.startTime = System.nanoTime();
+            metrics.active.increment();
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            metrics.responseSize.record(serializedSize(message));
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            complete(status);
+            super.close(status, trailers);
+        }
+
+        /**
+         * Records the call once, whichever of closing, cancellation, completion or a failure to start comes first.
+         */
+        void complete(Status status) {
+            if (completed.compareAndSet(false, true)) {
+                metrics.active.decrement();
+                metrics.calls.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                metrics.getStatusCounter(status.getCode()).increment();
+            }
+        }
+    }
+
+    private static final class MethodMetrics {
+        private final MeterRegistry meterRegistry;
+        private final String method;
+        private final Timer calls;
+        private final LongAdder active = new LongAdder();
+        private final DistributionSummary requestSize;
+        private final DistributionSummary responseSize;
+        // registered on first use, to not publish a series per unused status code
+        private final Counter[] statusCounters = new Counter[Status.Code.values().length];
+
+        MethodMetrics(MeterRegistry meterRegistry, String fullMethodName) {
+            this.meterRegistry = meterRegistry;
+            this.method = shortMethodName(fullMethodName);
+            this.calls = Timer.builder("grpc.server.calls")
+                    .description("Server call latency")
+                    .tag("method", method)
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .register(meterRegistry);
+            Gauge.builder("grpc.server.calls.active", active, LongAdder::sum)
+                    .description("Server calls in flight")
+                    .tag("method", method)
+                    .register(meterRegistry);
+            this.requestSize = DistributionSummary.builder("grpc.server.request.size")
+                    .baseUnit("bytes")
+                    .tag("method", method)
+                    .register(meterRegistry);
+            this.responseSize = DistributionSummary.builder("grpc.server.response.size")
+                    .baseUnit("bytes")
+                    .tag("method", method)
+                    .register(meterRegistry);
+        }
+
+        Counter getStatusCounter(Status.Code code) {
+            Counter counter = statusCounters[code.ordinal()];
+            if (counter == null) {
+                // racing threads get the same counter from the registry
+                counter = Counter.builder("grpc.server.calls.status")
+                        .description("Completed server calls by status code")
+                        .tag("method", method)
+                        .tag("status", code.name())
+                        .register(meterRegistry);
+                statusCounters[code.ordinal()] = counter;
+            }
+            return counter;
+        }
+
+        /**
+         * Strips the proto package, e.g. {@code io.github.jedvardsson.fuelcost.v1.VehicleService/ListVehicles}
+         * becomes {@code VehicleService/ListVehicles}.
+         */
+        private static String shortMethodName(String fullMethodName) {
+            int slash = fullMethodName.indexOf('/');
+            int dot = fullMethodName.lastIndexOf('.', slash);
+            return fullMethodName.substring(dot + 1);
+        }
+    }
+}
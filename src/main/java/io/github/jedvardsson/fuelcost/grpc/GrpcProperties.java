@@ -3,6 +3,7 @@ package io.github.jedvardsson.fuelcost.grpc;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
 import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
 
@@ -11,11 +12,16 @@ public class GrpcProperties {
 
     private final int port;
     private final Duration awaitTermination;
+    private final Executor executor;
+    private final ResponseCache responseCache;
 
     @ConstructorBinding
-    public GrpcProperties(int port, @DefaultValue("30 s") Duration awaitTermination) {
+    public GrpcProperties(int port, @DefaultValue("30s") Duration awaitTermination, @DefaultValue Executor executor,
+                          @DefaultValue ResponseCache responseCache) {
         this.port = port;
         this.awaitTermination = awaitTermination;
+        this.executor = executor;
+        this.responseCache = responseCache;
     }
 
     public int getPort() {
@@ -25,4 +31,77 @@ public class GrpcProperties {
     public Duration getAwaitTermination() {
         return awaitTermination;
     }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public enum ExecutorMode {
+        /**
+         * The unbounded cached platform thread pool that gRPC uses by default.
+         */
+        CACHED,
+        /**
+         * A fixed pool of {@link Executor#getThreads()} platform threads. Calls queue up when all threads are busy.
+         */
+        FIXED,
+        /**
+         * A new virtual thread per task. Threads blocked on JDBC unmount from their carrier thread.
+         */
+        VIRTUAL
+    }
+
+    public static class Executor {
+        private final ExecutorMode mode;
+        private final int threads;
+
+        @ConstructorBinding
+        public Executor(@DefaultValue("cached") ExecutorMode mode, @DefaultValue("16") int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("grpc.executor.threads must be positive: " + threads);
+            }
+            this.mode = mode;
+            this.threads = threads;
+        }
+
+        public ExecutorMode getMode() {
+            return mode;
+        }
+
+        /**
+         * Number of threads in {@link ExecutorMode#FIXED} mode.
+         */
+        public int getThreads() {
+            return threads;
+        }
+    }
+
+    public static class ResponseCache {
+        private final boolean enabled;
+        private final DataSize maximumSize;
+
+        @ConstructorBinding
+        public ResponseCache(@DefaultValue("false") boolean enabled, @DefaultValue("64MB") DataSize maximumSize) {
+            if (maximumSize.isNegative()) {
+                throw new IllegalArgumentException("grpc.response-cache.maximum-size must not be negative: " + maximumSize);
+            }
+            this.enabled = enabled;
+            this.maximumSize = maximumSize;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Bound on the total size of the cached responses.
+         */
+        public DataSize getMaximumSize() {
+            return maximumSize;
+        }
+    }
 }
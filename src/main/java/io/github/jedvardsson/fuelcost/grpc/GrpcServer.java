@@ -15,7 +15,10 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -25,21 +28,44 @@ public class GrpcServer {
 
     private final Server server;
     private final Duration awaitTermination;
+    private final ExecutorService executor;
 
     public GrpcServer(GrpcProperties grpcProperties, List<ServerInterceptor> interceptors, List<BindableService> services) {
         awaitTermination = grpcProperties.getAwaitTermination();
 
         int port = grpcProperties.getPort();
         ServerBuilder<?> serverBuilder = port < 0 ? InProcessServerBuilder.forName(InProcessServerBuilder.generateName()) : ServerBuilder.forPort(port);
+        executor = createExecutor(grpcProperties.getExecutor());
+        if (executor != null) {
+            serverBuilder.executor(executor);
+        }
         for (ServerInterceptor interceptor : interceptors) {
             serverBuilder.intercept(interceptor);
         }
         for (BindableService service : services) {
-            serverBuilder.addService(service);
+            serverBuilder.addService(SerializedMessage.bindService(service));
         }
         server = serverBuilder.build();
     }
 
+    /**
+     * Returns null for {@link GrpcProperties.ExecutorMode#CACHED}, which leaves the gRPC default in place.
+     */
+    private static ExecutorService createExecutor(GrpcProperties.Executor properties) {
+        return switch (properties.getMode()) {
+            case CACHED -> null;
+            case FIXED -> {
+                AtomicInteger count = new AtomicInteger();
+                yield Executors.newFixedThreadPool(properties.getThreads(), r -> {
+                    Thread thread = new Thread(r, "grpc-executor-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("grpc-virtual-", 0).factory());
+        };
+    }
+
     public String getLocalTarget() {
         for (SocketAddress socketAddress : server.getListenSockets()) {
             if (socketAddress instanceof InProcessSocketAddress x) {
@@ -57,8 +83,13 @@ public class GrpcServer {
 
     @PreDestroy
     public void shutdown() {
+        if (server.isShutdown()) {
+            return;
+        }
+        // the port is not available once the server has terminated
+        String target = getLocalTarget();
         server.shutdown();
-        LOGGER.info("Grpc server shutting down: " + server.getPort());
+        LOGGER.info("Grpc server shutting down: " + target);
         try {
             if (awaitTermination != null) {
                 server.awaitTermination(awaitTermination.getSeconds(), TimeUnit.SECONDS);
@@ -67,7 +98,10 @@ public class GrpcServer {
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            LOGGER.warn("Interrupted while waiting for grpc server to terminate: " + server.getPort());
+            LOGGER.warn("Interrupted while waiting for grpc server to terminate: " + target);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
         }
     }
 }
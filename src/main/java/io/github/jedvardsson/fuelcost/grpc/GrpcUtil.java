@@ -1,10 +1,14 @@
 package io.github.jedvardsson.fuelcost.grpc;
 
+import com.google.protobuf.MessageLite;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
+import java.util.Iterator;
 import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
 public class GrpcUtil {
     public static <T> void handleResponse(StreamObserver<T> responseObserver, Callable<T> callable) {
@@ -18,6 +22,43 @@ public class GrpcUtil {
         }
     }
 
+    /**
+     * Like {@link #handleResponse(StreamObserver, Callable)} but sends a message serialized up front. The method must
+     * be bound with {@link SerializedMessage#bindService(io.grpc.ServerServiceDefinition, io.grpc.MethodDescriptor[])}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends MessageLite> void handleSerializedResponse(StreamObserver<T> responseObserver, Callable<SerializedMessage<T>> callable) {
+        handleResponse((StreamObserver<Object>) (StreamObserver<?>) responseObserver, callable::call);
+    }
+
+    /**
+     * Sends the elements of a stream as they are consumed by the client. Elements are only pulled from the stream
+     * while the call is ready, i.e. while the transport accepts more messages without buffering, and pulling resumes
+     * from the on-ready handler. The stream is closed when exhausted, on error or when the call is cancelled.
+     */
+    public static <T> void handleStream(StreamObserver<T> responseObserver, Callable<Stream<T>> callable) {
+        ServerCallStreamObserver<T> observer = (ServerCallStreamObserver<T>) responseObserver;
+        Stream<T> stream;
+        try {
+            stream = callable.call();
+        } catch (Throwable t) {
+            onError(observer, t);
+            return;
+        }
+        StreamPump<T> pump = new StreamPump<>(observer, stream);
+        observer.setOnCancelHandler(pump::cancel);
+        observer.setOnReadyHandler(pump::drain);
+        pump.drain();
+    }
+
+    private static void onError(StreamObserver<?> responseObserver, Throwable t) {
+        if (t instanceof StatusRuntimeException e) {
+            responseObserver.onError(e);
+        } else {
+            responseObserver.onError(getStatus(t).withCause(t).asRuntimeException());
+        }
+    }
+
     public static Status getStatus(Throwable throwable) {
         return switch (throwable) {
             case null -> throw new NullPointerException("throwable");
@@ -27,4 +68,54 @@ public class GrpcUtil {
             default -> Status.INTERNAL.withDescription(throwable.getMessage());
         };
     }
+
+    /**
+     * Callbacks of a call are serialized by gRPC, so drain and cancel never run concurrently.
+     */
+    private static final class StreamPump<T> {
+        private final ServerCallStreamObserver<T> observer;
+        private final Stream<T> stream;
+        private final Iterator<T> iterator;
+        private boolean done;
+        private boolean closed;
+
+        StreamPump(ServerCallStreamObserver<T> observer, Stream<T> stream) {
+            this.observer = observer;
+            this.stream = stream;
+            this.iterator = stream.iterator();
+        }
+
+        void drain() {
+            if (done) {
+                return;
+            }
+            try {
+                while (observer.isReady()) {
+                    if (!iterator.hasNext()) {
+                        done = true;
+                        close();
+                        observer.onCompleted();
+                        return;
+                    }
+                    observer.onNext(iterator.next());
+                }
+            } catch (Throwable t) {
+                done = true;
+                close();
+                onError(observer, t);
+            }
+        }
+
+        void cancel() {
+            done = true;
+            close();
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                stream.close();
+            }
+        }
+    }
 }
@@ -10,7 +10,9 @@ import com.google.protobuf.util.JsonFormat;
 import com.google.protobuf.util.Timestamps;
 import com.google.type.Date;
 
+import java.io.IOException;
 import java.text.ParseException;
+import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.regex.Pattern;
@@ -24,6 +26,24 @@ public class ProtoHelpers {
         return x == null ? null : LocalDate.of(x.getYear(), x.getMonth() == 0 ? 1 : x.getMonth(), x.getDay() == 0 ? 1 : x.getDay());
     }
 
+    /**
+     * Returns the first day of a month given as a date with the day unset, or throws INVALID_ARGUMENT.
+     */
+    public static LocalDate javaMonthOf(Date month, String field) {
+        if (month.getDay() != 0) {
+            throw GrpcException.invalidArgument(field + ".day", "must not be set: " + month.getDay());
+        }
+        try {
+            return LocalDate.of(month.getYear(), month.getMonth(), 1);
+        } catch (DateTimeException e) {
+            throw GrpcException.invalidArgument(field, "invalid month: " + month.getYear() + "-" + month.getMonth());
+        }
+    }
+
+    public static Date protoMonthOf(LocalDate x) {
+        return Date.newBuilder().setYear(x.getYear()).setMonth(x.getMonthValue()).build();
+    }
+
     public static Date protoDateOf(LocalDate x) {
         return x == null ? null : Date.newBuilder()
                 .setYear(x.getYear())
@@ -111,6 +131,8 @@ public class ProtoHelpers {
     private static final JsonFormat.Printer JSON_PRINTER = JsonFormat.printer()
             .usingTypeRegistry(JSON_TYPE_REGISTRY)
             .preservingProtoFieldNames();
+    private static final JsonFormat.Printer JSON_LINE_PRINTER = JSON_PRINTER
+            .omittingInsignificantWhitespace();
     private static final JsonFormat.Parser JSON_PARSER = JsonFormat.parser()
             .usingTypeRegistry(JSON_TYPE_REGISTRY)
             .ignoringUnknownFields();
@@ -123,6 +145,14 @@ public class ProtoHelpers {
         }
     }
 
+    /**
+     * Appends the message as JSON on a single line, followed by a newline, as in NDJSON.
+     */
+    public static void appendJsonLine(Message message, Appendable out) throws IOException {
+        JSON_LINE_PRINTER.appendTo(message, out);
+        out.append('\n');
+    }
+
     public static <T extends Message.Builder> T parseJson(String json, T builder) {
         try {
             JSON_PARSER.merge(json, builder);
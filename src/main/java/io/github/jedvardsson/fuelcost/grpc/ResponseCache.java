@@ -0,0 +1,90 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.MessageLite;
+import io.github.jedvardsson.fuelcost.db.InvalidationBus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+/**
+ * Opt-in cache of serialized responses keyed by resource name and version, bounded by the total number of bytes.
+ * <p>
+ * An entry is only served for the version it was stored with, so callers look up the current version first and
+ * a cached response is never stale, whichever node changed the resource. Changes made through this node
+ * {@link #invalidate(String) invalidate} the entry to free its bytes early, as do changes made by other nodes
+ * through the {@link InvalidationBus}. The least recently and frequently used entries are evicted first
+ * (Caffeine's W-TinyLFU). Hit, miss and eviction counts are published as {@code cache.*} metrics tagged
+ * {@code cache=response}.
+ */
+@Service
+public class ResponseCache implements InvalidationBus.Subscriber {
+
+    // Estimated footprint of an entry beyond its bytes: key, entry and node objects.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private record Entry(long version, SerializedMessage<?> message) {
+    }
+
+    private final Cache<String, Entry> cache;
+
+    public ResponseCache(GrpcProperties properties, InvalidationBus invalidationBus, MeterRegistry meterRegistry) {
+        GrpcProperties.ResponseCache responseCache = properties.getResponseCache();
+        if (responseCache.isEnabled()) {
+            cache = Caffeine.newBuilder()
+                    .maximumWeight(responseCache.getMaximumSize().toBytes())
+                    .<String, Entry>weigher((name, entry) -> ENTRY_OVERHEAD + 2 * name.length() + entry.message().size())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "response");
+            invalidationBus.subscribe(this);
+        } else {
+            cache = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the cached response of the given version of a resource, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends MessageLite> SerializedMessage<T> get(String name, long version) {
+        Entry entry = cache == null ? null : cache.getIfPresent(name);
+        return entry != null && entry.version() == version ? (SerializedMessage<T>) entry.message() : null;
+    }
+
+    /**
+     * Serializes the message and caches it as the given version of the resource, replacing any other version.
+     */
+    public <T extends MessageLite> SerializedMessage<T> put(String name, long version, T message) {
+        SerializedMessage<T> serialized = SerializedMessage.of(message);
+        if (cache != null) {
+            cache.asMap().merge(name, new Entry(version, serialized), (cached, entry) -> cached.version() > entry.version() ? cached : entry);
+        }
+        return serialized;
+    }
+
+    public void invalidate(String name) {
+        if (cache != null) {
+            cache.invalidate(name);
+        }
+    }
+
+    @Override
+    public void invalidate(String name, long version) {
+        if (cache != null) {
+            cache.asMap().computeIfPresent(name, (n, entry) -> entry.version() < version ? null : entry);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+}
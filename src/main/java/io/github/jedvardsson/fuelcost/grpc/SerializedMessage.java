@@ -0,0 +1,113 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.BindableService;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The wire form of a response message of type {@code T}, serialized once and sent any number of times.
+ * <p>
+ * A method only accepts serialized messages after its response marshaller has been replaced by
+ * {@link #bindService(ServerServiceDefinition, MethodDescriptor[])}. The marshaller writes the bytes of a
+ * serialized message as is and delegates everything else to the original marshaller.
+ */
+public final class SerializedMessage<T extends MessageLite> {
+
+    private final byte[] bytes;
+
+    private SerializedMessage(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static <T extends MessageLite> SerializedMessage<T> of(T message) {
+        return new SerializedMessage<>(message.toByteArray());
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    InputStream stream() {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Returns a copy of the definition in which the responses of the given methods may also be serialized messages.
+     */
+    public static ServerServiceDefinition bindService(ServerServiceDefinition definition, MethodDescriptor<?, ?>... methods) {
+        Map<String, MethodDescriptor<?, ?>> replaced = new HashMap<>();
+        for (MethodDescriptor<?, ?> method : methods) {
+            replaced.put(method.getFullMethodName(), withMarshaller(method));
+        }
+        ServiceDescriptor descriptor = definition.getServiceDescriptor();
+        ServiceDescriptor.Builder descriptorBuilder = ServiceDescriptor.newBuilder(descriptor.getName())
+                .setSchemaDescriptor(descriptor.getSchemaDescriptor());
+        for (MethodDescriptor<?, ?> method : descriptor.getMethods()) {
+            descriptorBuilder.addMethod(replaced.getOrDefault(method.getFullMethodName(), method));
+        }
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptorBuilder.build());
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+            String fullMethodName = method.getMethodDescriptor().getFullMethodName();
+            MethodDescriptor<?, ?> methodDescriptor = replaced.remove(fullMethodName);
+            ServerMethodDefinition<?, ?> bound = methodDescriptor == null ? method : rebind(methodDescriptor, method.getServerCallHandler());
+            addMethod(builder, bound);
+        }
+        if (!replaced.isEmpty()) {
+            throw new IllegalArgumentException("methods not in service %s: %s".formatted(descriptor.getName(), replaced.keySet()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Binds the service, replacing the response marshallers of its {@link SerializedResponses#getSerializedResponseMethods()}.
+     */
+    public static ServerServiceDefinition bindService(BindableService service) {
+        ServerServiceDefinition definition = service.bindService();
+        if (service instanceof SerializedResponses s && !s.getSerializedResponseMethods().isEmpty()) {
+            return bindService(definition, s.getSerializedResponseMethods().toArray(MethodDescriptor<?, ?>[]::new));
+        }
+        return definition;
+    }
+
+    private static <ReqT, RespT> void addMethod(ServerServiceDefinition.Builder builder, ServerMethodDefinition<ReqT, RespT> method) {
+        builder.addMethod(method);
+    }
+
+    private static <ReqT, RespT> MethodDescriptor<ReqT, Object> withMarshaller(MethodDescriptor<ReqT, RespT> method) {
+        return method.toBuilder(method.getRequestMarshaller(), new Marshaller<>(method.getResponseMarshaller())).build();
+    }
+
+    // The handlers only pass response messages through to the call, so they are agnostic of the response type.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ServerMethodDefinition<?, ?> rebind(MethodDescriptor<?, ?> method, ServerCallHandler<?, ?> handler) {
+        return ServerMethodDefinition.create((MethodDescriptor) method, (ServerCallHandler) handler);
+    }
+
+    private static final class Marshaller<T> implements MethodDescriptor.Marshaller<Object> {
+        private final MethodDescriptor.Marshaller<T> delegate;
+
+        Marshaller(MethodDescriptor.Marshaller<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public InputStream stream(Object value) {
+            return value instanceof SerializedMessage<?> m ? m.stream() : delegate.stream((T) value);
+        }
+
+        @Override
+        public Object parse(InputStream stream) {
+            return delegate.parse(stream);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import io.grpc.MethodDescriptor;
+
+import java.util.List;
+
+/**
+ * Implemented by services whose methods may respond with a {@link SerializedMessage}. The generated
+ * {@code bindService()} is final, so the marshallers are replaced when the service is registered, see
+ * {@link SerializedMessage#bindService(io.grpc.BindableService)}.
+ */
+public interface SerializedResponses {
+
+    List<MethodDescriptor<?, ?>> getSerializedResponseMethods();
+}
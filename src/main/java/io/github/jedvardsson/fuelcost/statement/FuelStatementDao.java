@@ -0,0 +1,245 @@
+package io.github.jedvardsson.fuelcost.statement;
+
+import io.github.jedvardsson.fuelcost.db.DbClient;
+import io.github.jedvardsson.fuelcost.grpc.GrpcException;
+import io.github.jedvardsson.fuelcost.grpc.ProtoHelpers;
+import io.github.jedvardsson.fuelcost.v1.FuelStatementRun;
+import org.jdbi.v3.core.Handle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntFunction;
+
+@Service
+public class FuelStatementDao {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    public record Job(LocalDate month, long accountId, int attemptCount) {
+    }
+
+    public enum JobState {
+        PENDING, DONE, FAILED;
+
+        String dbValue() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * A processed job. On failure the state is PENDING with the attempt counted, or FAILED after the last attempt.
+     */
+    public record JobResult(Job job, JobState state, RuntimeException error) {
+    }
+
+    /**
+     * Thrown when a failed job could not be rolled back to its savepoint, so that the transaction, and with it the
+     * attempt, is lost. The caller records the attempt with {@link #recordFailedAttempt} once the transaction has
+     * ended.
+     */
+    public static class JobAbortedException extends RuntimeException {
+        private final Job job;
+
+        JobAbortedException(Job job, RuntimeException cause) {
+            super("Fuel statement job " + job + " aborted: " + cause.getMessage(), cause);
+            this.job = job;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+    }
+
+    private final DbClient dbClient;
+    private final FuelStatementWriter writer;
+
+    public FuelStatementDao(DbClient dbClient, FuelStatementWriter writer) {
+        this.dbClient = dbClient;
+        this.writer = writer;
+    }
+
+    /**
+     * Queues a job for every account not already queued for the month, and returns the progress of the month.
+     */
+    @Transactional
+    public FuelStatementRun startRun(LocalDate month) {
+        dbClient.withHandle(h -> h.createUpdate("""
+                        insert into fuel_statement_job (month, account_id)
+                        select :month, a.account_id
+                        from account a
+                        order by a.account_id
+                        on conflict do nothing
+                        """)
+                .define(DbClient.STATEMENT, "fuelStatement.startRun")
+                .bind("month", month)
+                .execute());
+        return getRun(month);
+    }
+
+    /**
+     * Queues jobs for some accounts. Accounts already queued for the month are not queued again.
+     */
+    @Transactional
+    public int enqueue(LocalDate month, List<Long> accountIds) {
+        return dbClient.withHandle(h -> h.createUpdate("""
+                        insert into fuel_statement_job (month, account_id)
+                        select :month, a.account_id
+                        from unnest(:account_ids) as a(account_id)
+                        order by a.account_id
+                        on conflict do nothing
+                        """)
+                .define(DbClient.STATEMENT, "fuelStatement.enqueue")
+                .bind("month", month)
+                .bind("account_ids", accountIds.stream().mapToLong(Long::longValue).toArray())
+                .execute());
+    }
+
+    @Transactional(readOnly = true)
+    public FuelStatementRun getRun(LocalDate month) {
+        FuelStatementRun run = dbClient.withHandle(h -> h.createQuery("""
+                        select
+                            count(*) as account_count,
+                            count(*) filter (where t.state = 'done') as done_count,
+                            count(*) filter (where t.state = 'pending') as pending_count,
+                            count(*) filter (where t.state = 'pending' and t.attempt_count > 0) as retrying_count,
+                            count(*) filter (where t.state = 'failed') as failed_count
+                        from fuel_statement_job t
+                        where t.month = :month
+                        """)
+                .define(DbClient.STATEMENT, "fuelStatement.getRun")
+                .bind("month", month)
+                .map(r -> FuelStatementRun.newBuilder()
+                        .setMonth(ProtoHelpers.protoMonthOf(month))
+                        .setAccountCount(r.getColumn("account_count", Long.class))
+                        .setDoneCount(r.getColumn("done_count", Long.class))
+                        .setPendingCount(r.getColumn("pending_count", Long.class))
+                        .setRetryingCount(r.getColumn("retrying_count", Long.class))
+                        .setFailedCount(r.getColumn("failed_count", Long.class))
+                        .build())
+                .one());
+        if (run.getAccountCount() == 0) {
+            throw GrpcException.notFound("fuel statement run " + month);
+        }
+        return run;
+    }
+
+    /**
+     * Claims a due job, writes the statement of its account and marks it done, all in one transaction. The job row
+     * stays locked until then, so that other workers skip it, and is released if this worker dies. If writing the
+     * statement fails, it is rolled back to a savepoint and the job is scheduled for another attempt after
+     * {@code backoff.apply(attemptCount)}, or failed after {@code maxAttempts}. Returns empty if no job is due.
+     *
+     * @throws JobAbortedException if rolling back to the savepoint failed, e.g. as the connection broke
+     */
+    @Transactional
+    public Optional<JobResult> processNextJob(int maxAttempts, IntFunction<Duration> backoff) {
+        return dbClient.withHandle(h -> {
+            Optional<Job> claimed = h.createQuery("""
+                            select t.month, t.account_id, t.attempt_count
+                            from fuel_statement_job t
+                            where t.state = 'pending' and t.next_attempt_time <= statement_timestamp()
+                            order by t.next_attempt_time
+                            limit 1
+                            for update skip locked
+                            """)
+                    .define(DbClient.STATEMENT, "fuelStatement.claimJob")
+                    .map(r -> new Job(r.getColumn("month", LocalDate.class), r.getColumn("account_id", Long.class), r.getColumn("attempt_count", Integer.class)))
+                    .findOne();
+            if (claimed.isEmpty()) {
+                return Optional.empty();
+            }
+            Job job = claimed.get();
+            int attemptCount = job.attemptCount() + 1;
+            Connection connection = h.getConnection();
+            Savepoint savepoint = setSavepoint(connection);
+            try {
+                writer.write(h, job);
+                updateJob(h, job, JobState.DONE, attemptCount, Duration.ZERO, null);
+                return Optional.of(new JobResult(job, JobState.DONE, null));
+            } catch (RuntimeException e) {
+                try {
+                    rollback(connection, savepoint);
+                } catch (RuntimeException rollbackError) {
+                    e.addSuppressed(rollbackError);
+                    throw new JobAbortedException(job, e);
+                }
+                return Optional.of(failAttempt(h, job, maxAttempts, backoff, e));
+            }
+        });
+    }
+
+    /**
+     * Counts a failed attempt at a job whose transaction was lost, see {@link JobAbortedException}. Returns empty if
+     * the job has been attempted again since.
+     */
+    @Transactional
+    public Optional<JobResult> recordFailedAttempt(Job job, int maxAttempts, IntFunction<Duration> backoff, RuntimeException error) {
+        return dbClient.withHandle(h -> {
+            boolean pending = h.createQuery("""
+                            select true
+                            from fuel_statement_job t
+                            where t.month = :month and t.account_id = :account_id
+                                and t.state = 'pending' and t.attempt_count = :attempt_count
+                            for update
+                            """)
+                    .define(DbClient.STATEMENT, "fuelStatement.lockJob")
+                    .bind("month", job.month())
+                    .bind("account_id", job.accountId())
+                    .bind("attempt_count", job.attemptCount())
+                    .mapTo(Boolean.class)
+                    .findOne()
+                    .isPresent();
+            return pending ? Optional.of(failAttempt(h, job, maxAttempts, backoff, error)) : Optional.empty();
+        });
+    }
+
+    private static JobResult failAttempt(Handle h, Job job, int maxAttempts, IntFunction<Duration> backoff, RuntimeException error) {
+        int attemptCount = job.attemptCount() + 1;
+        JobState state = attemptCount < maxAttempts ? JobState.PENDING : JobState.FAILED;
+        updateJob(h, job, state, attemptCount, backoff.apply(attemptCount), error.toString());
+        return new JobResult(job, state, error);
+    }
+
+    private static void updateJob(Handle h, Job job, JobState state, int attemptCount, Duration delay, String error) {
+        h.createUpdate("""
+                        update fuel_statement_job set
+                            state = :state,
+                            attempt_count = :attempt_count,
+                            next_attempt_time = statement_timestamp() + :delay_millis * interval '1 millisecond',
+                            last_error = :last_error,
+                            update_time = statement_timestamp()
+                        where month = :month and account_id = :account_id
+                        """)
+                .define(DbClient.STATEMENT, "fuelStatement.updateJob")
+                .bind("state", state.dbValue())
+                .bind("attempt_count", attemptCount)
+                .bind("delay_millis", delay.toMillis())
+                .bind("last_error", error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH))
+                .bind("month", job.month())
+                .bind("account_id", job.accountId())
+                .execute();
+    }
+
+    private static Savepoint setSavepoint(Connection connection) {
+        try {
+            return connection.setSavepoint();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to set savepoint: " + e.getMessage(), e);
+        }
+    }
+
+    private static void rollback(Connection connection, Savepoint savepoint) {
+        try {
+            connection.rollback(savepoint);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to roll back to savepoint: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.jedvardsson.fuelcost.statement;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "fuel-statement.workers")
+public class FuelStatementProperties {
+
+    private final int threads;
+    private final Duration pollInterval;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    @ConstructorBinding
+    public FuelStatementProperties(@DefaultValue("4") int threads, @DefaultValue("1s") Duration pollInterval, @DefaultValue("5") int maxAttempts,
+                                   @DefaultValue("10s") Duration initialBackoff, @DefaultValue("10m") Duration maxBackoff) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("fuel-statement.workers.threads must not be negative: " + threads);
+        }
+        if (pollInterval.isNegative() || pollInterval.isZero()) {
+            throw new IllegalArgumentException("fuel-statement.workers.poll-interval must be positive: " + pollInterval);
+        }
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("fuel-statement.workers.max-attempts must be positive: " + maxAttempts);
+        }
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("fuel-statement.workers.initial-backoff must not be negative or above max-backoff: "
+                                               + initialBackoff + ", " + maxBackoff);
+        }
+        this.threads = threads;
+        this.pollInterval = pollInterval;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Number of worker threads of this node. Zero disables the workers, leaving the jobs to other nodes.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Time a worker waits before looking for a job again when none was due.
+     */
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Attempts at a job before it is failed.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Delay before the first retry of a failed job. It doubles for every further attempt up to
+     * {@link #getMaxBackoff()}, and is randomized down to half of that.
+     */
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.jedvardsson.fuelcost.statement;
+
+import io.github.jedvardsson.fuelcost.grpc.GrpcException;
+import io.github.jedvardsson.fuelcost.grpc.GrpcUtil;
+import io.github.jedvardsson.fuelcost.grpc.ProtoHelpers;
+import io.github.jedvardsson.fuelcost.v1.FuelStatementRun;
+import io.github.jedvardsson.fuelcost.v1.FuelStatementServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.GetFuelStatementRunRequest;
+import io.github.jedvardsson.fuelcost.v1.StartFuelStatementRunRequest;
+import io.grpc.stub.StreamObserver;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+
+
+@Service
+public class FuelStatementService extends FuelStatementServiceGrpc.FuelStatementServiceImplBase {
+
+    private final FuelStatementDao fuelStatementDao;
+
+    public FuelStatementService(FuelStatementDao fuelStatementDao) {
+        this.fuelStatementDao = fuelStatementDao;
+    }
+
+    @Override
+    public void startFuelStatementRun(StartFuelStatementRunRequest request, StreamObserver<FuelStatementRun> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> fuelStatementDao.startRun(parseMonth(request.hasMonth(), request.getMonth())));
+    }
+
+    @Override
+    public void getFuelStatementRun(GetFuelStatementRunRequest request, StreamObserver<FuelStatementRun> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> fuelStatementDao.getRun(parseMonth(request.hasMonth(), request.getMonth())));
+    }
+
+    private static LocalDate parseMonth(boolean present, com.google.type.Date month) {
+        if (!present) {
+            throw GrpcException.requiredArgument("month");
+        }
+        return ProtoHelpers.javaMonthOf(month, "month");
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.jedvardsson.fuelcost.statement;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs {@link FuelStatementProperties#getThreads()} threads {@code fuel-statement-worker-<n>} that process fuel
+ * statement jobs one at a time with {@link FuelStatementDao#processNextJob}, and wait for
+ * {@link FuelStatementProperties#getPollInterval()} when none is due. Jobs are claimed with {@code skip locked}, so
+ * workers on any number of nodes share the queue without coordination. An attempt whose transaction was lost is
+ * counted in a transaction of its own. Processed jobs are timed by
+ * {@code fuel.statement.jobs} tagged {@code outcome=done}, {@code retry} or {@code failed}.
+ */
+@Service
+public class FuelStatementWorkers implements SmartLifecycle {
+
+    private static final Logger LOGGER = getLogger(FuelStatementWorkers.class);
+
+    private final FuelStatementDao fuelStatementDao;
+    private final FuelStatementProperties properties;
+    private final Timer done;
+    private final Timer retry;
+    private final Timer failed;
+    private volatile boolean running;
+    private ExecutorService executor;
+
+    public FuelStatementWorkers(FuelStatementDao fuelStatementDao, FuelStatementProperties properties, MeterRegistry meterRegistry) {
+        this.fuelStatementDao = fuelStatementDao;
+        this.properties = properties;
+        this.done = jobTimer(meterRegistry, "done");
+        this.retry = jobTimer(meterRegistry, "retry");
+        this.failed = jobTimer(meterRegistry, "failed");
+    }
+
+    private static Timer jobTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("fuel.statement.jobs")
+                .description("Time to process a fuel statement job")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running || properties.getThreads() == 0) {
+            return;
+        }
+        running = true;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(properties.getThreads(), r -> {
+            Thread thread = new Thread(r, "fuel-statement-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < properties.getThreads(); i++) {
+            executor.execute(this::run);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(properties.getPollInterval().toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        while (running) {
+            long start = System.nanoTime();
+            Optional<FuelStatementDao.JobResult> result;
+            try {
+                try {
+                    result = fuelStatementDao.processNextJob(properties.getMaxAttempts(), this::backoff);
+                } catch (RuntimeException e) {
+                    FuelStatementDao.JobAbortedException aborted = jobAborted(e);
+                    if (aborted == null) {
+                        throw e;
+                    }
+                    result = fuelStatementDao.recordFailedAttempt(aborted.getJob(), properties.getMaxAttempts(), this::backoff, aborted);
+                }
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                LOGGER.warn("Failed to process fuel statement jobs, retrying in {}", properties.getPollInterval(), e);
+                result = Optional.empty();
+            }
+            if (result.isEmpty()) {
+                try {
+                    Thread.sleep(properties.getPollInterval().toMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            FuelStatementDao.JobResult r = result.get();
+            long elapsed = System.nanoTime() - start;
+            switch (r.state()) {
+                case DONE -> done.record(elapsed, TimeUnit.NANOSECONDS);
+                case PENDING -> {
+                    retry.record(elapsed, TimeUnit.NANOSECONDS);
+                    LOGGER.info("Fuel statement job {} failed, will be retried: {}", r.job(), r.error().toString());
+                }
+                case FAILED -> {
+                    failed.record(elapsed, TimeUnit.NANOSECONDS);
+                    LOGGER.warn("Fuel statement job {} failed, giving up", r.job(), r.error());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the exception aborting a job, also when the transaction manager replaced it by failing to roll back.
+     */
+    private static FuelStatementDao.JobAbortedException jobAborted(RuntimeException e) {
+        Throwable t = e instanceof TransactionSystemException s && s.getApplicationException() != null ? s.getApplicationException() : e;
+        return t instanceof FuelStatementDao.JobAbortedException aborted ? aborted : null;
+    }
+
+    /**
+     * Exponential backoff with jitter, so that jobs failing together are not retried together.
+     */
+    private Duration backoff(int attemptCount) {
+        double exponential = properties.getInitialBackoff().toMillis() * Math.pow(2, attemptCount - 1);
+        long delay = (long) Math.min(properties.getMaxBackoff().toMillis(), exponential);
+        return Duration.ofMillis(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.jedvardsson.fuelcost.statement;
+
+import io.github.jedvardsson.fuelcost.db.DbClient;
+import org.jdbi.v3.core.Handle;
+import org.springframework.stereotype.Service;
+
+@Service
+public class FuelStatementWriter {
+
+    /**
+     * Replaces the statement of the account with its monthly fuel cost rollups. Unchanged rows are not written.
+     */
+    public void write(Handle h, FuelStatementDao.Job job) {
+        h.createUpdate("""
+                        with m as (
+                            select t.vehicle_id, t.currency_code, t.purchase_count, t.price_micros, t.volume_liters
+                            from fuel_cost_monthly t
+                            where t.account_id = :account_id and t.month = :month
+                        ), upserted as (
+                            insert into fuel_statement as t (account_id, month, vehicle_id, currency_code, purchase_count, price_micros, volume_liters)
+                            select :account_id, :month, m.vehicle_id, m.currency_code, m.purchase_count, m.price_micros, m.volume_liters
+                            from m
+                            order by m.vehicle_id, m.currency_code
+                            on conflict (account_id, month, vehicle_id, currency_code) do update set
+                                purchase_count = excluded.purchase_count,
+                                price_micros = excluded.price_micros,
+                                volume_liters = excluded.volume_liters,
+                                update_time = statement_timestamp()
+                            where (t.purchase_count, t.price_micros, t.volume_liters)
+                                is distinct from (excluded.purchase_count, excluded.price_micros, excluded.volume_liters)
+                        )
+                        delete from fuel_statement t
+                        where t.account_id = :account_id and t.month = :month
+                            and not exists (select from m where m.vehicle_id = t.vehicle_id and m.currency_code = t.currency_code)
+                        """)
+                .define(DbClient.STATEMENT, "fuelStatement.write")
+                .bind("account_id", job.accountId())
+                .bind("month", job.month())
+                .execute();
+    }
+}
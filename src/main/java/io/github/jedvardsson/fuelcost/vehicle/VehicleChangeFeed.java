@@ -0,0 +1,213 @@
+package io.github.jedvardsson.fuelcost.vehicle;
+
+import com.google.protobuf.util.Timestamps;
+import io.github.jedvardsson.fuelcost.account.AccountDao;
+import io.github.jedvardsson.fuelcost.account.AccountName;
+import io.github.jedvardsson.fuelcost.common.Arguments;
+import io.github.jedvardsson.fuelcost.common.VersionEtag;
+import io.github.jedvardsson.fuelcost.db.PgNotificationListener;
+import io.github.jedvardsson.fuelcost.grpc.GrpcException;
+import io.github.jedvardsson.fuelcost.grpc.GrpcUtil;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleChange;
+import io.github.jedvardsson.fuelcost.v1.WatchVehiclesRequest;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Fans out the vehicle changes published by the {@code vehicle_notify} trigger to {@code WatchVehicles} calls.
+ * All calls share the one connection of the {@link PgNotificationListener}.
+ * <p>
+ * Each watcher has a buffer of changes not yet sent, keyed by vehicle name, so a newer change to a vehicle replaces
+ * an unsent one. Changes are sent while the call is ready and the rest when it becomes ready again. A watcher with
+ * more than {@link VehicleWatchProperties#getBufferSize()} vehicles pending is failed with RESOURCE_EXHAUSTED, and
+ * all watchers are failed with UNAVAILABLE when the listener reconnects, since changes may have been missed.
+ */
+@Service
+public class VehicleChangeFeed implements PgNotificationListener.Listener {
+
+    private static final Logger LOGGER = getLogger(VehicleChangeFeed.class);
+
+    static final String CHANNEL = "vehicle_change";
+
+    private final AccountDao accountDao;
+    private final int bufferSize;
+    private final Map<Long, Set<Watcher>> watchers = new ConcurrentHashMap<>();
+    private final Counter overflows;
+
+    public VehicleChangeFeed(PgNotificationListener notificationListener, AccountDao accountDao, VehicleWatchProperties properties, MeterRegistry meterRegistry) {
+        this.accountDao = accountDao;
+        this.bufferSize = properties.getBufferSize();
+        Gauge.builder("vehicle.watchers", watchers, w -> w.values().stream().mapToInt(Set::size).sum())
+                .description("Active WatchVehicles calls")
+                .register(meterRegistry);
+        this.overflows = Counter.builder("vehicle.watcher.overflows")
+                .description("WatchVehicles calls failed since the client fell too far behind")
+                .register(meterRegistry);
+        notificationListener.listen(CHANNEL, this);
+    }
+
+    public void watch(WatchVehiclesRequest request, StreamObserver<VehicleChange> responseObserver) {
+        ServerCallStreamObserver<VehicleChange> observer = (ServerCallStreamObserver<VehicleChange>) responseObserver;
+        AccountName parent;
+        try {
+            parent = Arguments.parse(request.getParent(), "parent", AccountName::parse);
+            accountDao.getAccount(parent).orElseThrow(() -> GrpcException.notFound(parent.toString()));
+        } catch (RuntimeException e) {
+            observer.onError(GrpcUtil.getStatus(e).withCause(e).asRuntimeException());
+            return;
+        }
+        Watcher watcher = new Watcher(parent.accountId(), observer);
+        observer.setOnCancelHandler(() -> remove(watcher));
+        observer.setOnReadyHandler(watcher::drain);
+        watchers.compute(parent.accountId(), (k, set) -> {
+            Set<Watcher> s = set == null ? ConcurrentHashMap.newKeySet() : set;
+            s.add(watcher);
+            return s;
+        });
+    }
+
+    int getWatcherCount(long accountId) {
+        Set<Watcher> set = watchers.get(accountId);
+        return set == null ? 0 : set.size();
+    }
+
+    @Override
+    public void onNotification(String payload) {
+        VehicleChange change;
+        try {
+            change = parse(payload);
+        } catch (RuntimeException e) {
+            LOGGER.error("Invalid vehicle change: {}", payload, e);
+            return;
+        }
+        Set<Watcher> set = watchers.get(VehicleName.parse(change.getVehicle().getName()).accountId());
+        if (set != null) {
+            for (Watcher watcher : set) {
+                watcher.offer(change);
+            }
+        }
+    }
+
+    @Override
+    public void onReconnect() {
+        for (Set<Watcher> set : watchers.values()) {
+            for (Watcher watcher : set) {
+                watcher.fail(Status.UNAVAILABLE.withDescription("vehicle changes may have been missed, watch again"));
+            }
+        }
+    }
+
+    /**
+     * Parses the payload written by the {@code vehicle_notify} trigger.
+     */
+    static VehicleChange parse(String payload) {
+        String[] fields = payload.split("\\|", 7);
+        if (fields.length < 6) {
+            throw new IllegalArgumentException("expected at least 6 fields: " + payload);
+        }
+        String name = new VehicleName(Long.parseLong(fields[1]), Long.parseLong(fields[2])).toString();
+        String etag = VersionEtag.format(Long.parseLong(fields[3]));
+        if (fields[0].equals("D")) {
+            return VehicleChange.newBuilder()
+                    .setType(VehicleChange.Type.DELETE)
+                    .setVehicle(Vehicle.newBuilder().setName(name).setEtag(etag))
+                    .build();
+        }
+        return VehicleChange.newBuilder()
+                .setType(VehicleChange.Type.UPSERT)
+                .setVehicle(Vehicle.newBuilder()
+                        .setName(name)
+                        .setEtag(etag)
+                        .setCreateTime(Timestamps.fromMicros(Long.parseLong(fields[4])))
+                        .setUpdateTime(Timestamps.fromMicros(Long.parseLong(fields[5])))
+                        .setDisplayName(fields.length > 6 ? fields[6] : ""))
+                .build();
+    }
+
+    private void remove(Watcher watcher) {
+        watchers.computeIfPresent(watcher.accountId, (k, set) -> {
+            set.remove(watcher);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Offers come from the listener thread and drains from gRPC callbacks, so the buffer and the observer
+     * are guarded by the watcher's monitor.
+     */
+    private final class Watcher {
+        private final long accountId;
+        private final ServerCallStreamObserver<VehicleChange> observer;
+        private final LinkedHashMap<String, VehicleChange> pending = new LinkedHashMap<>();
+        private boolean closed;
+
+        Watcher(long accountId, ServerCallStreamObserver<VehicleChange> observer) {
+            this.accountId = accountId;
+            this.observer = observer;
+        }
+
+        synchronized void offer(VehicleChange change) {
+            if (closed) {
+                return;
+            }
+            String name = change.getVehicle().getName();
+            if (pending.size() >= bufferSize && !pending.containsKey(name)) {
+                overflows.increment();
+                fail(Status.RESOURCE_EXHAUSTED.withDescription("more than %d vehicle changes pending, watch again".formatted(bufferSize)));
+                return;
+            }
+            pending.put(name, change);
+            drain();
+        }
+
+        synchronized void drain() {
+            if (closed) {
+                return;
+            }
+            Iterator<VehicleChange> it = pending.values().iterator();
+            try {
+                while (it.hasNext() && observer.isReady()) {
+                    VehicleChange change = it.next();
+                    it.remove();
+                    observer.onNext(change);
+                }
+            } catch (RuntimeException e) {
+                // the call was cancelled concurrently
+                close();
+            }
+        }
+
+        synchronized void fail(Status status) {
+            if (closed) {
+                return;
+            }
+            close();
+            try {
+                observer.onError(status.asRuntimeException());
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to close watcher", e);
+            }
+        }
+
+        private void close() {
+            closed = true;
+            pending.clear();
+            remove(this);
+        }
+    }
+}
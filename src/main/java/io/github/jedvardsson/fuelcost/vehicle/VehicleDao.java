@@ -3,39 +3,74 @@ package io.github.jedvardsson.fuelcost.vehicle;
 import com.google.protobuf.Timestamp;
 import io.github.jedvardsson.fuelcost.account.AccountDao;
 import io.github.jedvardsson.fuelcost.account.AccountName;
+import io.github.jedvardsson.fuelcost.account.AccountRowMapper;
 import io.github.jedvardsson.fuelcost.common.Arguments;
+import io.github.jedvardsson.fuelcost.common.MicroBatcher;
 import io.github.jedvardsson.fuelcost.common.PageTokens;
+import io.github.jedvardsson.fuelcost.common.SingleFlight;
 import io.github.jedvardsson.fuelcost.common.VersionEtag;
 import io.github.jedvardsson.fuelcost.db.DbClient;
+import io.github.jedvardsson.fuelcost.db.DbProperties;
+import io.github.jedvardsson.fuelcost.db.InvalidationBus;
+import io.github.jedvardsson.fuelcost.db.SqlStates;
 import io.github.jedvardsson.fuelcost.grpc.GrpcException;
+import io.github.jedvardsson.fuelcost.grpc.ResponseCache;
+import io.github.jedvardsson.fuelcost.grpc.SerializedMessage;
+import io.github.jedvardsson.fuelcost.v1.BatchCreateVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchCreateVehiclesResponse;
+import io.github.jedvardsson.fuelcost.v1.BatchGetVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchGetVehiclesResponse;
 import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.DeleteVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.ExportRecord;
 import io.github.jedvardsson.fuelcost.v1.GetVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.ListVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.ListVehiclesResponse;
+import io.github.jedvardsson.fuelcost.v1.StreamVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.UpdateVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jdbi.v3.core.JdbiException;
 import org.jdbi.v3.core.result.RowView;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class VehicleDao {
 
     private static final int MAX_PAGE_SIZE = 1000;
     private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_BATCH_CREATE_SIZE = 10000;
     private static final int DISPLAY_NAME_MAX_LENGTH = 30;
+    private static final AccountRowMapper ACCOUNT_MAPPER = new AccountRowMapper();
 
     private final DbClient dbClient;
     private final AccountDao accountDao;
+    private final ResponseCache responseCache;
+    private final InvalidationBus invalidationBus;
+    private final SingleFlight<VehicleName, Optional<Vehicle>> reads;
+    private final MicroBatcher<VehicleName, Vehicle> batcher;
 
-    public VehicleDao(DbClient dbClient, AccountDao accountDao) {
+    public VehicleDao(DbClient dbClient, AccountDao accountDao, ResponseCache responseCache, InvalidationBus invalidationBus, DbProperties dbProperties,
+                      MeterRegistry meterRegistry) {
         this.dbClient = dbClient;
         this.accountDao = accountDao;
+        this.responseCache = responseCache;
+        this.invalidationBus = invalidationBus;
+        this.reads = new SingleFlight<>("vehicle", meterRegistry);
+        DbProperties.ReadBatching readBatching = dbProperties.getReadBatching();
+        this.batcher = !readBatching.isEnabled() ? null : new MicroBatcher<>("vehicle", readBatching.getWindow(), readBatching.getMaxSize(),
+                names -> getVehicles(names).stream().collect(Collectors.toMap(v -> VehicleName.parse(v.getName()), Function.identity())), meterRegistry);
     }
 
     @Transactional
@@ -50,11 +85,12 @@ public class VehicleDao {
             AccountName parentName = Arguments.parse(request.getParent(), "parent", AccountName::parse);
             requireExists(parentName);
 
-            return h.createQuery("""
+            return guardParent(parentName, () -> h.createQuery("""
                             insert into vehicle (account_id, version, create_time, update_time, display_name)
                             values (:account_id, :version, statement_timestamp(), statement_timestamp(), :display_name)
                             returning account_id, vehicle_id, version, create_time, update_time
                             """)
+                    .define(DbClient.STATEMENT, "vehicle.create")
                     .bind("account_id", parentName.accountId())
                     .bind("version", 1)
                     .bind("display_name", parseDisplayName(vehicle.getDisplayName()))
@@ -64,10 +100,79 @@ public class VehicleDao {
                             .setCreateTime(r.getColumn("create_time", Timestamp.class))
                             .setUpdateTime(r.getColumn("update_time", Timestamp.class))
                             .build())
-                    .one();
+                    .one());
         });
     }
 
+    /**
+     * The parent may have been deleted since {@link #requireExists} found it in the account cache.
+     * The foreign key still rejects the insert, which is reported as the parent not being found.
+     */
+    private static <T> T guardParent(AccountName parentName, Supplier<T> insert) {
+        try {
+            return insert.get();
+        } catch (JdbiException e) {
+            if (SqlStates.hasSqlState(e, SqlStates.FOREIGN_KEY_VIOLATION)) {
+                throw GrpcException.notFound(parentName.toString());
+            }
+            throw e;
+        }
+    }
+
+    @Transactional
+    public BatchCreateVehiclesResponse batchCreateVehicles(BatchCreateVehiclesRequest request) {
+        AccountName parentName = Arguments.parse(request.getParent(), "parent", AccountName::parse);
+        int size = request.getRequestsCount();
+        if (size > MAX_BATCH_CREATE_SIZE) {
+            throw GrpcException.invalidArgument("requests", "must be at most " + MAX_BATCH_CREATE_SIZE + ": " + size);
+        }
+        String[] displayNames = new String[size];
+        for (int i = 0; i < size; i++) {
+            CreateVehicleRequest r = request.getRequests(i);
+            if (!r.getParent().isEmpty() && !parentName.equals(Arguments.parse(r.getParent(), "requests.parent", AccountName::parse))) {
+                throw GrpcException.invalidArgument("requests.parent", r.getParent() + " does not match " + request.getParent());
+            }
+            if (!r.hasVehicle()) {
+                throw GrpcException.requiredArgument("requests.vehicle");
+            }
+            displayNames[i] = parseDisplayName(r.getVehicle().getDisplayName());
+        }
+        if (size == 0) {
+            return BatchCreateVehiclesResponse.getDefaultInstance();
+        }
+        requireExists(parentName);
+
+        return dbClient.withHandle(h -> {
+            // Identity values are assigned after the sort on ord, so vehicle_id follows request order.
+            List<Vehicle> created = guardParent(parentName, () -> h.createQuery("""
+                            with t as (
+                                insert into vehicle (account_id, version, create_time, update_time, display_name)
+                                select :account_id, :version, statement_timestamp(), statement_timestamp(), x.display_name
+                                from unnest(:display_names) with ordinality as x(display_name, ord)
+                                order by x.ord
+                                returning account_id, vehicle_id, version, create_time, update_time
+                            )
+                            select * from t order by t.vehicle_id
+                            """)
+                    .define(DbClient.STATEMENT, "vehicle.batchCreate")
+                    .bind("account_id", parentName.accountId())
+                    .bind("version", 1)
+                    .bind("display_names", displayNames)
+                    .map(r -> Vehicle.newBuilder()
+                            .setName(getVehicleName(r).toString())
+                            .setEtag(formatVersionEtag(r))
+                            .setCreateTime(r.getColumn("create_time", Timestamp.class))
+                            .setUpdateTime(r.getColumn("update_time", Timestamp.class))
+                            .build())
+                    .list());
+
+            BatchCreateVehiclesResponse.Builder response = BatchCreateVehiclesResponse.newBuilder();
+            for (int i = 0; i < size; i++) {
+                response.addVehicles(request.getRequests(i).getVehicle().toBuilder().mergeFrom(created.get(i)));
+            }
+            return response.build();
+        });
+    }
 
     @Transactional
     public Vehicle updateVehicle(UpdateVehicleRequest request) {
@@ -80,8 +185,10 @@ public class VehicleDao {
             String name = vehicle.getName();
             VehicleName key = Arguments.parse(name, "name", VehicleName::parse);
             Long version = VersionEtag.tryParseVersion(vehicle.getEtag());
+            responseCache.invalidate(key.toString());
+            reads.forget(key);
 
-            return h.createQuery("""
+            Vehicle updated = h.createQuery("""
                             update vehicle t set
                                 version = version + 1,
                                 update_time = statement_timestamp(),
@@ -89,6 +196,7 @@ public class VehicleDao {
                             where t.account_id = :account_id and t.vehicle_id = :vehicle_id and (:version is null or t.version = :version)
                             returning account_id, vehicle_id, version, create_time, update_time
                             """)
+                    .define(DbClient.STATEMENT, "vehicle.update")
                     .bind("account_id", key.accountId())
                     .bind("vehicle_id", key.vehicleId())
                     .bind("version", version)
@@ -101,6 +209,8 @@ public class VehicleDao {
                             .build())
                     .findFirst()
                     .orElseThrow(() -> version == null ? GrpcException.notFound(name) : GrpcException.etagNotMatching(name));
+            invalidationBus.publish(key.toString(), VersionEtag.parse(updated.getEtag()).version());
+            return updated;
         });
     }
 
@@ -119,30 +229,129 @@ public class VehicleDao {
         String name = request.getName();
         VehicleName key = Arguments.parse(name, "name", VehicleName::parse);
         Long version = VersionEtag.parseOptionalVersion(request.getEtag()).orElse(null);
+        responseCache.invalidate(key.toString());
+        reads.forget(key);
         dbClient.withHandle(h -> h.createQuery("""
                         delete from vehicle t where t.account_id = :account_id and t.vehicle_id = :vehicle_id and (:version is null or t.version = :version)
                         returning account_id, vehicle_id, version
                         """)
+                .define(DbClient.STATEMENT, "vehicle.delete")
                 .bind("account_id", key.accountId())
                 .bind("vehicle_id", key.vehicleId())
                 .bind("version", version)
                 .mapTo(String.class)
                 .findFirst()
                 .orElseThrow(() -> version == null ? GrpcException.notFound(name) : GrpcException.etagNotMatching(name)));
+        invalidationBus.publish(key.toString(), InvalidationBus.DELETED);
     }
 
+    /**
+     * With {@code if_none_match}, first looks up only the version, by primary key, and returns just the name
+     * and etag if it matches. Only a changed vehicle is read and mapped in full.
+     */
     @Transactional(readOnly = true)
     public Vehicle getVehicle(GetVehicleRequest request) {
         String name = Arguments.requireNonEmpty(request.getName(), "name");
+        if (!request.getIfNoneMatch().isEmpty()) {
+            long ifNoneMatch = parseIfNoneMatch(request);
+            VehicleName key = Arguments.parse(name, "name", VehicleName::parse);
+            long version = getVehicleVersion(key).orElseThrow(() -> GrpcException.notFound(name));
+            if (version == ifNoneMatch) {
+                return notModified(key, version);
+            }
+        }
         return getVehicle(name).orElseThrow(() -> GrpcException.notFound(name));
     }
 
+    /**
+     * Like {@link #getVehicle(GetVehicleRequest)} but answered from the {@link ResponseCache}. The version is always
+     * looked up by primary key, and only a vehicle whose version is not cached is read, mapped and serialized.
+     */
     @Transactional(readOnly = true)
+    public SerializedMessage<Vehicle> getSerializedVehicle(GetVehicleRequest request) {
+        String name = Arguments.requireNonEmpty(request.getName(), "name");
+        VehicleName key = Arguments.parse(name, "name", VehicleName::parse);
+        Long ifNoneMatch = request.getIfNoneMatch().isEmpty() ? null : parseIfNoneMatch(request);
+        long version = getVehicleVersion(key).orElseThrow(() -> GrpcException.notFound(name));
+        if (ifNoneMatch != null && version == ifNoneMatch) {
+            return SerializedMessage.of(notModified(key, version));
+        }
+        SerializedMessage<Vehicle> cached = responseCache.get(key.toString(), version);
+        if (cached != null) {
+            return cached;
+        }
+        Vehicle vehicle = getVehicle(name).orElseThrow(() -> GrpcException.notFound(name));
+        return responseCache.put(key.toString(), VersionEtag.parse(vehicle.getEtag()).version(), vehicle);
+    }
+
+    private static long parseIfNoneMatch(GetVehicleRequest request) {
+        return Arguments.parse(request.getIfNoneMatch(), "if_none_match", VersionEtag::parse).version();
+    }
+
+    private static Vehicle notModified(VehicleName name, long version) {
+        return Vehicle.newBuilder()
+                .setName(name.toString())
+                .setEtag(VersionEtag.format(version))
+                .build();
+    }
+
+    private Optional<Long> getVehicleVersion(VehicleName name) {
+        return dbClient.withHandle(h -> h.createQuery("""
+                        select t.version from vehicle t where t.account_id = :account_id and t.vehicle_id = :vehicle_id
+                        """)
+                .define(DbClient.STATEMENT, "vehicle.getVersion")
+                .bind("account_id", name.accountId())
+                .bind("vehicle_id", name.vehicleId())
+                .mapTo(Long.class)
+                .findFirst());
+    }
+
+    /**
+     * Concurrent reads of the same vehicle share a single query and, with {@link DbProperties.ReadBatching read
+     * batching}, so do concurrent reads of other vehicles. This includes reads of vehicles missing from the
+     * {@link ResponseCache}.
+     */
     public Optional<Vehicle> getVehicle(String name) {
-        return getVehicles(List.of(VehicleName.parse(name))).stream().findFirst();
+        VehicleName key = VehicleName.parse(name);
+        return reads.execute(key, () -> batcher != null ? batcher.load(key) : getVehicles(List.of(key)).stream().findFirst());
+    }
+
+    @Transactional(readOnly = true)
+    public BatchGetVehiclesResponse batchGetVehicles(BatchGetVehiclesRequest request) {
+        String parent = request.getParent();
+        AccountName parentName = parent.isEmpty() || parent.equals("accounts/-") ? null : Arguments.parse(parent, "parent", AccountName::parse);
+        if (request.getNamesCount() > MAX_BATCH_SIZE) {
+            throw GrpcException.invalidArgument("names", "must be at most " + MAX_BATCH_SIZE + ": " + request.getNamesCount());
+        }
+        List<VehicleName> names = new ArrayList<>(request.getNamesCount());
+        for (String name : request.getNamesList()) {
+            VehicleName key = Arguments.parse(name, "names", VehicleName::parse);
+            if (parentName != null && key.accountId() != parentName.accountId()) {
+                throw GrpcException.invalidArgument("names", name + " is not a child of " + parent);
+            }
+            names.add(key);
+        }
+
+        List<Vehicle> vehicles = names.isEmpty() ? List.of() : getVehicles(names);
+        if (vehicles.size() != names.size()) {
+            // both lists are in request order, so the first name not matching is missing
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i).toString();
+                if (i >= vehicles.size() || !vehicles.get(i).getName().equals(name)) {
+                    throw GrpcException.notFound(name);
+                }
+            }
+        }
+        return BatchGetVehiclesResponse.newBuilder()
+                .addAllVehicles(vehicles)
+                .build();
     }
 
-    private List<Vehicle> getVehicles(List<VehicleName> names) {
+    /**
+     * Returns the existing vehicles in the order of the given names, in a single query.
+     */
+    @Transactional(readOnly = true)
+    public List<Vehicle> getVehicles(List<VehicleName> names) {
         return dbClient.withHandle(h -> h.createQuery("""
                         select
                             t.account_id,
@@ -155,24 +364,69 @@ public class VehicleDao {
                         join vehicle t on t.account_id = x.account_id and t.vehicle_id = x.vehicle_id
                         order by x.ord
                         """)
+                .define(DbClient.STATEMENT, "vehicle.get")
                 .bind("account_ids", names.stream().mapToLong(VehicleName::accountId).toArray())
                 .bind("vehicle_ids", names.stream().mapToLong(VehicleName::vehicleId).toArray())
-                .map(r -> {
-                    Vehicle.Builder b = Vehicle.newBuilder();
-                    b.setName(getVehicleName(r).toString())
-                            .setEtag(formatVersionEtag(r))
-                            .setCreateTime(r.getColumn("create_time", Timestamp.class))
-                            .setUpdateTime(r.getColumn("update_time", Timestamp.class))
-                            .build();
-                    String displayName = r.getColumn("display_name", String.class);
-                    if (displayName != null) {
-                        b.setDisplayName(displayName);
-                    }
-                    return b.build();
-                })
+                .map(VehicleDao::getVehicle)
                 .list());
     }
 
+    /**
+     * Streams all vehicles of an account from a database cursor. The stream holds a connection until closed.
+     */
+    public Stream<Vehicle> streamVehicles(StreamVehiclesRequest request) {
+        AccountName parentName = Arguments.parse(request.getParent(), "parent", AccountName::parse);
+        requireExists(parentName);
+
+        return dbClient.stream(h -> h.createQuery("""
+                        select
+                            t.account_id,
+                            t.vehicle_id,
+                            t.version,
+                            t.create_time,
+                            t.update_time,
+                            t.display_name
+                        from vehicle t
+                        where t.account_id = :account_id
+                        order by t.account_id, t.vehicle_id
+                        """)
+                .define(DbClient.STATEMENT, "vehicle.stream")
+                .bind("account_id", parentName.accountId())
+                .map(VehicleDao::getVehicle));
+    }
+
+    /**
+     * Streams all accounts, each followed by its vehicles, from a single database cursor over one snapshot. The
+     * stream holds a connection until closed.
+     */
+    public Stream<ExportRecord> exportVehicles() {
+        return dbClient.stream(h -> h.createQuery("""
+                        select account_id, null::bigint as vehicle_id, version, create_time, update_time, null::text as display_name
+                        from account
+                        union all
+                        select account_id, vehicle_id, version, create_time, update_time, display_name
+                        from vehicle
+                        order by account_id, vehicle_id nulls first
+                        """)
+                .define(DbClient.STATEMENT, "vehicle.export")
+                .map(r -> r.getColumn("vehicle_id", Long.class) == null
+                        ? ExportRecord.newBuilder().setAccount(ACCOUNT_MAPPER.map(r)).build()
+                        : ExportRecord.newBuilder().setVehicle(getVehicle(r)).build()));
+    }
+
+    private static Vehicle getVehicle(RowView r) {
+        Vehicle.Builder b = Vehicle.newBuilder()
+                .setName(getVehicleName(r).toString())
+                .setEtag(formatVersionEtag(r))
+                .setCreateTime(r.getColumn("create_time", Timestamp.class))
+                .setUpdateTime(r.getColumn("update_time", Timestamp.class));
+        String displayName = r.getColumn("display_name", String.class);
+        if (displayName != null) {
+            b.setDisplayName(displayName);
+        }
+        return b.build();
+    }
+
     @NotNull
     private static String formatVersionEtag(RowView r) {
         return VersionEtag.format(r.getColumn("version", Long.class));
@@ -187,35 +441,37 @@ public class VehicleDao {
         AccountName parentName = Arguments.parse(request.getParent(), "parent", AccountName::parse);
         requireExists(parentName);
 
-        VehicleName pageToken = PageTokens.parseOptional(request.getPageToken(), VehicleName.class).orElseGet(() -> new VehicleName(parentName.accountId(), 0L));
+        VehicleName pageToken = PageTokens.parseOptional(request.getPageToken(), VehicleName.PAGE_TOKEN_CODEC).orElseGet(() -> new VehicleName(parentName.accountId(), 0L));
         int pageSize = request.getPageSize() <= 0 ? DEFAULT_PAGE_SIZE : Math.min(MAX_PAGE_SIZE, request.getPageSize());
 
-        return dbClient.withHandle(h -> {
-            List<VehicleName> names = h.createQuery("""
-                            select
-                                t.account_id,
-                                t.vehicle_id
-                            from vehicle t
-                            where
-                                t.account_id = :parent_account_id
-                                and t.vehicle_id > :page_token_vehicle_id
-                            order by t.account_id, t.vehicle_id
-                            limit :page_size
-                            """)
-                    .bind("parent_account_id", parentName.accountId())
-                    .bind("page_token_vehicle_id", pageToken.vehicleId())
-                    .bind("page_size", pageSize)
-                    .map(r -> getVehicleName(r))
-                    .list();
-
-            var entities = getVehicles(names);
-            int size = names.size();
-            String nextPageToken = size != pageSize ? "" : PageTokens.format(names.get(size - 1));
-            return ListVehiclesResponse.newBuilder()
-                    .addAllVehicles(entities)
-                    .setNextPageToken(nextPageToken)
-                    .build();
-        });
+        List<Vehicle> vehicles = dbClient.withHandle(h -> h.createQuery("""
+                        select
+                            t.account_id,
+                            t.vehicle_id,
+                            t.version,
+                            t.create_time,
+                            t.update_time,
+                            t.display_name
+                        from vehicle t
+                        where
+                            t.account_id = :parent_account_id
+                            and t.vehicle_id > :page_token_vehicle_id
+                        order by t.account_id, t.vehicle_id
+                        limit :page_size
+                        """)
+                .define(DbClient.STATEMENT, "vehicle.list")
+                .bind("parent_account_id", parentName.accountId())
+                .bind("page_token_vehicle_id", pageToken.vehicleId())
+                .bind("page_size", pageSize)
+                .map(VehicleDao::getVehicle)
+                .list());
+
+        int size = vehicles.size();
+        String nextPageToken = size != pageSize ? "" : PageTokens.format(VehicleName.parse(vehicles.get(size - 1).getName()), VehicleName.PAGE_TOKEN_CODEC);
+        return ListVehiclesResponse.newBuilder()
+                .addAllVehicles(vehicles)
+                .setNextPageToken(nextPageToken)
+                .build();
     }
 
     private void requireExists(AccountName parentName) {
@@ -0,0 +1,159 @@
+package io.github.jedvardsson.fuelcost.vehicle;
+
+import com.google.protobuf.CodedOutputStream;
+import io.github.jedvardsson.fuelcost.common.ChannelOutputStream;
+import io.github.jedvardsson.fuelcost.grpc.ProtoHelpers;
+import io.github.jedvardsson.fuelcost.v1.ExportRecord;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Exports all accounts and vehicles to a file in {@link VehicleExportProperties#getDirectory()}, as
+ * {@link ExportRecord}s read from a single cursor by {@link VehicleDao#exportVehicles()}. Records are written one at a
+ * time through a {@link FileChannel}, so memory use does not depend on the number of records. The file is written
+ * under a temporary name and renamed when complete. One export runs at a time, timed by {@code vehicle.export}.
+ */
+@Service
+public class VehicleExport {
+
+    private static final Logger LOGGER = getLogger(VehicleExport.class);
+
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'").withZone(ZoneOffset.UTC);
+
+    public enum Format {
+        /**
+         * Each record is preceded by its size as a varint, as written by
+         * {@link com.google.protobuf.MessageLite#writeDelimitedTo(OutputStream)}.
+         */
+        DELIMITED("binpb"),
+        /**
+         * Each record is a line of JSON, as printed by {@link ProtoHelpers#appendJsonLine}.
+         */
+        NDJSON("ndjson");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    public record Result(Path file, Format format, boolean compressed, long accountCount, long vehicleCount, long size, Duration duration) {
+    }
+
+    private final VehicleDao vehicleDao;
+    private final VehicleExportProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public VehicleExport(VehicleDao vehicleDao, VehicleExportProperties properties, MeterRegistry meterRegistry) {
+        this.vehicleDao = vehicleDao;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Writes a new export file and returns its path and record counts. Fails with {@link IllegalStateException} if
+     * an export is already running.
+     */
+    public Result export(Format format, boolean compressed) {
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("an export is already running");
+        }
+        try {
+            Instant start = Instant.now();
+            String fileName = "vehicles-%s.%s%s".formatted(FILE_TIME_FORMAT.format(start), format.extension(), compressed ? ".gz" : "");
+            Path directory = Files.createDirectories(properties.getDirectory());
+            Path file = directory.resolve(fileName);
+            Path tmpFile = directory.resolve(fileName + ".tmp");
+            long[] counts;
+            try {
+                counts = write(tmpFile, format, compressed);
+                Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+            Duration duration = Duration.between(start, Instant.now());
+            Timer.builder("vehicle.export")
+                    .description("Exports of all accounts and vehicles")
+                    .tag("format", format.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry)
+                    .record(duration);
+            Result result = new Result(file, format, compressed, counts[0], counts[1], Files.size(file), duration);
+            LOGGER.info("Exported {} accounts and {} vehicles to {} in {}", result.accountCount(), result.vehicleCount(), file, duration);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long[] write(Path file, Format format, boolean compressed) throws IOException {
+        int bufferSize = (int) properties.getBufferSize().toBytes();
+        long[] counts = new long[2];
+        try (Stream<ExportRecord> records = vehicleDao.exportVehicles();
+             OutputStream out = open(file, compressed, bufferSize)) {
+            Iterator<ExportRecord> it = records.iterator();
+            switch (format) {
+                case DELIMITED -> {
+                    // a single CodedOutputStream, instead of one per record as with writeDelimitedTo
+                    CodedOutputStream coded = CodedOutputStream.newInstance(out, CodedOutputStream.DEFAULT_BUFFER_SIZE);
+                    while (it.hasNext()) {
+                        ExportRecord record = it.next();
+                        coded.writeUInt32NoTag(record.getSerializedSize());
+                        record.writeTo(coded);
+                        counts[record.getRecordCase().getNumber() - 1]++;
+                    }
+                    coded.flush();
+                }
+                case NDJSON -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    while (it.hasNext()) {
+                        ExportRecord record = it.next();
+                        ProtoHelpers.appendJsonLine(record, writer);
+                        counts[record.getRecordCase().getNumber() - 1]++;
+                    }
+                    writer.flush();
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static OutputStream open(Path file, boolean compressed, int bufferSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        OutputStream out = new ChannelOutputStream(channel, bufferSize);
+        return compressed ? new GZIPOutputStream(out, bufferSize) : out;
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.jedvardsson.fuelcost.vehicle;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint {@code vehicleexport} running a {@link VehicleExport}. A POST returns when the export is
+ * complete, with the path of the file on the server.
+ */
+@Component
+@Endpoint(id = "vehicleexport")
+public class VehicleExportEndpoint {
+
+    private final VehicleExport vehicleExport;
+
+    public VehicleExportEndpoint(VehicleExport vehicleExport) {
+        this.vehicleExport = vehicleExport;
+    }
+
+    /**
+     * @param format     {@code delimited} (default) or {@code ndjson}
+     * @param compressed whether to gzip the file, default false
+     */
+    @WriteOperation
+    public VehicleExport.Result export(@Nullable VehicleExport.Format format, @Nullable Boolean compressed) {
+        return vehicleExport.export(format == null ? VehicleExport.Format.DELIMITED : format, compressed != null && compressed);
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.jedvardsson.fuelcost.vehicle;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@ConfigurationProperties(prefix = "vehicle.export")
+public class VehicleExportProperties {
+
+    private final Path directory;
+    private final DataSize bufferSize;
+
+    @ConstructorBinding
+    public VehicleExportProperties(@DefaultValue("export") Path directory, @DefaultValue("1MB") DataSize bufferSize) {
+        if (bufferSize.toBytes() <= 0 || bufferSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("vehicle.export.buffer-size must be positive and less than 2GB: " + bufferSize);
+        }
+        this.directory = directory;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Directory of the export files, created if missing.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Size of the direct buffer of the file channel, and of the compression buffer when compressed.
+     */
+    public DataSize getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -1,29 +1,22 @@
-
 package io.github.jedvardsson.fuelcost.vehicle;
 
-import io.github.jedvardsson.fuelcost.common.Arguments;
+import io.github.jedvardsson.fuelcost.common.CompiledPathTemplate;
+import io.github.jedvardsson.fuelcost.common.PageTokens;
 import io.github.jedvardsson.fuelcost.common.PatchedPathTemplate;
 
-import java.util.Map;
+import java.util.List;
 
 public record VehicleName(long accountId, long vehicleId) {
-    private static final PatchedPathTemplate TEMPLATE = PatchedPathTemplate.create("accounts/{account}/vehicles/{vehicle}");
-
-    private VehicleName(String account, String vehicle) {
-        this(Arguments.parseAccountId(account, "account"), Arguments.parseVehicleId(vehicle, "vehicle"));
-    }
-
-    private VehicleName(Map<String, String> map) {
-        this(map.get("account"), map.get("vehicle"));
-    }
+    private static final CompiledPathTemplate TEMPLATE = PatchedPathTemplate.create("accounts/{account}/vehicles/{vehicle}").compile();
+    public static final PageTokens.Codec<VehicleName> PAGE_TOKEN_CODEC = PageTokens.codec(2, VehicleName.class,
+            k -> new VehicleName(k[0], k[1]), List.of(VehicleName::accountId, VehicleName::vehicleId));
 
     public static VehicleName parse(String name) {
-        Map<String, String> m = TEMPLATE.parse(name);
-        return new VehicleName(m);
+        return TEMPLATE.parse(name, VehicleName::new);
     }
 
     @Override
     public String toString() {
-        return TEMPLATE.instantiate("account", Long.toString(accountId), "vehicle", Long.toString(vehicleId));
+        return TEMPLATE.format(accountId, vehicleId);
     }
 }
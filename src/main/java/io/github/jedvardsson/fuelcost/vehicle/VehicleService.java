@@ -1,26 +1,52 @@
 package io.github.jedvardsson.fuelcost.vehicle;
 
 import com.google.protobuf.Empty;
+import io.github.jedvardsson.fuelcost.fuelpurchase.FuelPurchaseDao;
 import io.github.jedvardsson.fuelcost.grpc.GrpcUtil;
+import io.github.jedvardsson.fuelcost.grpc.ResponseCache;
+import io.github.jedvardsson.fuelcost.grpc.SerializedResponses;
+import io.github.jedvardsson.fuelcost.v1.BatchCreateVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchCreateVehiclesResponse;
+import io.github.jedvardsson.fuelcost.v1.BatchGetVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchGetVehiclesResponse;
 import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.DeleteVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.FuelCostSummary;
+import io.github.jedvardsson.fuelcost.v1.GetFuelCostSummaryRequest;
 import io.github.jedvardsson.fuelcost.v1.GetVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.ListVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.ListVehiclesResponse;
+import io.github.jedvardsson.fuelcost.v1.StreamVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.UpdateVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleChange;
 import io.github.jedvardsson.fuelcost.v1.VehicleServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.WatchVehiclesRequest;
+import io.grpc.MethodDescriptor;
 import io.grpc.stub.StreamObserver;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 
 @Service
-public class VehicleService extends VehicleServiceGrpc.VehicleServiceImplBase {
+public class VehicleService extends VehicleServiceGrpc.VehicleServiceImplBase implements SerializedResponses {
 
     private final VehicleDao vehicleDao;
+    private final ResponseCache responseCache;
+    private final VehicleChangeFeed changeFeed;
+    private final FuelPurchaseDao fuelPurchaseDao;
 
-    public VehicleService(VehicleDao vehicleDao) {
+    public VehicleService(VehicleDao vehicleDao, ResponseCache responseCache, VehicleChangeFeed changeFeed, FuelPurchaseDao fuelPurchaseDao) {
         this.vehicleDao = vehicleDao;
+        this.fuelPurchaseDao = fuelPurchaseDao;
+        this.responseCache = responseCache;
+        this.changeFeed = changeFeed;
+    }
+
+    @Override
+    public List<MethodDescriptor<?, ?>> getSerializedResponseMethods() {
+        return responseCache.isEnabled() ? List.of(VehicleServiceGrpc.getGetVehicleMethod()) : List.of();
     }
 
     @Override
@@ -43,7 +69,11 @@ public class VehicleService extends VehicleServiceGrpc.VehicleServiceImplBase {
 
     @Override
     public void getVehicle(GetVehicleRequest request, StreamObserver<Vehicle> responseObserver) {
-        GrpcUtil.handleResponse(responseObserver, () -> vehicleDao.getVehicle(request));
+        if (responseCache.isEnabled()) {
+            GrpcUtil.handleSerializedResponse(responseObserver, () -> vehicleDao.getSerializedVehicle(request));
+        } else {
+            GrpcUtil.handleResponse(responseObserver, () -> vehicleDao.getVehicle(request));
+        }
     }
 
     @Override
@@ -51,4 +81,29 @@ public class VehicleService extends VehicleServiceGrpc.VehicleServiceImplBase {
         GrpcUtil.handleResponse(responseObserver, () -> vehicleDao.listVehicles(request));
     }
 
+    @Override
+    public void streamVehicles(StreamVehiclesRequest request, StreamObserver<Vehicle> responseObserver) {
+        GrpcUtil.handleStream(responseObserver, () -> vehicleDao.streamVehicles(request));
+    }
+
+    @Override
+    public void watchVehicles(WatchVehiclesRequest request, StreamObserver<VehicleChange> responseObserver) {
+        changeFeed.watch(request, responseObserver);
+    }
+
+    @Override
+    public void batchGetVehicles(BatchGetVehiclesRequest request, StreamObserver<BatchGetVehiclesResponse> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> vehicleDao.batchGetVehicles(request));
+    }
+
+    @Override
+    public void batchCreateVehicles(BatchCreateVehiclesRequest request, StreamObserver<BatchCreateVehiclesResponse> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> vehicleDao.batchCreateVehicles(request));
+    }
+
+    @Override
+    public void getFuelCostSummary(GetFuelCostSummaryRequest request, StreamObserver<FuelCostSummary> responseObserver) {
+        GrpcUtil.handleResponse(responseObserver, () -> fuelPurchaseDao.getFuelCostSummary(request));
+    }
+
 }
@@ -0,0 +1,27 @@
+package io.github.jedvardsson.fuelcost.vehicle;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "vehicle.watch")
+public class VehicleWatchProperties {
+
+    private final int bufferSize;
+
+    @ConstructorBinding
+    public VehicleWatchProperties(@DefaultValue("1000") int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("vehicle.watch.buffer-size must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Maximum number of vehicles with changes not yet sent to a watcher. A watcher that falls further behind
+     * is failed with RESOURCE_EXHAUSTED.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,23 @@
+-- Publishes committed changes to vehicles on the vehicle_change channel, see VehicleChangeFeed.
+-- Payload: op|account_id|vehicle_id|version|create_time|update_time|display_name
+-- where op is I, U or D and times are in microseconds since the epoch. display_name is last since it may
+-- contain '|' and is left out when null.
+create function vehicle_notify() returns trigger language plpgsql as $$
+declare
+    r vehicle;
+begin
+    if tg_op = 'DELETE' then
+        r := old;
+    else
+        r := new;
+    end if;
+    perform pg_notify('vehicle_change', concat_ws('|', left(tg_op, 1), r.account_id, r.vehicle_id, r.version,
+        (extract(epoch from r.create_time) * 1000000)::bigint,
+        (extract(epoch from r.update_time) * 1000000)::bigint,
+        r.display_name));
+    return null;
+end
+$$;
+
+create trigger vehicle_notify after insert or update or delete on vehicle
+    for each row execute function vehicle_notify();
@@ -0,0 +1,14 @@
+create table fuel_purchase (
+    account_id bigint not null,
+    vehicle_id bigint not null,
+    fuel_purchase_id bigint generated by default as identity,
+    create_time timestamptz not null default statement_timestamp(),
+    purchase_time timestamptz not null,
+    volume_liters double precision not null,
+    -- price in millionths of the currency unit
+    price_micros bigint not null,
+    currency_code text not null,
+    odometer_km double precision,
+    primary key (account_id, vehicle_id, fuel_purchase_id),
+    foreign key (account_id, vehicle_id) references vehicle (account_id, vehicle_id) on delete cascade
+);
@@ -0,0 +1,148 @@
+-- Fuel purchases per vehicle, calendar month (UTC) and currency, maintained by the fuel_cost_monthly_* triggers.
+-- Volumes are summed as numeric so that adding and subtracting purchases is exact, and the rollup always equals
+-- aggregating the purchases again.
+create table fuel_cost_monthly (
+    account_id bigint not null,
+    vehicle_id bigint not null,
+    month date not null,
+    currency_code text not null,
+    purchase_count bigint not null,
+    price_micros bigint not null,
+    volume_liters numeric not null,
+    min_price_per_liter double precision not null,
+    max_price_per_liter double precision not null,
+    primary key (account_id, vehicle_id, month, currency_code),
+    foreign key (account_id, vehicle_id) references vehicle (account_id, vehicle_id) on delete cascade
+);
+
+create function fuel_purchase_month(purchase_time timestamptz) returns date
+as 'select date_trunc(''month'', purchase_time at time zone ''UTC'')::date' language sql immutable parallel safe;
+
+create function fuel_price_per_liter(price_micros bigint, volume_liters double precision) returns double precision
+as 'select price_micros / 1e6::double precision / volume_liters' language sql immutable parallel safe;
+
+-- Statement level, so that a bulk insert or COPY updates each rollup row once. New groups are upserted in key order,
+-- which keeps concurrent ingests from deadlocking. Subtracting can not maintain the min and max, so they are
+-- recomputed from the remaining purchases of the groups where a removed purchase held them.
+create function fuel_cost_monthly_apply() returns trigger language plpgsql as $$
+begin
+    if tg_op in ('DELETE', 'UPDATE') then
+        with d as (
+            select
+                account_id,
+                vehicle_id,
+                fuel_purchase_month(purchase_time) as month,
+                currency_code,
+                count(*) as purchase_count,
+                sum(price_micros) as price_micros,
+                sum(volume_liters::numeric) as volume_liters
+            from old_rows
+            group by 1, 2, 3, 4
+        )
+        update fuel_cost_monthly t set
+            purchase_count = t.purchase_count - d.purchase_count,
+            price_micros = t.price_micros - d.price_micros,
+            volume_liters = t.volume_liters - d.volume_liters
+        from d
+        where t.account_id = d.account_id and t.vehicle_id = d.vehicle_id and t.month = d.month and t.currency_code = d.currency_code;
+
+        delete from fuel_cost_monthly t
+        using (select distinct account_id, vehicle_id, fuel_purchase_month(purchase_time) as month, currency_code from old_rows) d
+        where t.account_id = d.account_id and t.vehicle_id = d.vehicle_id and t.month = d.month and t.currency_code = d.currency_code
+            and t.purchase_count = 0;
+
+        with d as (
+            select
+                account_id,
+                vehicle_id,
+                fuel_purchase_month(purchase_time) as month,
+                currency_code,
+                min(fuel_price_per_liter(price_micros, volume_liters)) as min_price_per_liter,
+                max(fuel_price_per_liter(price_micros, volume_liters)) as max_price_per_liter
+            from old_rows
+            group by 1, 2, 3, 4
+        )
+        update fuel_cost_monthly t set
+            min_price_per_liter = p.min_price_per_liter,
+            max_price_per_liter = p.max_price_per_liter
+        from d, lateral (
+            select
+                min(fuel_price_per_liter(f.price_micros, f.volume_liters)) as min_price_per_liter,
+                max(fuel_price_per_liter(f.price_micros, f.volume_liters)) as max_price_per_liter
+            from fuel_purchase f
+            where f.account_id = d.account_id and f.vehicle_id = d.vehicle_id and f.currency_code = d.currency_code
+                and f.purchase_time >= d.month::timestamp at time zone 'UTC'
+                and f.purchase_time < (d.month + interval '1 month') at time zone 'UTC'
+        ) p
+        where t.account_id = d.account_id and t.vehicle_id = d.vehicle_id and t.month = d.month and t.currency_code = d.currency_code
+            and (d.min_price_per_liter <= t.min_price_per_liter or d.max_price_per_liter >= t.max_price_per_liter);
+    end if;
+
+    if tg_op in ('INSERT', 'UPDATE') then
+        insert into fuel_cost_monthly as t (account_id, vehicle_id, month, currency_code, purchase_count, price_micros, volume_liters,
+            min_price_per_liter, max_price_per_liter)
+        select
+            account_id,
+            vehicle_id,
+            fuel_purchase_month(purchase_time),
+            currency_code,
+            count(*),
+            sum(price_micros),
+            sum(volume_liters::numeric),
+            min(fuel_price_per_liter(price_micros, volume_liters)),
+            max(fuel_price_per_liter(price_micros, volume_liters))
+        from new_rows
+        group by 1, 2, 3, 4
+        order by 1, 2, 3, 4
+        on conflict (account_id, vehicle_id, month, currency_code) do update set
+            purchase_count = t.purchase_count + excluded.purchase_count,
+            price_micros = t.price_micros + excluded.price_micros,
+            volume_liters = t.volume_liters + excluded.volume_liters,
+            min_price_per_liter = least(t.min_price_per_liter, excluded.min_price_per_liter),
+            max_price_per_liter = greatest(t.max_price_per_liter, excluded.max_price_per_liter);
+    end if;
+    return null;
+end
+$$;
+
+-- Adds the rollups of purchases that have none, of one account or all. The triggers keep the rollups up to date from
+-- when they are created, so this only fills in the purchases made before.
+create function fuel_cost_monthly_backfill(only_account_id bigint default null) returns bigint language sql as $$
+    with inserted as (
+        insert into fuel_cost_monthly (account_id, vehicle_id, month, currency_code, purchase_count, price_micros, volume_liters,
+            min_price_per_liter, max_price_per_liter)
+        select
+            account_id,
+            vehicle_id,
+            fuel_purchase_month(purchase_time),
+            currency_code,
+            count(*),
+            sum(price_micros),
+            sum(volume_liters::numeric),
+            min(fuel_price_per_liter(price_micros, volume_liters)),
+            max(fuel_price_per_liter(price_micros, volume_liters))
+        from fuel_purchase
+        where only_account_id is null or account_id = only_account_id
+        group by 1, 2, 3, 4
+        order by 1, 2, 3, 4
+        on conflict do nothing
+        returning 1
+    )
+    select count(*) from inserted
+$$;
+
+-- before the triggers are created, so that no purchase is counted twice
+select fuel_cost_monthly_backfill();
+
+-- A trigger with transition tables can only have one event.
+create trigger fuel_cost_monthly_insert after insert on fuel_purchase
+    referencing new table as new_rows
+    for each statement execute function fuel_cost_monthly_apply();
+
+create trigger fuel_cost_monthly_update after update on fuel_purchase
+    referencing old table as old_rows new table as new_rows
+    for each statement execute function fuel_cost_monthly_apply();
+
+create trigger fuel_cost_monthly_delete after delete on fuel_purchase
+    referencing old table as old_rows
+    for each statement execute function fuel_cost_monthly_apply();
@@ -0,0 +1,108 @@
+-- Fuel purchases are partitioned by calendar month (UTC) of purchase_time, so that queries of a time range only read
+-- the partitions of the range and old purchases are removed by dropping partitions. Partitions are named
+-- fuel_purchase_yyyy_mm and created ahead of time by fuel_purchase_create_partition. Purchases of months without a
+-- partition go to fuel_purchase_default and are moved when their partition is created.
+alter table fuel_purchase rename to fuel_purchase_unpartitioned;
+alter index fuel_purchase_pkey rename to fuel_purchase_unpartitioned_pkey;
+
+-- a partitioned table can not have an identity column
+create sequence fuel_purchase_id_seq;
+
+-- the primary key must include the partition key
+create table fuel_purchase (
+    account_id bigint not null,
+    vehicle_id bigint not null,
+    fuel_purchase_id bigint not null default nextval('fuel_purchase_id_seq'),
+    create_time timestamptz not null default statement_timestamp(),
+    purchase_time timestamptz not null,
+    volume_liters double precision not null,
+    -- price in millionths of the currency unit
+    price_micros bigint not null,
+    currency_code text not null,
+    odometer_km double precision,
+    primary key (account_id, vehicle_id, purchase_time, fuel_purchase_id),
+    foreign key (account_id, vehicle_id) references vehicle (account_id, vehicle_id) on delete cascade
+) partition by range (purchase_time);
+
+alter sequence fuel_purchase_id_seq owned by fuel_purchase.fuel_purchase_id;
+
+create table fuel_purchase_default partition of fuel_purchase default;
+
+-- Creates the partition of a month unless it exists, and returns its name if created. Purchases of the month in the
+-- default partition are moved to the new partition. They are moved partition to partition, which does not fire the
+-- fuel_cost_monthly triggers of fuel_purchase. Writes to the default partition wait while it is created.
+create function fuel_purchase_create_partition(month date) returns text language plpgsql as $$
+declare
+    partition_name text := 'fuel_purchase_' || to_char(month, 'YYYY_MM');
+    start_time timestamptz := month::timestamp at time zone 'UTC';
+    end_time timestamptz := (month + interval '1 month')::timestamp at time zone 'UTC';
+begin
+    if month <> date_trunc('month', month)::date then
+        raise exception 'not the first day of a month: %', month using errcode = 'invalid_parameter_value';
+    end if;
+    perform pg_advisory_xact_lock(hashtext('fuel_purchase_partitions'));
+    if to_regclass(partition_name) is not null then
+        return null;
+    end if;
+    lock table fuel_purchase_default in exclusive mode;
+    execute format('create table %I (like fuel_purchase including defaults including constraints)', partition_name);
+    execute format('insert into %I select * from fuel_purchase_default where purchase_time >= $1 and purchase_time < $2', partition_name)
+        using start_time, end_time;
+    delete from fuel_purchase_default where purchase_time >= start_time and purchase_time < end_time;
+    execute format('alter table fuel_purchase attach partition %I for values from (%L) to (%L)', partition_name, start_time, end_time);
+    return partition_name;
+end
+$$;
+
+-- Drops the partitions of the months before a month and returns their names. The fuel_cost_monthly rollups of the
+-- dropped purchases are kept.
+create function fuel_purchase_drop_partitions(before_month date) returns setof text language plpgsql as $$
+declare
+    partition_name text;
+begin
+    perform pg_advisory_xact_lock(hashtext('fuel_purchase_partitions'));
+    for partition_name in
+        select c.relname
+        from pg_inherits i
+        join pg_class c on c.oid = i.inhrelid
+        where i.inhparent = 'fuel_purchase'::regclass
+            and c.relname ~ '^fuel_purchase_\d{4}_\d{2}$'
+            and to_date(substr(c.relname, 15), 'YYYY_MM') < before_month
+        order by c.relname
+    loop
+        execute format('drop table %I', partition_name);
+        return next partition_name;
+    end loop;
+end
+$$;
+
+select fuel_purchase_create_partition(month)
+from (
+    select fuel_purchase_month(purchase_time) as month from fuel_purchase_unpartitioned
+    union
+    select (date_trunc('month', now() at time zone 'UTC') + n * interval '1 month')::date from generate_series(0, 3) n
+) x
+order by month;
+
+-- copied before the triggers are created, the rollups already include these purchases from the backfill of V4
+insert into fuel_purchase (account_id, vehicle_id, fuel_purchase_id, create_time, purchase_time, volume_liters, price_micros, currency_code, odometer_km)
+select account_id, vehicle_id, fuel_purchase_id, create_time, purchase_time, volume_liters, price_micros, currency_code, odometer_km
+from fuel_purchase_unpartitioned;
+
+select setval('fuel_purchase_id_seq', coalesce(max(fuel_purchase_id), 0) + 1, false) from fuel_purchase_unpartitioned;
+
+drop table fuel_purchase_unpartitioned;
+
+-- Statement level triggers of a partitioned table fire for statements on the partitioned table, with the rows of
+-- all partitions in the transition tables. Statements on a partition directly do not fire them.
+create trigger fuel_cost_monthly_insert after insert on fuel_purchase
+    referencing new table as new_rows
+    for each statement execute function fuel_cost_monthly_apply();
+
+create trigger fuel_cost_monthly_update after update on fuel_purchase
+    referencing old table as old_rows new table as new_rows
+    for each statement execute function fuel_cost_monthly_apply();
+
+create trigger fuel_cost_monthly_delete after delete on fuel_purchase
+    referencing old table as old_rows
+    for each statement execute function fuel_cost_monthly_apply();
@@ -0,0 +1,32 @@
+-- One job per account and month for which a fuel statement is to be generated. Workers claim pending jobs whose
+-- next_attempt_time has passed with "for update skip locked" and hold the row lock until the statement is written,
+-- so a job is processed by one worker at a time and released if the worker dies.
+create table fuel_statement_job (
+    month date not null,
+    account_id bigint not null references account (account_id) on delete cascade,
+    state text not null default 'pending' check (state in ('pending', 'done', 'failed')),
+    attempt_count int not null default 0,
+    next_attempt_time timestamptz not null default statement_timestamp(),
+    last_error text,
+    create_time timestamptz not null default statement_timestamp(),
+    update_time timestamptz not null default statement_timestamp(),
+    primary key (month, account_id)
+);
+
+create index fuel_statement_job_pending on fuel_statement_job (next_attempt_time) where state = 'pending';
+
+-- The fuel cost of an account in a month per vehicle and currency, copied from fuel_cost_monthly. Writing the
+-- statement of an account again replaces its rows.
+create table fuel_statement (
+    account_id bigint not null,
+    month date not null,
+    vehicle_id bigint not null,
+    currency_code text not null,
+    purchase_count bigint not null,
+    price_micros bigint not null,
+    volume_liters numeric not null,
+    create_time timestamptz not null default statement_timestamp(),
+    update_time timestamptz not null default statement_timestamp(),
+    primary key (account_id, month, vehicle_id, currency_code),
+    foreign key (account_id) references account (account_id) on delete cascade
+);
@@ -3,6 +3,7 @@ package io.github.jedvardsson.fuelcost.account;
 import io.github.jedvardsson.fuelcost.grpc.GrpcChannelWrapper;
 import io.github.jedvardsson.fuelcost.v1.Account;
 import io.github.jedvardsson.fuelcost.v1.AccountServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.BatchGetAccountsRequest;
 import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.DeleteAccountRequest;
 import io.github.jedvardsson.fuelcost.v1.GetAccountRequest;
@@ -66,6 +67,14 @@ public class AccountClient {
         return getAccount(GetAccountRequest.newBuilder().setName(name).build());
     }
 
+    public Account getAccount(String name, String ifNoneMatch) {
+        return getAccount(GetAccountRequest.newBuilder().setName(name).setIfNoneMatch(ifNoneMatch).build());
+    }
+
+    public List<Account> batchGetAccounts(List<String> names) {
+        return accountStub.batchGetAccounts(BatchGetAccountsRequest.newBuilder().addAllNames(names).build()).getAccountsList();
+    }
+
     public ListAccountsResponse listAccounts(ListAccountsRequest request) {
         return accountStub.listAccounts(request);
     }
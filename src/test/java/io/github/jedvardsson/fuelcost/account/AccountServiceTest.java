@@ -7,6 +7,7 @@ import io.github.jedvardsson.fuelcost.grpc.GrpcAssertions;
 import io.github.jedvardsson.fuelcost.v1.Account;
 import io.github.jedvardsson.fuelcost.v1.CreateAccountRequest;
 import io.grpc.Status;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,7 +15,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -28,11 +32,15 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 class AccountServiceTest {
 
     private final AccountClient client;
+    private final AccountCache accountCache;
+    private final MeterRegistry meterRegistry;
 
 
     @Autowired
-    public AccountServiceTest(AccountClient client) {
+    public AccountServiceTest(AccountClient client, AccountCache accountCache, MeterRegistry meterRegistry) {
         this.client = client;
+        this.accountCache = accountCache;
+        this.meterRegistry = meterRegistry;
     }
 
     private CreateAccountRequest newCreateAccountRequest() {
@@ -53,6 +61,20 @@ class AccountServiceTest {
         assertEquals(e1, client.getAccount(e1.getName()));
     }
 
+    @Test
+    void testGet_IfNoneMatch() {
+        Account e1 = client.createAccount(newCreateAccountRequest());
+        Account notModified = Account.newBuilder().setName(e1.getName()).setEtag(e1.getEtag()).build();
+        assertEquals(notModified, client.getAccount(e1.getName(), e1.getEtag()));
+
+        Account e2 = client.updateAccount(newAccountForUpdate(e1));
+        assertEquals(e2, client.getAccount(e1.getName(), e1.getEtag()));
+
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.getAccount(e1.getName(), "1"));
+        client.deleteAccount(e1.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.getAccount(e1.getName(), e2.getEtag()));
+    }
+
     @Test
     void testCreate() {
         CreateAccountRequest e0 = newCreateAccountRequest();
@@ -150,4 +172,84 @@ class AccountServiceTest {
 
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBatchGet_Ok() {
+        Account e1 = client.createAccount(newCreateAccountRequest());
+        Account e2 = client.createAccount(newCreateAccountRequest());
+        assertEquals(List.of(e2, e1, e2), client.batchGetAccounts(List.of(e2.getName(), e1.getName(), e2.getName())));
+    }
+
+    @Test
+    void testBatchGet_NotFound() {
+        Account e1 = client.createAccount(newCreateAccountRequest());
+        Account e2 = client.createAccount(newCreateAccountRequest());
+        client.deleteAccount(e2.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.batchGetAccounts(List.of(e2.getName(), e1.getName())));
+    }
+
+    @Test
+    void testGet_Cached() {
+        Account e1 = client.createAccount(newCreateAccountRequest());
+        double hits = cacheGets("hit");
+        assertEquals(e1, client.getAccount(e1.getName()));
+        assertEquals(e1, client.getAccount(e1.getName()));
+        Assertions.assertTrue(cacheGets("hit") > hits);
+
+        // updates and deletes invalidate the cached account
+        Account e2 = client.updateAccount(e1);
+        assertEquals(e2, client.getAccount(e1.getName()));
+        client.deleteAccount(e1.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.getAccount(e1.getName()));
+    }
+
+    @Test
+    void testCache_LoadOverlappingInvalidation() {
+        AccountName a = newAccountName();
+        AccountName b = newAccountName();
+        Account account = Account.newBuilder().setName(a.toString()).setEtag(VersionEtag.format(1)).build();
+        Function<AccountName, Optional<Account>> failing = n -> {
+            throw new AssertionError("not cached: " + n);
+        };
+
+        // an invalidation of the same account while loading it
+        assertEquals(Optional.of(account), accountCache.get(a, n -> {
+            accountCache.invalidate(a);
+            return Optional.of(account);
+        }));
+        assertEquals(Optional.empty(), accountCache.get(a, n -> Optional.empty()));
+
+        // an invalidation of another account
+        assertEquals(Optional.of(account), accountCache.get(a, n -> {
+            accountCache.invalidate(b);
+            return Optional.of(account);
+        }));
+        assertEquals(Optional.of(account), accountCache.get(a, failing));
+        accountCache.invalidate(a);
+    }
+
+    @Test
+    void testCache_LoadOlderThanInvalidation() {
+        AccountName a = newAccountName();
+        Account v1 = Account.newBuilder().setName(a.toString()).setEtag(VersionEtag.format(1)).build();
+        Account v2 = v1.toBuilder().setEtag(VersionEtag.format(2)).build();
+
+        // as if another node updated the account, and the next load read a replica that has not replayed it yet
+        accountCache.invalidate(a.toString(), 2);
+        assertEquals(Optional.of(v1), accountCache.get(a, n -> Optional.of(v1)));
+        assertEquals(Optional.of(v2), accountCache.get(a, n -> Optional.of(v2)));
+        assertEquals(Optional.of(v2), accountCache.get(a, n -> {
+            throw new AssertionError("not cached: " + n);
+        }));
+        accountCache.invalidate(a);
+    }
+
+    private static AccountName newAccountName() {
+        // far above the ids of created accounts
+        return new AccountName(ThreadLocalRandom.current().nextLong(1L << 60, Long.MAX_VALUE));
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "account").tag("result", result).functionCounter().count();
+    }
+}
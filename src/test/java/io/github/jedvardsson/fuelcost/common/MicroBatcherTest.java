@@ -0,0 +1,150 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MicroBatcherTest {
+
+    // long enough that only a full batch is loaded before it
+    private static final Duration WINDOW = Duration.ofSeconds(10);
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    void testLoad_Alone() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", WINDOW, 4, this::load, new SimpleMeterRegistry());
+        long start = System.nanoTime();
+        assertEquals(Optional.of("1"), batcher.load(1));
+        assertEquals(Optional.empty(), batcher.load(-1));
+        assertTrue(System.nanoTime() - start < WINDOW.toNanos() / 2);
+        assertEquals(List.of(List.of(1), List.of(-1)), batches);
+    }
+
+    @Test
+    void testLoad_Batched() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", WINDOW, 4, blockingOn(0, this::load), meterRegistry);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(5)) {
+            // a batch loading makes the next one wait for more keys
+            Future<Optional<String>> first = executor.submit(() -> batcher.load(0));
+            awaitBatches(1);
+            List<Future<Optional<String>>> results = new ArrayList<>();
+            for (int key : new int[]{1, -2, 3, 4}) {
+                results.add(executor.submit(() -> batcher.load(key)));
+            }
+            assertEquals(Optional.of("1"), results.get(0).get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.empty(), results.get(1).get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.of("3"), results.get(2).get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.of("4"), results.get(3).get(5, TimeUnit.SECONDS));
+            release.countDown();
+            assertEquals(Optional.of("0"), first.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, batches.size());
+        assertEquals(4, batches.get(1).size());
+        assertEquals(5, meterRegistry.get("microbatch.size").summary().totalAmount());
+    }
+
+    @Test
+    void testLoad_Exception() throws Exception {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", WINDOW, 2, blockingOn(0, keys -> {
+            if (keys.contains(2)) {
+                throw new IllegalArgumentException("failed");
+            }
+            return load(keys);
+        }), new SimpleMeterRegistry());
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(3)) {
+            Future<Optional<String>> first = executor.submit(() -> batcher.load(0));
+            awaitBatches(1);
+            Future<Optional<String>> a = executor.submit(() -> batcher.load(1));
+            Future<Optional<String>> b = executor.submit(() -> batcher.load(2));
+            for (Future<Optional<String>> result : List.of(a, b)) {
+                Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            }
+            release.countDown();
+            assertEquals(Optional.of("0"), first.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testLoad_ReadWriteTransaction() throws Exception {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", WINDOW, 4, blockingOn(0, this::load), new SimpleMeterRegistry());
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<Optional<String>> first = executor.submit(() -> batcher.load(0));
+            awaitBatches(1);
+            TransactionSynchronizationManager.setActualTransactionActive(true);
+            try {
+                assertEquals(Optional.of("1"), batcher.load(1));
+            } finally {
+                TransactionSynchronizationManager.setActualTransactionActive(false);
+            }
+            release.countDown();
+            assertEquals(Optional.of("0"), first.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of(List.of(0), List.of(1)), batches);
+    }
+
+    /**
+     * Maps the non-negative keys to their string values.
+     */
+    private Map<Integer, String> load(List<Integer> keys) {
+        batches.add(List.copyOf(keys));
+        Map<Integer, String> values = new HashMap<>();
+        for (int key : keys) {
+            if (key >= 0) {
+                values.put(key, Integer.toString(key));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Blocks loading the given key until released.
+     */
+    private Function<List<Integer>, Map<Integer, String>> blockingOn(int key, Function<List<Integer>, Map<Integer, String>> loader) {
+        return keys -> {
+            Map<Integer, String> values = loader.apply(keys);
+            if (keys.contains(key)) {
+                try {
+                    if (!release.await(5, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("timeout");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return values;
+        };
+    }
+
+    private void awaitBatches(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && batches.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, batches.size());
+    }
+}
@@ -4,8 +4,17 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Optional;
+
 class PageTokensTest {
 
+    record SampleKey(long a, long b) {
+    }
+
+    private static final PageTokens.Codec<SampleKey> CODEC = PageTokens.codec(7, SampleKey.class,
+            k -> new SampleKey(k[0], k[1]), List.of(SampleKey::a, SampleKey::b));
+
     @Test
     void test() {
         @JsonFormat(shape = JsonFormat.Shape.ARRAY)
@@ -17,4 +26,49 @@ class PageTokensTest {
         Assertions.assertEquals(rec, PageTokens.parseOptional(token, SampleRec.class).orElse(null));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testCodec_roundTrip() {
+        long[] values = {0, 1, 127, 128, 16383, 16384, 123456789, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (long a : values) {
+            for (long b : values) {
+                SampleKey key = new SampleKey(a, b);
+                String token = PageTokens.format(key, CODEC);
+                Assertions.assertTrue(token.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '-' || c == '_'), token);
+                Assertions.assertEquals(key, PageTokens.parseOptional(token, CODEC).orElse(null), token);
+            }
+        }
+    }
+
+    @Test
+    void testCodec_empty() {
+        Assertions.assertEquals(Optional.empty(), PageTokens.parseOptional(null, CODEC));
+        Assertions.assertEquals(Optional.empty(), PageTokens.parseOptional("", CODEC));
+    }
+
+    @Test
+    void testCodec_smallerThanSmile() {
+        SampleKey key = new SampleKey(123456, 987654321);
+        String binary = PageTokens.format(key, CODEC);
+        String smile = PageTokens.format(key);
+        Assertions.assertTrue(binary.length() < smile.length(), binary + " vs " + smile);
+    }
+
+    @Test
+    void testCodec_legacySmileToken() {
+        SampleKey key = new SampleKey(123456, 987654321);
+        String smile = PageTokens.format(key);
+        Assertions.assertEquals(key, PageTokens.parseOptional(smile, CODEC).orElse(null));
+    }
+
+    @Test
+    void testCodec_invalid() {
+        PageTokens.Codec<SampleKey> other = PageTokens.codec(8, SampleKey.class,
+                k -> new SampleKey(k[0], k[1]), List.of(SampleKey::a, SampleKey::b));
+        String token = PageTokens.format(new SampleKey(1, 2), CODEC);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PageTokens.parseOptional(token, other));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PageTokens.parseOptional(token.substring(0, token.length() - 1), CODEC));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PageTokens.parseOptional(token + "AA", CODEC));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PageTokens.parseOptional("!!!!", CODEC));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PageTokens.parseOptional("AgE", CODEC));
+    }
+}
@@ -5,6 +5,9 @@ import com.google.common.collect.ImmutableMap;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Map;
+
 class PatchedPathTemplateTest {
 
 
@@ -48,4 +51,91 @@ class PatchedPathTemplateTest {
         Assertions.assertEquals(ImmutableMap.of("parent", "providers/123/programs/abc~%23%2F%20xyz", "operation", "1"),
                 template.match("providers/123/programs/abc~#%2F xyz/operations/1"));
     }
+
+    private static final List<String> VEHICLE_PATHS = List.of(
+            "accounts/1/vehicles/2",
+            "accounts/123456/vehicles/987654321",
+            "accounts/0/vehicles/0",
+            "accounts/9223372036854775807/vehicles/-9223372036854775808",
+            "accounts/9223372036854775808/vehicles/1",
+            "accounts/+1/vehicles/-2",
+            "accounts/007/vehicles/08",
+            "accounts/%31/vehicles/2",
+            "accounts/1%2F2/vehicles/3",
+            "accounts/a b/vehicles/2",
+            "accounts/1/vehicles/2?x",
+            "accounts/1/vehicles/2:verb",
+            "accounts//vehicles/2",
+            "accounts/1/vehicles/",
+            "accounts/1/vehicles",
+            "accounts/1/vehicles/2/",
+            "accounts/1/vehicles/2/x",
+            "/accounts/1/vehicles/2",
+            "//host/accounts/1/vehicles/2",
+            "https://example.com/accounts/1/vehicles/2",
+            "Accounts/1/vehicles/2",
+            "accounts/1/vehicles/%zz",
+            "");
+
+    private static String parseGeneric(PatchedPathTemplate template, String path, String... variables) {
+        try {
+            Map<String, String> m = template.parse(path);
+            StringBuilder b = new StringBuilder();
+            for (String variable : variables) {
+                long value = Arguments.parse(m.get(variable), variable, Long::parseLong);
+                b.append(value).append(',');
+            }
+            return b.toString();
+        } catch (IllegalArgumentException e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    private static String parseCompiled(CompiledPathTemplate template, String path) {
+        try {
+            return template.parse(path, (a, b) -> a + "," + b + ",");
+        } catch (IllegalArgumentException e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    @Test
+    void testCompiled_parseEqualsGeneric() {
+        PatchedPathTemplate template = PatchedPathTemplate.create("accounts/{account}/vehicles/{vehicle}");
+        CompiledPathTemplate compiled = template.compile();
+        for (String path : VEHICLE_PATHS) {
+            Assertions.assertEquals(parseGeneric(template, path, "account", "vehicle"), parseCompiled(compiled, path), path);
+        }
+    }
+
+    @Test
+    void testCompiled_parseSingleVariable() {
+        PatchedPathTemplate template = PatchedPathTemplate.create("accounts/{account}");
+        CompiledPathTemplate compiled = template.compile();
+        for (String path : List.of("accounts/1", "accounts/-1", "accounts/%31", "accounts/", "accounts/1/", "accounts/x", "accounts", "//host/accounts/5")) {
+            String expected = parseGeneric(template, path, "account");
+            String actual;
+            try {
+                actual = compiled.parse(path, a -> a + ",");
+            } catch (IllegalArgumentException e) {
+                actual = "error: " + e.getMessage();
+            }
+            Assertions.assertEquals(expected, actual, path);
+        }
+    }
+
+    @Test
+    void testCompiled_formatEqualsGeneric() {
+        PatchedPathTemplate template = PatchedPathTemplate.create("accounts/{account=*}/vehicles/{vehicle}");
+        CompiledPathTemplate compiled = template.compile();
+        for (long v : new long[]{0, 1, -1, 42, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            Assertions.assertEquals(template.instantiate("account", Long.toString(v), "vehicle", Long.toString(-v)), compiled.format(v, -v));
+        }
+    }
+
+    @Test
+    void testCompiled_unsupportedTemplate() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PatchedPathTemplate.create("{parent=**}/operations/{operation}").compile());
+        Assertions.assertThrows(IllegalStateException.class, () -> PatchedPathTemplate.create("accounts/{account}").compile().format(1, 2));
+    }
 }
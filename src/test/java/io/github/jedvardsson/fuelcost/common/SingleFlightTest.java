@@ -0,0 +1,173 @@
+package io.github.jedvardsson.fuelcost.common;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    void testExecute_Shared() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", meterRegistry);
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CALLERS)) {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> flight.execute("a", () -> {
+                    reads.incrementAndGet();
+                    await(release);
+                    return 42;
+                })));
+            }
+            awaitShared(meterRegistry, CALLERS - 1);
+            release.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(42, result.get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, reads.get());
+        assertEquals((CALLERS - 1.0) / CALLERS, meterRegistry.get("singleflight.dedup.ratio").gauge().value(), 1e-9);
+
+        // a later call reads again
+        assertEquals(43, flight.execute("a", () -> 43));
+    }
+
+    @Test
+    void testExecute_SharedException() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<Integer> leader = executor.submit(() -> flight.execute("a", () -> {
+                await(release);
+                throw new IllegalArgumentException("failed");
+            }));
+            awaitLeader(meterRegistry);
+            Future<Integer> follower = executor.submit(() -> flight.execute("a", () -> 1));
+            awaitShared(meterRegistry, 1);
+            release.countDown();
+            for (Future<Integer> result : List.of(leader, follower)) {
+                Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    void testExecute_ReadWriteTransaction() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<Integer> leader = executor.submit(() -> flight.execute("a", () -> {
+                await(release);
+                return 1;
+            }));
+            awaitLeader(meterRegistry);
+
+            TransactionSynchronizationManager.setActualTransactionActive(true);
+            try {
+                assertEquals(2, flight.execute("a", () -> 2));
+            } finally {
+                TransactionSynchronizationManager.setActualTransactionActive(false);
+            }
+            release.countDown();
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, meterRegistry.get("singleflight.calls").tag("result", "shared").counter().count());
+    }
+
+    @Test
+    void testExecute_SharedDeadlineExceeded() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ScheduledExecutorService executor = Executors.newScheduledThreadPool(2)) {
+            Future<Integer> leader = executor.submit(() -> flight.execute("a", () -> {
+                await(release);
+                return 1;
+            }));
+            awaitLeader(meterRegistry);
+
+            Context.CancellableContext context = Context.current().withDeadlineAfter(100, TimeUnit.MILLISECONDS, executor);
+            try {
+                StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () -> context.call(() -> flight.execute("a", () -> 2)));
+                assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+            } finally {
+                context.cancel(null);
+            }
+            release.countDown();
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testForget() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, Integer> flight = new SingleFlight<>("test", meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<Integer> leader = executor.submit(() -> flight.execute("a", () -> {
+                await(release);
+                return 1;
+            }));
+            awaitLeader(meterRegistry);
+
+            flight.forget("a");
+            assertEquals(2, flight.execute("a", () -> 2));
+            release.countDown();
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void awaitLeader(SimpleMeterRegistry meterRegistry) throws InterruptedException {
+        awaitCount(meterRegistry, "leader", 1);
+    }
+
+    private static void awaitShared(SimpleMeterRegistry meterRegistry, int count) throws InterruptedException {
+        awaitCount(meterRegistry, "shared", count);
+    }
+
+    private static void awaitCount(SimpleMeterRegistry meterRegistry, String result, int count) throws InterruptedException {
+        for (int i = 0; i < 500 && meterRegistry.get("singleflight.calls").tag("result", result).counter().count() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, meterRegistry.get("singleflight.calls").tag("result", result).counter().count());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("timeout");
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -50,4 +50,29 @@ class VersionEtagTest {
         assertEquals(-1L, VersionEtag.tryParseVersion("W/\"abc\""));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testFormat() {
+        for (long version : new long[]{0, 1, 255, 256, 123456789, Long.MAX_VALUE, -1}) {
+            assertEquals("W/\"" + version + "\"", VersionEtag.format(version));
+            assertEquals(VersionEtag.format(version), VersionEtag.of(version).toString());
+        }
+    }
+
+    @Test
+    void testParse_Bounds() {
+        assertEquals(Long.MAX_VALUE, VersionEtag.parse("W/\"9223372036854775807\"").version());
+        assertEquals(7, VersionEtag.parse("W/\"007\"").version());
+        assertEquals(-1L, VersionEtag.tryParseVersion("W/\"9223372036854775808\""));
+        assertEquals(-1L, VersionEtag.tryParseVersion("W/\"99999999999999999999\""));
+        assertThrows(IllegalArgumentException.class, () -> VersionEtag.parse("W/\"9223372036854775808\""));
+    }
+
+    @Test
+    void testParse_Malformed() {
+        for (String etag : new String[]{"W/\"\"", "W/\"", "W/\"5", "\"5\"", "w/\"5\"", "W/\"-5\"", "W/\"+5\"", "W/\" 5\"", "W/\"5\" ", "W/\"\u0665\""}) {
+            assertEquals(-1L, VersionEtag.tryParseVersion(etag), etag);
+            assertThrows(IllegalArgumentException.class, () -> VersionEtag.parse(etag), etag);
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jdbi.v3.core.JdbiException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(classes = ApplicationTestConfig.class)
+@ActiveProfiles({"test"})
+class DbClientTest {
+
+    private final DbClient dbClient;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public DbClientTest(DbClient dbClient, MeterRegistry meterRegistry) {
+        this.dbClient = dbClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Test
+    void testStatementMetrics_Query() {
+        long count = statementCount("test.query", "success");
+        List<Integer> rows = dbClient.withHandle(h -> h.createQuery("select generate_series(1, 3)")
+                .define(DbClient.STATEMENT, "test.query")
+                .mapTo(Integer.class)
+                .list());
+        assertEquals(List.of(1, 2, 3), rows);
+        assertEquals(count + 1, statementCount("test.query", "success"));
+    }
+
+    @Test
+    void testStatementMetrics_Update() {
+        double rows = meterRegistry.find("db.statement.rows").tag("statement", "test.update").summaries().stream()
+                .mapToDouble(s -> s.totalAmount())
+                .sum();
+        dbClient.withHandle(h -> {
+            h.begin();
+            try {
+                return h.createUpdate("insert into account (version, create_time, update_time) select 1, now(), now() from generate_series(1, 2)")
+                        .define(DbClient.STATEMENT, "test.update")
+                        .execute();
+            } finally {
+                h.rollback();
+            }
+        });
+        assertEquals(rows + 2, meterRegistry.get("db.statement.rows").tag("statement", "test.update").summary().totalAmount());
+    }
+
+    @Test
+    void testStatementMetrics_Error() {
+        long count = statementCount("test.error", "error");
+        Assertions.assertThrows(JdbiException.class, () -> dbClient.withHandle(h -> h.createQuery("select 1 / 0")
+                .define(DbClient.STATEMENT, "test.error")
+                .mapTo(Integer.class)
+                .one()));
+        assertEquals(count + 1, statementCount("test.error", "error"));
+    }
+
+    @Test
+    void testStatementMetrics_Unnamed() {
+        dbClient.withHandle(h -> h.createQuery("select 1").mapTo(Integer.class).one());
+        assertNotNull(meterRegistry.find("db.statement").tag("statement", DbStatementLogger.UNNAMED).timer());
+    }
+
+    @Test
+    void testConnectionAcquireMetrics() {
+        dbClient.withHandle(h -> h.createQuery("select 1").mapTo(Integer.class).one());
+        assertNotNull(meterRegistry.find("hikaricp.connections.acquire").timer());
+    }
+
+    private long statementCount(String statement, String outcome) {
+        Timer timer = meterRegistry.find("db.statement").tag("statement", statement).tag("outcome", outcome).timer();
+        return timer != null ? timer.count() : 0;
+    }
+}
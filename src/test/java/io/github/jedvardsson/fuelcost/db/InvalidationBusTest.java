@@ -0,0 +1,208 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.account.AccountName;
+import io.github.jedvardsson.fuelcost.common.VersionEtag;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = ApplicationTestConfig.class)
+@ActiveProfiles({"test"})
+class InvalidationBusTest {
+
+    private final InvalidationBus bus;
+    private final DbClient dbClient;
+    private final DataSource dataSource;
+    private final DataSourceProperties dataSourceProperties;
+    private final DbProperties dbProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final AccountClient accountClient;
+
+    @Autowired
+    public InvalidationBusTest(InvalidationBus bus, DbClient dbClient, DataSource dataSource, DataSourceProperties dataSourceProperties, DbProperties dbProperties,
+                               TransactionTemplate transactionTemplate, AccountClient accountClient) {
+        this.bus = bus;
+        this.dbClient = dbClient;
+        this.dataSource = dataSource;
+        this.dataSourceProperties = dataSourceProperties;
+        this.dbProperties = dbProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.accountClient = accountClient;
+    }
+
+    @Test
+    void testFormat_Split() {
+        Map<String, Long> versions = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            versions.put("accounts/" + i + "/vehicles/" + i, (long) i);
+        }
+        List<String> payloads = InvalidationBus.format("node", 1, versions);
+        assertTrue(payloads.size() > 1);
+        int lines = 0;
+        for (String payload : payloads) {
+            assertTrue(payload.length() < 8000);
+            assertTrue(payload.startsWith("node 1\n"));
+            lines += payload.split("\n").length - 1;
+        }
+        assertEquals(versions.size(), lines);
+    }
+
+    @Test
+    void testPublish_OneNotificationPerTransaction() throws SQLException {
+        String a = "test/" + UUID.randomUUID();
+        String b = "test/" + UUID.randomUUID();
+        try (Connection connection = dataSource.getConnection()) {
+            listen(connection);
+            try {
+                transactionTemplate.executeWithoutResult(s -> {
+                    bus.publish(a, 1);
+                    bus.publish(b, 1);
+                    bus.publish(a, 2);
+                });
+                transactionTemplate.executeWithoutResult(s -> {
+                    bus.publish(a, 3);
+                    s.setRollbackOnly();
+                });
+
+                List<String> payloads = receive(connection, p -> p.contains(a));
+                assertEquals(1, payloads.size());
+                assertTrue(payloads.getFirst().endsWith("\n2 " + a + "\n1 " + b), payloads.getFirst());
+            } finally {
+                unlisten(connection);
+            }
+        }
+    }
+
+    /**
+     * Uses a bus and notification listener of its own, since subscribers can not be removed and flushing the
+     * application's caches would disturb tests running in parallel.
+     */
+    @Test
+    void testReceive_OtherNode() throws SQLException {
+        PgNotificationListener notificationListener = new PgNotificationListener(dataSourceProperties, dbProperties, new SimpleMeterRegistry());
+        InvalidationBus bus = new InvalidationBus(dbClient, notificationListener, new SimpleMeterRegistry());
+        List<String> invalidated = new CopyOnWriteArrayList<>();
+        String own = "test/" + UUID.randomUUID();
+        String other = "test/" + UUID.randomUUID();
+        bus.subscribe(new InvalidationBus.Subscriber() {
+            @Override
+            public void invalidate(String name, long version) {
+                invalidated.add(name + "@" + version);
+            }
+
+            @Override
+            public void invalidateAll() {
+                invalidated.add("*");
+            }
+        });
+        notificationListener.start();
+        try {
+            // notifications are delivered in order, so our own is skipped if the other node's is received alone
+            bus.publish(own, 1);
+            notifyAsOtherNode(other, 7);
+            await(() -> invalidated.contains(other + "@7"));
+            assertTrue(invalidated.stream().noneMatch(s -> s.startsWith(own)));
+
+            bus.onReconnect();
+            assertTrue(invalidated.contains("*"));
+        } finally {
+            notificationListener.stop();
+        }
+    }
+
+    @Test
+    void testReceive_AccountCache() throws SQLException {
+        Account a1 = accountClient.createEmptyAccount();
+        assertEquals(a1, accountClient.getAccount(a1.getName()));
+
+        // as if updated by another node
+        long version = VersionEtag.parse(a1.getEtag()).version() + 1;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("update account set version = ? where account_id = ?")) {
+            statement.setLong(1, version);
+            statement.setLong(2, AccountName.parse(a1.getName()).accountId());
+            assertEquals(1, statement.executeUpdate());
+        }
+        notifyAsOtherNode(a1.getName(), version);
+
+        await(() -> VersionEtag.parse(accountClient.getAccount(a1.getName()).getEtag()).version() == version);
+    }
+
+    private void notifyAsOtherNode(String name, long version) throws SQLException {
+        String payload = "other " + System.currentTimeMillis() + "\n" + version + " " + name;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select pg_notify(?, ?)")) {
+            statement.setString(1, InvalidationBus.CHANNEL);
+            statement.setString(2, payload);
+            statement.execute();
+        }
+    }
+
+    private static void listen(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("listen " + InvalidationBus.CHANNEL);
+        }
+    }
+
+    private static void unlisten(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("unlisten *");
+        }
+    }
+
+    /**
+     * Returns the payloads matching the filter received within a second.
+     */
+    private static List<String> receive(Connection connection, Predicate<String> filter) throws SQLException {
+        List<String> payloads = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 1000;
+        for (long left; (left = deadline - System.currentTimeMillis()) > 0; ) {
+            PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications((int) left);
+            if (notifications != null) {
+                for (PGNotification notification : notifications) {
+                    if (filter.test(notification.getParameter())) {
+                        payloads.add(notification.getParameter());
+                    }
+                }
+            }
+        }
+        return payloads;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        for (int i = 0; i < 50 && !condition.getAsBoolean(); i++) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.common.MicroBatcher;
+import io.github.jedvardsson.fuelcost.common.SingleFlight;
+import io.grpc.Context;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Uses the primary database as a stand-in replica, told apart by the replica pool's metrics. The tests count
+ * replica connections, so they do not run concurrently and replicas are only checked by the tests.
+ */
+@SpringBootTest(classes = ApplicationTestConfig.class, properties = {
+        "db.replicas.enabled=true",
+        "db.replicas.urls=${spring.datasource.url}",
+        "db.replicas.maximum-pool-size=2",
+        "db.replicas.check-interval=1h",
+})
+@ActiveProfiles({"test"})
+@Execution(ExecutionMode.SAME_THREAD)
+class ReplicaConfigTest {
+
+    private final DbClient dbClient;
+    private final ReplicaDataSource replicaDataSource;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate readWrite;
+    private final TransactionTemplate readOnly;
+
+    @Autowired
+    public ReplicaConfigTest(DbClient dbClient, ReplicaDataSource replicaDataSource, MeterRegistry meterRegistry, PlatformTransactionManager transactionManager) {
+        this.dbClient = dbClient;
+        this.replicaDataSource = replicaDataSource;
+        this.meterRegistry = meterRegistry;
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    @BeforeEach
+    void setUp() {
+        replicaDataSource.checkReplicas();
+    }
+
+    @Test
+    void testReadOnlyOnReplica() {
+        long acquired = replicaAcquired();
+        assertEquals(1, (int) readOnly.execute(s -> selectOne()));
+        assertEquals(acquired + 1, replicaAcquired());
+
+        readWrite.execute(s -> selectOne());
+        dbClient.withHandle(h -> selectOne());
+        assertEquals(acquired + 1, replicaAcquired());
+    }
+
+    @Test
+    void testStreamOnReplica() {
+        long acquired = replicaAcquired();
+        try (Stream<Integer> stream = dbClient.stream(h -> h.createQuery("select generate_series(1, 3)").mapTo(Integer.class))) {
+            assertEquals(6, stream.mapToInt(Integer::intValue).sum());
+        }
+        assertEquals(acquired + 1, replicaAcquired());
+    }
+
+    @Test
+    void testReadAfterWriteOnPrimary() throws Exception {
+        long acquired = replicaAcquired();
+        Context scope = PrimaryPin.newScope();
+        scope.call(() -> readOnly.execute(s -> selectOne()));
+        assertEquals(acquired + 1, replicaAcquired());
+
+        scope.call(() -> {
+            readWrite.execute(s -> selectOne());
+            assertTrue(PrimaryPin.isPinned());
+            return readOnly.execute(s -> selectOne());
+        });
+        assertEquals(acquired + 1, replicaAcquired());
+    }
+
+    @Test
+    void testReadAfterWriteNotShared() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>("replica-config-test", new SimpleMeterRegistry());
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            // a read on a replica in flight
+            Future<Integer> leader = executor.submit(() -> flight.execute("a", () -> readOnly.execute(s -> {
+                selectOne();
+                reading.countDown();
+                await(release);
+                return 1;
+            })));
+            await(reading);
+            long acquired = replicaAcquired();
+
+            // after a write, the same read goes to the primary on its own
+            int value = PrimaryPin.newScope().call(() -> {
+                readWrite.execute(s -> selectOne());
+                return flight.execute("a", () -> readOnly.execute(s -> selectOne() + 1));
+            });
+            assertEquals(2, value);
+            assertEquals(acquired, replicaAcquired());
+            release.countDown();
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testReadAfterWriteNotBatched() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MicroBatcher<String, Integer> batcher = new MicroBatcher<>("replica-config-test", Duration.ofSeconds(5), 2, keys -> {
+            if (keys.contains("a")) {
+                loading.countDown();
+                await(release);
+            }
+            return keys.stream().collect(Collectors.toMap(k -> k, k -> 1));
+        }, new SimpleMeterRegistry());
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            // while a batch is loading, the next batch waits for others to join it
+            Future<Optional<Integer>> first = executor.submit(() -> batcher.load("a"));
+            await(loading);
+            Future<Optional<Integer>> second = executor.submit(() -> batcher.load("b"));
+
+            // after a write, a read is loaded at once, on its own
+            Optional<Integer> value = PrimaryPin.newScope().call(() -> {
+                readWrite.execute(s -> selectOne());
+                return batcher.load("c");
+            });
+            assertEquals(Optional.of(1), value);
+            assertFalse(second.isDone());
+            release.countDown();
+            assertEquals(Optional.of(1), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.of(1), second.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("timeout");
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int selectOne() {
+        return dbClient.withHandle(h -> h.createQuery("select 1").mapTo(Integer.class).one());
+    }
+
+    private long replicaAcquired() {
+        Timer timer = meterRegistry.find("hikaricp.connections.acquire").tag("pool", "replica-1").timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.jedvardsson.fuelcost.db;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaDataSourceTest {
+
+    private final DataSource primary = new StubDataSource();
+    private final DataSource dataSource1 = new StubDataSource();
+    private final DataSource dataSource2 = new StubDataSource();
+    private final AtomicInteger outstanding1 = new AtomicInteger();
+    private final AtomicInteger outstanding2 = new AtomicInteger();
+    private final ReplicaDataSource.Replica replica1 = new ReplicaDataSource.Replica("replica-1", dataSource1, outstanding1::get);
+    private final ReplicaDataSource.Replica replica2 = new ReplicaDataSource.Replica("replica-2", dataSource2, outstanding2::get);
+
+    private ReplicaDataSource newReplicaDataSource(DbProperties.ReplicaSelection selection) {
+        ReplicaDataSource dataSource = new ReplicaDataSource(primary, List.of(replica1, replica2), selection, Duration.ofSeconds(10), new SimpleMeterRegistry());
+        dataSource.update(replica1, true, 0);
+        dataSource.update(replica2, true, 0);
+        return dataSource;
+    }
+
+    @Test
+    void testRoundRobin() {
+        ReplicaDataSource dataSource = newReplicaDataSource(DbProperties.ReplicaSelection.ROUND_ROBIN);
+        List<DataSource> selected = IntStream.range(0, 4).mapToObj(i -> dataSource.selectDataSource()).toList();
+        assertEquals(List.of(dataSource1, dataSource2, dataSource1, dataSource2), selected);
+    }
+
+    @Test
+    void testLeastOutstanding() {
+        ReplicaDataSource dataSource = newReplicaDataSource(DbProperties.ReplicaSelection.LEAST_OUTSTANDING);
+        outstanding1.set(3);
+        outstanding2.set(1);
+        assertSame(dataSource2, dataSource.selectDataSource());
+        outstanding2.set(4);
+        assertSame(dataSource1, dataSource.selectDataSource());
+    }
+
+    @Test
+    void testUnhealthy() {
+        ReplicaDataSource dataSource = newReplicaDataSource(DbProperties.ReplicaSelection.ROUND_ROBIN);
+        dataSource.update(replica1, false, Double.NaN);
+        assertFalse(replica1.isHealthy());
+        assertEquals(List.of(dataSource2, dataSource2), IntStream.range(0, 2).mapToObj(i -> dataSource.selectDataSource()).toList());
+
+        // lagging
+        dataSource.update(replica2, true, 11);
+        assertFalse(replica2.isHealthy());
+        assertSame(primary, dataSource.selectDataSource());
+
+        dataSource.update(replica2, true, 10);
+        assertTrue(replica2.isHealthy());
+        assertSame(dataSource2, dataSource.selectDataSource());
+    }
+
+    @Test
+    void testLagSeconds() {
+        // the primary
+        assertEquals(0, new ReplicaDataSource.ReplicaStatus(false, false, null, true, null).lagSeconds());
+        // streaming, and caught up or behind
+        assertEquals(0, new ReplicaDataSource.ReplicaStatus(true, true, "streaming", true, 100.0).lagSeconds());
+        assertEquals(12.5, new ReplicaDataSource.ReplicaStatus(true, true, "streaming", false, 12.5).lagSeconds());
+        assertEquals(0, new ReplicaDataSource.ReplicaStatus(true, true, "streaming", false, null).lagSeconds());
+        // status not visible to the user
+        assertEquals(3, new ReplicaDataSource.ReplicaStatus(true, true, null, false, 3.0).lagSeconds());
+        // not receiving, having replayed all it received
+        assertEquals(Double.POSITIVE_INFINITY, new ReplicaDataSource.ReplicaStatus(true, false, null, true, 100.0).lagSeconds());
+        assertEquals(Double.POSITIVE_INFINITY, new ReplicaDataSource.ReplicaStatus(true, true, "waiting", true, 100.0).lagSeconds());
+
+        ReplicaDataSource dataSource = newReplicaDataSource(DbProperties.ReplicaSelection.ROUND_ROBIN);
+        dataSource.update(replica1, true, new ReplicaDataSource.ReplicaStatus(true, false, null, true, null).lagSeconds());
+        assertFalse(replica1.isHealthy());
+    }
+
+    @Test
+    void testPrimaryPin() throws Exception {
+        ReplicaDataSource dataSource = newReplicaDataSource(DbProperties.ReplicaSelection.ROUND_ROBIN);
+        DataSource pinningPrimary = PrimaryPin.pinning(primary);
+        PrimaryPin.newScope().call(() -> {
+            // reads outside transactions and in read-only transactions do not pin
+            pinningPrimary.getConnection();
+            inTransaction(true, pinningPrimary::getConnection);
+            assertSame(dataSource1, dataSource.selectDataSource());
+
+            inTransaction(false, pinningPrimary::getConnection);
+            assertSame(primary, dataSource.selectDataSource());
+            assertSame(primary, dataSource.selectDataSource());
+            return null;
+        });
+
+        // a new scope is not pinned
+        PrimaryPin.newScope().run(() -> assertSame(dataSource2, dataSource.selectDataSource()));
+
+        // nor is no scope
+        inTransaction(false, pinningPrimary::getConnection);
+        assertFalse(PrimaryPin.isPinned());
+    }
+
+    private static void inTransaction(boolean readOnly, Callable<?> action) throws Exception {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+        try {
+            action.call();
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    private static class StubDataSource extends AbstractDataSource {
+        @Override
+        public Connection getConnection() {
+            return null;
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import com.google.protobuf.Timestamp;
+import com.google.type.Date;
+import com.google.type.Money;
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.grpc.GrpcAssertions;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.FuelCostSummary;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchase;
+import io.github.jedvardsson.fuelcost.v1.GetFuelCostSummaryRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.MonthlyFuelCost;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleClient;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SuppressWarnings("ThrowableNotThrown")
+@SpringBootTest(classes = ApplicationTestConfig.class)
+@ActiveProfiles({"test"})
+class FuelCostSummaryTest {
+
+    private static final String RECOMPUTE = """
+            select
+                fuel_purchase_month(purchase_time) as month,
+                currency_code,
+                count(*) as purchase_count,
+                sum(price_micros)::bigint as price_micros,
+                sum(volume_liters::numeric) as volume_liters,
+                min(fuel_price_per_liter(price_micros, volume_liters)) as min_price_per_liter,
+                max(fuel_price_per_liter(price_micros, volume_liters)) as max_price_per_liter
+            from fuel_purchase
+            where account_id = ? and vehicle_id = ?
+            group by 1, 2
+            order by 1, 2
+            """;
+
+    private static final String ROLLUP = """
+            select month, currency_code, purchase_count, price_micros, volume_liters, min_price_per_liter, max_price_per_liter
+            from fuel_cost_monthly
+            where account_id = ? and vehicle_id = ?
+            order by 1, 2
+            """;
+
+    private final FuelPurchaseClient fuelPurchaseClient;
+    private final VehicleClient vehicleClient;
+    private final DataSource dataSource;
+    private final Account account;
+
+    @Autowired
+    public FuelCostSummaryTest(FuelPurchaseClient fuelPurchaseClient, VehicleClient vehicleClient, AccountClient accountClient, DataSource dataSource) {
+        this.fuelPurchaseClient = fuelPurchaseClient;
+        this.vehicleClient = vehicleClient;
+        this.dataSource = dataSource;
+        this.account = accountClient.createEmptyAccount();
+    }
+
+    @Test
+    void testRollup_MatchesRecompute() throws SQLException {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        Vehicle other = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        List<FuelPurchase> purchases = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            purchases.add(purchase("2024-%02d-%02dT12:00:00Z".formatted(1 + i % 4, 1 + i % 28), 20 + i * 0.37, i % 5 == 0 ? "SEK" : "EUR", 40 + i, i * 10_000));
+        }
+        // the first and last instant of a month
+        purchases.add(purchase("2024-05-01T00:00:00Z", 10, "EUR", 15, 0));
+        purchases.add(purchase("2024-05-31T23:59:59.999999Z", 10, "EUR", 25, 0));
+        fuelPurchaseClient.ingestFuelPurchases(List.of(
+                request(vehicle, purchases.subList(0, 31)),
+                request(other, purchases.subList(0, 10)),
+                request(vehicle, purchases.subList(31, purchases.size()))));
+        assertRollupMatches(vehicle);
+        assertRollupMatches(other);
+
+        VehicleName name = VehicleName.parse(vehicle.getName());
+        // remove the purchases holding the min and max of a month, and empty a month entirely
+        execute(name, """
+                delete from fuel_purchase t
+                where t.account_id = ? and t.vehicle_id = ? and fuel_purchase_month(t.purchase_time) = '2024-01-01' and t.currency_code = 'EUR'
+                    and fuel_price_per_liter(t.price_micros, t.volume_liters) in (
+                        select min(fuel_price_per_liter(price_micros, volume_liters)) from fuel_purchase f
+                        where f.account_id = t.account_id and f.vehicle_id = t.vehicle_id
+                            and fuel_purchase_month(f.purchase_time) = '2024-01-01' and f.currency_code = 'EUR'
+                        union all
+                        select max(fuel_price_per_liter(price_micros, volume_liters)) from fuel_purchase f
+                        where f.account_id = t.account_id and f.vehicle_id = t.vehicle_id
+                            and fuel_purchase_month(f.purchase_time) = '2024-01-01' and f.currency_code = 'EUR')
+                """);
+        assertRollupMatches(vehicle);
+        execute(name, "delete from fuel_purchase where account_id = ? and vehicle_id = ? and purchase_time >= '2024-05-01T00:00:00Z'");
+        assertRollupMatches(vehicle);
+
+        // change prices, volumes, months and currencies in one statement
+        execute(name, """
+                update fuel_purchase set
+                    price_micros = price_micros * 2,
+                    volume_liters = volume_liters + 0.1,
+                    purchase_time = purchase_time + interval '10 days',
+                    currency_code = case when fuel_purchase_id % 3 = 0 then 'NOK' else currency_code end
+                where account_id = ? and vehicle_id = ? and fuel_purchase_id % 2 = 0
+                """);
+        assertRollupMatches(vehicle);
+
+        execute(name, """
+                insert into fuel_purchase (account_id, vehicle_id, purchase_time, volume_liters, price_micros, currency_code)
+                select ?, ?, '2023-12-31T23:00:00Z'::timestamptz + x * interval '1 hour', 30 + x, 50000000 + x * 1000000, 'EUR'
+                from generate_series(0, 9) x
+                """);
+        assertRollupMatches(vehicle);
+        assertRollupMatches(other);
+
+        execute(name, "delete from fuel_purchase where account_id = ? and vehicle_id = ?");
+        assertEquals(List.of(), select(ROLLUP, name));
+        assertEquals(FuelCostSummary.newBuilder().setName(vehicle.getName()).build(), getFuelCostSummary(vehicle.getName(), null, null));
+    }
+
+    @Test
+    void testBackfill_MatchesRecompute() throws SQLException {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        Vehicle other = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        fuelPurchaseClient.ingestFuelPurchases(List.of(
+                request(vehicle, List.of(
+                        purchase("2024-01-10T08:00:00Z", 40, "SEK", 800, 0),
+                        purchase("2024-01-20T08:00:00Z", 50, "SEK", 900.5, 0),
+                        purchase("2024-01-25T08:00:00Z", 10, "EUR", 20, 0),
+                        purchase("2024-03-10T08:00:00Z", 20, "SEK", 500, 0))),
+                request(other, List.of(purchase("2024-02-10T08:00:00Z", 30, "SEK", 600, 0)))));
+
+        // as if the purchases were ingested before the rollups existed
+        VehicleName name = VehicleName.parse(vehicle.getName());
+        execute(name, "delete from fuel_cost_monthly where account_id = ? and vehicle_id = ?");
+        assertEquals(List.of(), select(ROLLUP, name));
+        List<List<Object>> otherRollup = select(ROLLUP, VehicleName.parse(other.getName()));
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select fuel_cost_monthly_backfill(?)")) {
+            statement.setLong(1, name.accountId());
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                assertEquals(3, rs.getLong(1));
+            }
+        }
+        assertRollupMatches(vehicle);
+        assertRollupMatches(other);
+        assertEquals(otherRollup, select(ROLLUP, VehicleName.parse(other.getName())));
+    }
+
+    @Test
+    void testGetFuelCostSummary_Ok() {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        fuelPurchaseClient.ingestFuelPurchases(List.of(request(vehicle, List.of(
+                purchase("2024-01-10T08:00:00Z", 40, "SEK", 800, 0),
+                purchase("2024-01-20T08:00:00Z", 50, "SEK", 900.5, 0),
+                purchase("2024-02-10T08:00:00Z", 10, "EUR", 20, 0),
+                purchase("2024-03-10T08:00:00Z", 20, "SEK", 500, 0)))));
+
+        MonthlyFuelCost january = MonthlyFuelCost.newBuilder()
+                .setMonth(month(2024, 1))
+                .setTotalPrice(Money.newBuilder().setCurrencyCode("SEK").setUnits(1700).setNanos(500_000_000))
+                .setVolumeLiters(90)
+                .setPurchaseCount(2)
+                .setMinPricePerLiter(18.01)
+                .setMaxPricePerLiter(20)
+                .build();
+        MonthlyFuelCost february = MonthlyFuelCost.newBuilder()
+                .setMonth(month(2024, 2))
+                .setTotalPrice(Money.newBuilder().setCurrencyCode("EUR").setUnits(20))
+                .setVolumeLiters(10)
+                .setPurchaseCount(1)
+                .setMinPricePerLiter(2)
+                .setMaxPricePerLiter(2)
+                .build();
+        MonthlyFuelCost march = MonthlyFuelCost.newBuilder()
+                .setMonth(month(2024, 3))
+                .setTotalPrice(Money.newBuilder().setCurrencyCode("SEK").setUnits(500))
+                .setVolumeLiters(20)
+                .setPurchaseCount(1)
+                .setMinPricePerLiter(25)
+                .setMaxPricePerLiter(25)
+                .build();
+        assertEquals(List.of(january, february, march), getFuelCostSummary(vehicle.getName(), null, null).getMonthsList());
+        assertEquals(List.of(february, march), getFuelCostSummary(vehicle.getName(), month(2024, 2), null).getMonthsList());
+        assertEquals(List.of(january, february), getFuelCostSummary(vehicle.getName(), null, month(2024, 2)).getMonthsList());
+        assertEquals(List.of(february), getFuelCostSummary(vehicle.getName(), month(2024, 2), month(2024, 2)).getMonthsList());
+        assertEquals(List.of(), getFuelCostSummary(vehicle.getName(), month(2023, 1), month(2023, 12)).getMonthsList());
+    }
+
+    @Test
+    void testGetFuelCostSummary_NotFound() {
+        VehicleName name = new VehicleName(Long.MAX_VALUE, Long.MAX_VALUE);
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> getFuelCostSummary(name.toString(), null, null));
+    }
+
+    @Test
+    void testGetFuelCostSummary_InvalidArgument() {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> getFuelCostSummary(account.getName(), null, null));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> getFuelCostSummary(vehicle.getName(), month(2024, 13), null));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> getFuelCostSummary(vehicle.getName(), null, month(2024, 1).toBuilder().setDay(1).build()));
+    }
+
+    private FuelCostSummary getFuelCostSummary(String name, Date startMonth, Date endMonth) {
+        GetFuelCostSummaryRequest.Builder request = GetFuelCostSummaryRequest.newBuilder().setName(name);
+        if (startMonth != null) {
+            request.setStartMonth(startMonth);
+        }
+        if (endMonth != null) {
+            request.setEndMonth(endMonth);
+        }
+        return vehicleClient.getFuelCostSummary(request.build());
+    }
+
+    private void assertRollupMatches(Vehicle vehicle) throws SQLException {
+        VehicleName name = VehicleName.parse(vehicle.getName());
+        assertEquals(select(RECOMPUTE, name), select(ROLLUP, name));
+    }
+
+    private List<List<Object>> select(String sql, VehicleName name) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, name.accountId());
+            statement.setLong(2, name.vehicleId());
+            List<List<Object>> rows = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                int columnCount = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    List<Object> row = new ArrayList<>();
+                    for (int i = 1; i <= columnCount; i++) {
+                        row.add(rs.getObject(i));
+                    }
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+    }
+
+    private void execute(VehicleName name, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, name.accountId());
+            statement.setLong(2, name.vehicleId());
+            statement.executeUpdate();
+        }
+    }
+
+    private static Date month(int year, int month) {
+        return Date.newBuilder().setYear(year).setMonth(month).build();
+    }
+
+    private static FuelPurchase purchase(String time, double volumeLiters, String currencyCode, double price, double odometerKm) {
+        Instant instant = Instant.parse(time);
+        long priceMicros = Math.round(price * 1_000_000);
+        return FuelPurchase.newBuilder()
+                .setPurchaseTime(Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()))
+                .setVolumeLiters(volumeLiters)
+                .setPrice(Money.newBuilder()
+                        .setCurrencyCode(currencyCode)
+                        .setUnits(priceMicros / 1_000_000)
+                        .setNanos((int) (priceMicros % 1_000_000) * 1000))
+                .setOdometerKm(odometerKm)
+                .build();
+    }
+
+    private static IngestFuelPurchasesRequest request(Vehicle vehicle, List<FuelPurchase> purchases) {
+        return IngestFuelPurchasesRequest.newBuilder().setParent(vehicle.getName()).addAllFuelPurchases(purchases).build();
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import io.github.jedvardsson.fuelcost.grpc.GrpcChannelWrapper;
+import io.github.jedvardsson.fuelcost.v1.AccountFuelReport;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchaseServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.GetAccountFuelReportRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesResponse;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesResponse;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Service
+public class FuelPurchaseClient {
+
+    private final FuelPurchaseServiceGrpc.FuelPurchaseServiceStub fuelPurchaseStub;
+    private final FuelPurchaseServiceGrpc.FuelPurchaseServiceBlockingStub fuelPurchaseBlockingStub;
+
+    @Autowired
+    public FuelPurchaseClient(GrpcChannelWrapper wrapper) {
+        fuelPurchaseStub = FuelPurchaseServiceGrpc.newStub(wrapper.getChannel());
+        fuelPurchaseBlockingStub = FuelPurchaseServiceGrpc.newBlockingStub(wrapper.getChannel());
+    }
+
+    public ListFuelPurchasesResponse listFuelPurchases(ListFuelPurchasesRequest request) {
+        return fuelPurchaseBlockingStub.listFuelPurchases(request);
+    }
+
+    public AccountFuelReport getAccountFuelReport(GetAccountFuelReportRequest request) {
+        return fuelPurchaseBlockingStub.getAccountFuelReport(request);
+    }
+
+    public StreamObserver<IngestFuelPurchasesRequest> ingestFuelPurchases(CompletableFuture<IngestFuelPurchasesResponse> response) {
+        return fuelPurchaseStub.ingestFuelPurchases(new StreamObserver<>() {
+            @Override
+            public void onNext(IngestFuelPurchasesResponse value) {
+                response.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                response.completeExceptionally(Status.fromThrowable(t).asRuntimeException());
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+    }
+
+    /**
+     * Sends the requests and waits for the response. Throws the StatusRuntimeException of a failed call.
+     */
+    public IngestFuelPurchasesResponse ingestFuelPurchases(List<IngestFuelPurchasesRequest> requests) {
+        CompletableFuture<IngestFuelPurchasesResponse> response = new CompletableFuture<>();
+        StreamObserver<IngestFuelPurchasesRequest> requestObserver = ingestFuelPurchases(response);
+        for (IngestFuelPurchasesRequest request : requests) {
+            if (response.isDone()) {
+                break;
+            }
+            requestObserver.onNext(request);
+        }
+        requestObserver.onCompleted();
+        return await(response);
+    }
+
+    public static IngestFuelPurchasesResponse await(CompletableFuture<IngestFuelPurchasesResponse> response) {
+        try {
+            return response.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException | TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
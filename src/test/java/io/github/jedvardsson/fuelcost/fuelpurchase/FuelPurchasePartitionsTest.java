@@ -0,0 +1,287 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.Timestamp;
+import com.google.type.Money;
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.grpc.GrpcAssertions;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchase;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.ListFuelPurchasesResponse;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleClient;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Partitions are created for months far from the current one, so that they are not touched by other tests. The
+ * tests run one at a time, since maintenance creates the partitions of the purchases in the default partition.
+ */
+@SuppressWarnings("ThrowableNotThrown")
+@SpringBootTest(classes = ApplicationTestConfig.class)
+@ActiveProfiles({"test"})
+@Execution(ExecutionMode.SAME_THREAD)
+class FuelPurchasePartitionsTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final FuelPurchaseDao fuelPurchaseDao;
+    private final FuelPurchasePartitions partitions;
+    private final FuelPurchaseClient client;
+    private final VehicleClient vehicleClient;
+    private final Jdbi jdbi;
+    private final Account account;
+
+    @Autowired
+    public FuelPurchasePartitionsTest(FuelPurchaseDao fuelPurchaseDao, FuelPurchasePartitions partitions, FuelPurchaseClient client,
+                                      VehicleClient vehicleClient, AccountClient accountClient, Jdbi jdbi) {
+        this.fuelPurchaseDao = fuelPurchaseDao;
+        this.partitions = partitions;
+        this.client = client;
+        this.vehicleClient = vehicleClient;
+        this.jdbi = jdbi;
+        this.account = accountClient.createEmptyAccount();
+    }
+
+    @Test
+    void testList_PrunesPartitions() {
+        fuelPurchaseDao.createPartitions(LocalDate.of(2100, 1, 1), LocalDate.of(2100, 3, 1));
+        VehicleName vehicle = new VehicleName(1, 1);
+
+        assertEquals(Set.of("fuel_purchase_2100_02"), jdbi.withHandle(h ->
+                explainList(h, "explain (format json) ", vehicle, "2100-02-01T00:00:00Z", "2100-03-01T00:00:00Z")));
+        assertEquals(Set.of("fuel_purchase_2100_02", "fuel_purchase_2100_03"), jdbi.withHandle(h ->
+                explainList(h, "explain (format json) ", vehicle, "2100-02-15T00:00:00Z", "2100-03-15T00:00:00Z")));
+        // beyond the last partition
+        assertEquals(Set.of("fuel_purchase_2100_03", "fuel_purchase_default"), jdbi.withHandle(h ->
+                explainList(h, "explain (format json) ", vehicle, "2100-03-15T00:00:00Z", "2100-04-15T00:00:00Z")));
+
+        // a generic plan of a prepared statement prunes when executed
+        assertEquals(Set.of("fuel_purchase_2100_02"), jdbi.inTransaction(h -> {
+            h.execute("set local plan_cache_mode = force_generic_plan");
+            return explainList(h, "explain (analyze, format json) ", vehicle, "2100-02-01T00:00:00Z", "2100-03-01T00:00:00Z");
+        }));
+    }
+
+    @Test
+    void testPartitions_Rolled() {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        VehicleName name = VehicleName.parse(vehicle.getName());
+        client.ingestFuelPurchases(List.of(IngestFuelPurchasesRequest.newBuilder()
+                .setParent(vehicle.getName())
+                .addFuelPurchases(purchase("1980-01-31T23:59:59Z"))
+                .addFuelPurchases(purchase("1980-02-01T00:00:00Z"))
+                .addFuelPurchases(purchase("1980-03-10T00:00:00Z"))
+                .build()));
+        assertEquals(List.of("fuel_purchase_default", "fuel_purchase_default", "fuel_purchase_default"), selectPartitions(name));
+
+        // moves the purchases out of the default partition
+        fuelPurchaseDao.createPartitions(LocalDate.of(1980, 1, 1), LocalDate.of(1980, 2, 1));
+        assertEquals(List.of("fuel_purchase_1980_01", "fuel_purchase_1980_02", "fuel_purchase_default"), selectPartitions(name));
+        assertEquals(3, listFuelPurchases(vehicle, "1980-01-01T00:00:00Z", "1980-04-01T00:00:00Z").getFuelPurchasesCount());
+        assertEquals(List.of(), fuelPurchaseDao.createPartitions(LocalDate.of(1980, 1, 1), LocalDate.of(1980, 2, 1)));
+
+        // an update moving a purchase to another partition is seen by the rollup triggers
+        jdbi.useHandle(h -> h.createUpdate("""
+                        update fuel_purchase set purchase_time = purchase_time + interval '1 day'
+                        where account_id = :account_id and vehicle_id = :vehicle_id and purchase_time = '1980-01-31T23:59:59Z'
+                        """)
+                .bind("account_id", name.accountId())
+                .bind("vehicle_id", name.vehicleId())
+                .execute());
+        assertEquals(List.of("fuel_purchase_1980_02", "fuel_purchase_1980_02", "fuel_purchase_default"), selectPartitions(name));
+        assertEquals(List.of("1980-02-01 2", "1980-03-01 1"), selectRollups(name));
+
+        List<String> dropped = fuelPurchaseDao.dropPartitions(LocalDate.of(1980, 3, 1));
+        assertTrue(dropped.containsAll(List.of("fuel_purchase_1980_01", "fuel_purchase_1980_02")), dropped.toString());
+        assertEquals(List.of("fuel_purchase_default"), selectPartitions(name));
+        assertEquals(1, listFuelPurchases(vehicle, "1980-01-01T00:00:00Z", "1980-04-01T00:00:00Z").getFuelPurchasesCount());
+        // the rollups outlive the purchases
+        assertEquals(List.of("1980-02-01 2", "1980-03-01 1"), selectRollups(name));
+
+        fuelPurchaseDao.deleteDefaultPurchases(LocalDate.of(1980, 4, 1));
+        assertEquals(List.of(), selectPartitions(name));
+        assertEquals(List.of("1980-02-01 2", "1980-03-01 1"), selectRollups(name));
+    }
+
+    @Test
+    void testMaintain_PartitionsDefaultPurchases() {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        VehicleName name = VehicleName.parse(vehicle.getName());
+        client.ingestFuelPurchases(List.of(IngestFuelPurchasesRequest.newBuilder()
+                .setParent(vehicle.getName())
+                .addFuelPurchases(purchase("1970-03-10T00:00:00Z"))
+                .addFuelPurchases(purchase("1975-05-10T00:00:00Z"))
+                .addFuelPurchases(purchase("2200-01-10T00:00:00Z"))
+                .build()));
+
+        // keeps the purchases from 1970-06 on
+        FuelPurchasePartitions maintenance = new FuelPurchasePartitions(fuelPurchaseDao,
+                new FuelPurchasePartitionProperties(false, Duration.ofHours(1), 0, 12), new SimpleMeterRegistry());
+        maintenance.maintain(LocalDate.of(1971, 6, 15));
+        assertEquals(List.of("fuel_purchase_1975_05", "fuel_purchase_2200_01"), selectPartitions(name));
+        assertEquals(List.of("1970-03-01 1", "1975-05-01 1", "2200-01-01 1"), selectRollups(name));
+    }
+
+    @Test
+    void testMaintain_CreatesPremadePartitions() {
+        partitions.maintain(LocalDate.of(2099, 6, 15));
+        List<String> existing = jdbi.withHandle(h -> h.createQuery("""
+                        select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid
+                        where i.inhparent = 'fuel_purchase'::regclass and c.relname like 'fuel\\_purchase\\_2099\\_%'
+                        order by 1
+                        """)
+                .mapTo(String.class)
+                .list());
+        // premade-months defaults to 3
+        assertEquals(List.of("fuel_purchase_2099_06", "fuel_purchase_2099_07", "fuel_purchase_2099_08", "fuel_purchase_2099_09"), existing);
+    }
+
+    @Test
+    void testList_Paged() {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        List<FuelPurchase> purchases = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            // two purchases at the same time
+            purchases.add(purchase("2024-0%d-15T12:00:00Z".formatted(1 + i / 2)));
+        }
+        client.ingestFuelPurchases(List.of(IngestFuelPurchasesRequest.newBuilder().setParent(vehicle.getName()).addAllFuelPurchases(purchases).build()));
+
+        List<FuelPurchase> listed = new ArrayList<>();
+        ListFuelPurchasesRequest.Builder request = ListFuelPurchasesRequest.newBuilder()
+                .setParent(vehicle.getName())
+                .setStartTime(timestamp("2024-01-15T12:00:00Z"))
+                .setEndTime(timestamp("2024-04-15T12:00:00Z"))
+                .setPageSize(2);
+        do {
+            ListFuelPurchasesResponse response = client.listFuelPurchases(request.build());
+            listed.addAll(response.getFuelPurchasesList());
+            request.setPageToken(response.getNextPageToken());
+        } while (!request.getPageToken().isEmpty());
+
+        // the end is exclusive
+        assertEquals(6, listed.size());
+        for (int i = 0; i < listed.size(); i++) {
+            assertTrue(listed.get(i).getName().startsWith(vehicle.getName() + "/fuelPurchases/"), listed.get(i).getName());
+            assertEquals(purchases.get(i), listed.get(i).toBuilder().clearName().build());
+        }
+    }
+
+    @Test
+    void testList_NotFound() {
+        VehicleName missing = new VehicleName(Long.MAX_VALUE, Long.MAX_VALUE);
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.listFuelPurchases(ListFuelPurchasesRequest.newBuilder()
+                .setParent(missing.toString())
+                .setStartTime(timestamp("2024-01-01T00:00:00Z"))
+                .setEndTime(timestamp("2024-02-01T00:00:00Z"))
+                .build()));
+    }
+
+    @Test
+    void testList_InvalidArgument() {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        ListFuelPurchasesRequest request = ListFuelPurchasesRequest.newBuilder()
+                .setParent(vehicle.getName())
+                .setStartTime(timestamp("2024-02-01T00:00:00Z"))
+                .setEndTime(timestamp("2024-01-01T00:00:00Z"))
+                .build();
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.listFuelPurchases(request));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.listFuelPurchases(request.toBuilder().clearStartTime().build()));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.listFuelPurchases(request.toBuilder().clearEndTime().build()));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.listFuelPurchases(request.toBuilder().setParent(account.getName()).build()));
+    }
+
+    /**
+     * Returns the partitions read by {@link FuelPurchaseDao#LIST}.
+     */
+    private static Set<String> explainList(Handle h, String explain, VehicleName vehicle, String startTime, String endTime) {
+        String plan = h.createQuery(explain + FuelPurchaseDao.LIST)
+                .bind("account_id", vehicle.accountId())
+                .bind("vehicle_id", vehicle.vehicleId())
+                .bind("start_time", timestamp(startTime))
+                .bind("end_time", timestamp(endTime))
+                .bind("page_token_purchase_time", timestamp(startTime))
+                .bind("page_token_fuel_purchase_id", 0L)
+                .bind("page_size", 100)
+                .mapTo(String.class)
+                .one();
+        Set<String> relations = new TreeSet<>();
+        try {
+            for (JsonNode relation : OBJECT_MAPPER.readTree(plan).findValues("Relation Name")) {
+                relations.add(relation.asText());
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return relations;
+    }
+
+    private List<String> selectPartitions(VehicleName vehicle) {
+        return jdbi.withHandle(h -> h.createQuery("""
+                        select tableoid::regclass::text from fuel_purchase
+                        where account_id = :account_id and vehicle_id = :vehicle_id
+                        order by purchase_time
+                        """)
+                .bind("account_id", vehicle.accountId())
+                .bind("vehicle_id", vehicle.vehicleId())
+                .mapTo(String.class)
+                .list());
+    }
+
+    private List<String> selectRollups(VehicleName vehicle) {
+        return jdbi.withHandle(h -> h.createQuery("""
+                        select month || ' ' || purchase_count from fuel_cost_monthly
+                        where account_id = :account_id and vehicle_id = :vehicle_id
+                        order by month
+                        """)
+                .bind("account_id", vehicle.accountId())
+                .bind("vehicle_id", vehicle.vehicleId())
+                .mapTo(String.class)
+                .list());
+    }
+
+    private ListFuelPurchasesResponse listFuelPurchases(Vehicle vehicle, String startTime, String endTime) {
+        return client.listFuelPurchases(ListFuelPurchasesRequest.newBuilder()
+                .setParent(vehicle.getName())
+                .setStartTime(timestamp(startTime))
+                .setEndTime(timestamp(endTime))
+                .build());
+    }
+
+    private static Timestamp timestamp(String time) {
+        Instant instant = Instant.parse(time);
+        return Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()).build();
+    }
+
+    private static FuelPurchase purchase(String time) {
+        return FuelPurchase.newBuilder()
+                .setPurchaseTime(timestamp(time))
+                .setVolumeLiters(40)
+                .setPrice(Money.newBuilder().setCurrencyCode("EUR").setUnits(70))
+                .build();
+    }
+}
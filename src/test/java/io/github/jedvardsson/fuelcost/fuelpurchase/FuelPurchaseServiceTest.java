@@ -0,0 +1,307 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+import com.google.type.Money;
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.grpc.GrpcAssertions;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.AccountFuelReport;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchase;
+import io.github.jedvardsson.fuelcost.v1.GetAccountFuelReportRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesResponse;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleFuelReport;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleClient;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("ThrowableNotThrown")
+@SpringBootTest(classes = ApplicationTestConfig.class)
+@ActiveProfiles({"test"})
+class FuelPurchaseServiceTest {
+
+    // the test profile writes batches of 5 purchases, or after 500 ms
+
+    private final FuelPurchaseClient client;
+    private final VehicleClient vehicleClient;
+    private final AccountClient accountClient;
+    private final DataSource dataSource;
+    private final Account account;
+
+    @Autowired
+    public FuelPurchaseServiceTest(FuelPurchaseClient client, VehicleClient vehicleClient, AccountClient accountClient, DataSource dataSource) {
+        this.client = client;
+        this.vehicleClient = vehicleClient;
+        this.accountClient = accountClient;
+        this.dataSource = dataSource;
+        this.account = accountClient.createEmptyAccount();
+    }
+
+    @Test
+    void testIngest_Ok() throws SQLException {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        Timestamp time = Timestamps.fromNanos(1_700_000_000_123_456_000L);
+        FuelPurchase purchase = FuelPurchase.newBuilder()
+                .setPurchaseTime(time)
+                .setVolumeLiters(42.5)
+                .setPrice(Money.newBuilder().setCurrencyCode("SEK").setUnits(812).setNanos(350_000_000))
+                .setOdometerKm(12345.6)
+                .build();
+
+        IngestFuelPurchasesResponse response = client.ingestFuelPurchases(List.of(
+                request(vehicle, purchase, 4),
+                request(vehicle, purchase.toBuilder().clearOdometerKm().build(), 4),
+                IngestFuelPurchasesRequest.newBuilder().setParent(vehicle.getName()).build(),
+                request(vehicle, purchase, 1)));
+        assertEquals(4, response.getRequestCount());
+        assertEquals(9, response.getFuelPurchaseCount());
+        // batches of 5, and more if the max delay passes between requests
+        assertTrue(response.getBatchCount() >= 2, response.toString());
+
+        List<String> rows = selectFuelPurchases(vehicle);
+        assertEquals(9, rows.size());
+        assertEquals("2023-11-14T22:13:20.123456Z 42.5 812350000 SEK 12345.6", rows.getFirst());
+        assertEquals(4, rows.stream().filter(r -> r.endsWith(" null")).count());
+    }
+
+    @Test
+    void testIngest_Delayed() throws SQLException {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        CompletableFuture<IngestFuelPurchasesResponse> response = new CompletableFuture<>();
+        StreamObserver<IngestFuelPurchasesRequest> requests = client.ingestFuelPurchases(response);
+        requests.onNext(request(vehicle, purchase(), 2));
+
+        // written before the call completes
+        for (int i = 0; i < 50 && selectFuelPurchases(vehicle).isEmpty(); i++) {
+            sleep();
+        }
+        assertEquals(2, selectFuelPurchases(vehicle).size());
+
+        requests.onCompleted();
+        assertEquals(IngestFuelPurchasesResponse.newBuilder()
+                .setRequestCount(1)
+                .setFuelPurchaseCount(2)
+                .setBatchCount(1)
+                .build(), FuelPurchaseClient.await(response));
+    }
+
+    @Test
+    void testIngest_DelayedConcurrently() throws SQLException {
+        Vehicle slow = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        VehicleName slowName = VehicleName.parse(slow.getName());
+        CompletableFuture<IngestFuelPurchasesResponse> slowResponse = new CompletableFuture<>();
+        CompletableFuture<IngestFuelPurchasesResponse> response = new CompletableFuture<>();
+
+        // a vehicle locked for update blocks the write of its delayed batch
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement("select from vehicle where account_id = ? and vehicle_id = ? for update")) {
+                statement.setLong(1, slowName.accountId());
+                statement.setLong(2, slowName.vehicleId());
+                statement.executeQuery().close();
+            }
+            StreamObserver<IngestFuelPurchasesRequest> slowRequests = client.ingestFuelPurchases(slowResponse);
+            slowRequests.onNext(request(slow, purchase(), 1));
+            sleep();
+            StreamObserver<IngestFuelPurchasesRequest> requests = client.ingestFuelPurchases(response);
+            requests.onNext(request(vehicle, purchase(), 1));
+
+            // written while the other call is still blocked
+            for (int i = 0; i < 50 && selectFuelPurchases(vehicle).isEmpty(); i++) {
+                sleep();
+            }
+            assertEquals(1, selectFuelPurchases(vehicle).size());
+            assertEquals(0, selectFuelPurchases(slow).size());
+
+            connection.commit();
+            slowRequests.onCompleted();
+            requests.onCompleted();
+        }
+        IngestFuelPurchasesResponse expected = IngestFuelPurchasesResponse.newBuilder()
+                .setRequestCount(1)
+                .setFuelPurchaseCount(1)
+                .setBatchCount(1)
+                .build();
+        assertEquals(expected, FuelPurchaseClient.await(slowResponse));
+        assertEquals(expected, FuelPurchaseClient.await(response));
+        assertEquals(1, selectFuelPurchases(slow).size());
+    }
+
+    @Test
+    void testIngest_NotFound() throws SQLException {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        VehicleName parent = VehicleName.parse(vehicle.getName());
+        String missing = new VehicleName(parent.accountId(), Long.MAX_VALUE).toString();
+
+        StatusRuntimeException e = GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.ingestFuelPurchases(List.of(
+                request(vehicle, purchase(), 5),
+                IngestFuelPurchasesRequest.newBuilder().setParent(missing).addFuelPurchases(purchase()).build())));
+        assertTrue(e.getStatus().getDescription().startsWith(missing), e.getStatus().getDescription());
+        assertTrue(e.getStatus().getDescription().contains("5 fuel purchases were recorded"), e.getStatus().getDescription());
+        assertEquals(5, selectFuelPurchases(vehicle).size());
+    }
+
+    @Test
+    void testIngest_InvalidArgument() {
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        assertInvalid(IngestFuelPurchasesRequest.newBuilder().setParent(account.getName()).addFuelPurchases(purchase()).build());
+        assertInvalid(request(vehicle, purchase().toBuilder().clearPurchaseTime().build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().setVolumeLiters(0).build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().setVolumeLiters(Double.NaN).build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().clearPrice().build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().setPrice(Money.newBuilder().setCurrencyCode("sek").setUnits(1)).build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().setPrice(Money.newBuilder().setCurrencyCode("SEK").setUnits(-1)).build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().setPrice(Money.newBuilder().setCurrencyCode("SEK").setNanos(1)).build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().setPrice(Money.newBuilder().setCurrencyCode("SEK").setNanos(1_000_000_000)).build(), 1));
+        assertInvalid(request(vehicle, purchase().toBuilder().setOdometerKm(-1).build(), 1));
+    }
+
+    @Test
+    void testGetAccountFuelReport_Ok() {
+        Account account = accountClient.createEmptyAccount();
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        Vehicle idle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        long start = 1_700_000_000L;
+        client.ingestFuelPurchases(List.of(IngestFuelPurchasesRequest.newBuilder()
+                .setParent(vehicle.getName())
+                .addFuelPurchases(purchase(start, 40, "SEK", 800, 10000))
+                .addFuelPurchases(purchase(start + 1000, 30, "SEK", 600, 10500))
+                .addFuelPurchases(purchase(start + 2000, 10, "EUR", 20, 10600))
+                .addFuelPurchases(purchase(start + 3000, 20, "SEK", 400, 10800))
+                // outside the range
+                .addFuelPurchases(purchase(start + 86400 * 30, 20, "SEK", 400, 11000))
+                .build()));
+
+        GetAccountFuelReportRequest request = GetAccountFuelReportRequest.newBuilder()
+                .setName(account.getName())
+                .setStartTime(Timestamps.fromSeconds(start))
+                .setEndTime(Timestamps.fromSeconds(start + 86400 * 30))
+                .setCurrencyCode("SEK")
+                .build();
+        // 30 days of an average month of 30.436875
+        double months = 30 / 30.436875;
+        assertEquals(AccountFuelReport.newBuilder()
+                .setName(account.getName())
+                .addVehicles(VehicleFuelReport.newBuilder()
+                        .setVehicle(vehicle.getName())
+                        .setPurchaseCount(3)
+                        .setVolumeLiters(90)
+                        .setTotalPrice(Money.newBuilder().setCurrencyCode("SEK").setUnits(1800))
+                        .setDistanceKm(800)
+                        .setLitersPer100Km(50.0 / 800 * 100)
+                        .setCostPerKm(1000.0 / 800)
+                        .setCostPerMonth(1800 / months))
+                .addVehicles(VehicleFuelReport.newBuilder()
+                        .setVehicle(idle.getName())
+                        .setTotalPrice(Money.newBuilder().setCurrencyCode("SEK")))
+                .build(), client.getAccountFuelReport(request));
+    }
+
+    @Test
+    void testGetAccountFuelReport_NotFound() {
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.getAccountFuelReport(GetAccountFuelReportRequest.newBuilder()
+                .setName("accounts/" + Long.MAX_VALUE)
+                .setStartTime(Timestamps.fromSeconds(0))
+                .setEndTime(Timestamps.fromSeconds(1))
+                .setCurrencyCode("SEK")
+                .build()));
+    }
+
+    @Test
+    void testGetAccountFuelReport_InvalidArgument() {
+        GetAccountFuelReportRequest request = GetAccountFuelReportRequest.newBuilder()
+                .setName(account.getName())
+                .setStartTime(Timestamps.fromSeconds(0))
+                .setEndTime(Timestamps.fromSeconds(1))
+                .setCurrencyCode("SEK")
+                .build();
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.getAccountFuelReport(request.toBuilder().setName("accounts/x").build()));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.getAccountFuelReport(request.toBuilder().clearStartTime().build()));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.getAccountFuelReport(request.toBuilder().setEndTime(Timestamps.fromSeconds(-1)).build()));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.getAccountFuelReport(request.toBuilder().setCurrencyCode("").build()));
+    }
+
+    private static FuelPurchase purchase(long seconds, double volumeLiters, String currencyCode, long price, double odometerKm) {
+        return FuelPurchase.newBuilder()
+                .setPurchaseTime(Timestamps.fromSeconds(seconds))
+                .setVolumeLiters(volumeLiters)
+                .setPrice(Money.newBuilder().setCurrencyCode(currencyCode).setUnits(price))
+                .setOdometerKm(odometerKm)
+                .build();
+    }
+
+    private void assertInvalid(IngestFuelPurchasesRequest request) {
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.ingestFuelPurchases(List.of(request)));
+    }
+
+    private static FuelPurchase purchase() {
+        return FuelPurchase.newBuilder()
+                .setPurchaseTime(Timestamps.fromSeconds(1_700_000_000L))
+                .setVolumeLiters(40)
+                .setPrice(Money.newBuilder().setCurrencyCode("EUR").setUnits(70))
+                .build();
+    }
+
+    private static IngestFuelPurchasesRequest request(Vehicle vehicle, FuelPurchase purchase, int count) {
+        IngestFuelPurchasesRequest.Builder request = IngestFuelPurchasesRequest.newBuilder().setParent(vehicle.getName());
+        for (int i = 0; i < count; i++) {
+            request.addFuelPurchases(purchase);
+        }
+        return request.build();
+    }
+
+    /**
+     * Returns {@code purchase_time volume_liters price_micros currency_code odometer_km} of the purchases of the
+     * vehicle in the order written.
+     */
+    private List<String> selectFuelPurchases(Vehicle vehicle) throws SQLException {
+        VehicleName name = VehicleName.parse(vehicle.getName());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                     select purchase_time, volume_liters, price_micros, currency_code, odometer_km
+                     from fuel_purchase where account_id = ? and vehicle_id = ? order by fuel_purchase_id
+                     """)) {
+            statement.setLong(1, name.accountId());
+            statement.setLong(2, name.vehicleId());
+            List<String> rows = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(rs.getObject(1, OffsetDateTime.class).toInstant() + " " + rs.getDouble(2) + " " + rs.getLong(3) + " "
+                             + rs.getString(4) + " " + rs.getObject(5));
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.jedvardsson.fuelcost.fuelpurchase;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FuelReportTest {
+
+    @Test
+    void testCompute_FillUpToFillUp() {
+        FuelReportColumns columns = new FuelReportColumns();
+        // the first reading starts the distance, its volume was used before it
+        columns.add(1, 30, 60_000_000, Double.NaN);
+        columns.add(1, 40, 80_000_000, 1000);
+        columns.add(1, 20, 40_000_000, Double.NaN);
+        columns.add(1, 35, 70_000_000, 1500);
+        columns.add(1, 45, 90_000_000, 2000);
+        // one reading, no distance
+        columns.add(2, 50, 100_000_000, 500);
+        // no readings
+        columns.add(3, 10, 20_000_000, Double.NaN);
+
+        FuelReport report = FuelReport.compute(columns);
+        assertEquals(3, report.vehicleCount);
+        assertArrayEquals(new long[]{1, 2, 3}, report.vehicleIds);
+        assertArrayEquals(new long[]{5, 1, 1}, report.purchaseCounts);
+        assertArrayEquals(new double[]{170, 50, 10}, report.volumeLiters);
+        assertArrayEquals(new long[]{340_000_000, 100_000_000, 20_000_000}, report.priceMicros);
+        assertArrayEquals(new double[]{1000, 0, 0}, report.distanceKm);
+        assertArrayEquals(new double[]{80, 0, 0}, report.usedVolumeLiters);
+        assertArrayEquals(new long[]{160_000_000, 0, 0}, report.usedPriceMicros);
+    }
+
+    @Test
+    void testCompute_Empty() {
+        FuelReport report = FuelReport.compute(new FuelReportColumns());
+        assertEquals(0, report.vehicleCount);
+    }
+
+    @Test
+    void testCompute_Parallel() {
+        // enough purchases to be split into tasks, with vehicles of varying size
+        Random random = new Random(42);
+        FuelReportColumns columns = new FuelReportColumns();
+        int vehicleCount = 500;
+        long[] expectedCounts = new long[vehicleCount];
+        long[] expectedPrices = new long[vehicleCount];
+        double[] expectedDistances = new double[vehicleCount];
+        for (int v = 0; v < vehicleCount; v++) {
+            int count = v == 7 ? FuelReport.ROWS_PER_TASK * 2 : 1 + random.nextInt(1000);
+            double odometer = 0;
+            for (int i = 0; i < count; i++) {
+                odometer += 400;
+                long price = 1_000_000L * (1 + random.nextInt(100));
+                columns.add(v * 10L, 40, price, odometer);
+                expectedPrices[v] += price;
+            }
+            expectedCounts[v] = count;
+            expectedDistances[v] = odometer - 400;
+        }
+
+        FuelReport report = FuelReport.compute(columns);
+        assertEquals(vehicleCount, report.vehicleCount);
+        assertArrayEquals(expectedCounts, report.purchaseCounts);
+        assertArrayEquals(expectedPrices, report.priceMicros);
+        assertArrayEquals(expectedDistances, report.distanceKm);
+        for (int v = 0; v < vehicleCount; v++) {
+            assertEquals(v * 10L, report.vehicleIds[v]);
+            assertEquals(40 * (expectedCounts[v] - 1), report.usedVolumeLiters[v]);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.VehicleChange;
+import io.github.jedvardsson.fuelcost.v1.VehicleServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.WatchVehiclesRequest;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs in its own application context, so that the meters only count the calls of this test.
+ */
+@SuppressWarnings("ThrowableNotThrown")
+@SpringBootTest(classes = ApplicationTestConfig.class, properties = "spring.application.name=grpc-metrics-interceptor-test")
+@ActiveProfiles({"test"})
+@Execution(ExecutionMode.SAME_THREAD)
+class GrpcMetricsInterceptorTest {
+
+    private static final String GET_ACCOUNT = "AccountService/GetAccount";
+    private static final String WATCH_VEHICLES = "VehicleService/WatchVehicles";
+
+    private final AccountClient client;
+    private final GrpcChannelWrapper channelWrapper;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public GrpcMetricsInterceptorTest(AccountClient client, GrpcChannelWrapper channelWrapper, MeterRegistry meterRegistry) {
+        this.client = client;
+        this.channelWrapper = channelWrapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Test
+    void testMetersRegisteredUpFront() {
+        assertNotNull(meterRegistry.find("grpc.server.calls").tag("method", "VehicleService/ListVehicles").timer());
+        assertNotNull(meterRegistry.find("grpc.server.calls.active").tag("method", "AccountService/ListAccounts").gauge());
+    }
+
+    @Test
+    void testRecordCalls() {
+        Account account = client.createEmptyAccount();
+        Timer timer = meterRegistry.get("grpc.server.calls").tag("method", GET_ACCOUNT).timer();
+        long calls = timer.count();
+        double ok = statusCount(Status.Code.OK);
+        double notFound = statusCount(Status.Code.NOT_FOUND);
+        double responseBytes = meterRegistry.get("grpc.server.response.size").tag("method", GET_ACCOUNT).summary().totalAmount();
+
+        client.getAccount(account.getName());
+        client.deleteAccount(account.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.getAccount(account.getName()));
+
+        assertEquals(calls + 2, timer.count());
+        assertEquals(ok + 1, statusCount(Status.Code.OK));
+        assertEquals(notFound + 1, statusCount(Status.Code.NOT_FOUND));
+        assertEquals(responseBytes + account.getSerializedSize(), meterRegistry.get("grpc.server.response.size").tag("method", GET_ACCOUNT).summary().totalAmount());
+        assertTrue(meterRegistry.get("grpc.server.request.size").tag("method", GET_ACCOUNT).summary().count() >= 2);
+        assertEquals(0, meterRegistry.get("grpc.server.calls.active").tag("method", GET_ACCOUNT).gauge().value());
+        assertEquals(Arrays.asList(0.5, 0.99, 0.999), Arrays.stream(timer.takeSnapshot().percentileValues()).map(ValueAtPercentile::percentile).toList());
+    }
+
+    @Test
+    void testRecordCalls_DeadlineExceeded() throws InterruptedException {
+        Account account = client.createEmptyAccount();
+        Timer timer = meterRegistry.get("grpc.server.calls").tag("method", WATCH_VEHICLES).timer();
+        long calls = timer.count();
+        double deadlineExceeded = statusCount(WATCH_VEHICLES, Status.Code.DEADLINE_EXCEEDED);
+
+        // the server never closes a watch, so it ends by cancellation
+        Iterator<VehicleChange> changes = VehicleServiceGrpc.newBlockingStub(channelWrapper.getChannel())
+                .withDeadlineAfter(200, TimeUnit.MILLISECONDS)
+                .watchVehicles(WatchVehiclesRequest.newBuilder().setParent(account.getName()).build());
+        GrpcAssertions.assertThrows(Status.Code.DEADLINE_EXCEEDED, changes::hasNext);
+
+        // the listener is cancelled after the client sees the deadline
+        for (int i = 0; i < 50 && timer.count() == calls; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(calls + 1, timer.count());
+        assertEquals(deadlineExceeded + 1, statusCount(WATCH_VEHICLES, Status.Code.DEADLINE_EXCEEDED));
+        assertEquals(0, meterRegistry.get("grpc.server.calls.active").tag("method", WATCH_VEHICLES).gauge().value());
+    }
+
+    private double statusCount(Status.Code code) {
+        return statusCount(GET_ACCOUNT, code);
+    }
+
+    private double statusCount(String method, Status.Code code) {
+        Counter counter = meterRegistry.find("grpc.server.calls.status").tag("method", method).tag("status", code.name()).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
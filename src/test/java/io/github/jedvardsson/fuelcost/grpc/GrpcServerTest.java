@@ -1,7 +1,12 @@
 package io.github.jedvardsson.fuelcost.grpc;
 
 import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
 import io.grpc.Status;
+import io.grpc.protobuf.services.ProtoReflectionService;
 import io.grpc.reflection.v1alpha.ErrorResponse;
 import io.grpc.reflection.v1alpha.ServerReflectionGrpc;
 import io.grpc.reflection.v1alpha.ServerReflectionRequest;
@@ -10,13 +15,19 @@ import io.grpc.reflection.v1alpha.ServiceResponse;
 import io.grpc.stub.StreamObserver;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @SpringBootTest(classes = ApplicationTestConfig.class)
 @ActiveProfiles({"test"})
@@ -30,6 +41,10 @@ class GrpcServerTest {
     }
 
     private ServerReflectionResponse getServerReflectionInfo(ServerReflectionRequest request) {
+        return getServerReflectionInfo(reflectionStub, request);
+    }
+
+    private static ServerReflectionResponse getServerReflectionInfo(ServerReflectionGrpc.ServerReflectionStub reflectionStub, ServerReflectionRequest request) {
         CompletableFuture<ServerReflectionResponse> future = new CompletableFuture<>();
         StreamObserver<ServerReflectionResponse> responseObserver = new StreamObserver<>() {
             private ServerReflectionResponse response = null;
@@ -92,4 +107,32 @@ class GrpcServerTest {
     void testGetServiceNames() {
         Assertions.assertTrue(getServerServiceNames().contains("grpc.reflection.v1alpha.ServerReflection"));
     }
-}
\ No newline at end of file
+
+    @ParameterizedTest
+    @EnumSource(GrpcProperties.ExecutorMode.class)
+    void testExecutorMode(GrpcProperties.ExecutorMode mode) throws IOException {
+        AtomicReference<Thread> callThread = new AtomicReference<>();
+        ServerInterceptor interceptor = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                callThread.set(Thread.currentThread());
+                return next.startCall(call, headers);
+            }
+        };
+        GrpcProperties properties = new GrpcProperties(-1, Duration.ZERO, new GrpcProperties.Executor(mode, 2), new GrpcProperties.ResponseCache(false, DataSize.ofMegabytes(1)));
+        GrpcServer server = new GrpcServer(properties, List.of(interceptor), List.of(ProtoReflectionService.newInstance()));
+        server.start();
+        try (GrpcChannelWrapper channelWrapper = GrpcChannelWrapper.create(server.getLocalTarget(), Duration.ZERO)) {
+            ServerReflectionResponse response = getServerReflectionInfo(ServerReflectionGrpc.newStub(channelWrapper.getChannel()),
+                    ServerReflectionRequest.newBuilder().setListServices("").build());
+            Assertions.assertTrue(response.hasListServicesResponse());
+        } finally {
+            server.shutdown();
+        }
+        Thread thread = callThread.get();
+        Assertions.assertEquals(mode == GrpcProperties.ExecutorMode.VIRTUAL, thread.isVirtual(), thread.getName());
+        if (mode == GrpcProperties.ExecutorMode.FIXED) {
+            Assertions.assertTrue(thread.getName().startsWith("grpc-executor-"), thread.getName());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.jedvardsson.fuelcost.grpc;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.common.VersionEtag;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleClient;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+import io.grpc.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("ThrowableNotThrown")
+@SpringBootTest(classes = ApplicationTestConfig.class, properties = "grpc.response-cache.enabled=true")
+@ActiveProfiles({"test"})
+class ResponseCacheTest {
+
+    private final VehicleClient client;
+    private final AccountClient accountClient;
+    private final MeterRegistry meterRegistry;
+    private final DataSource dataSource;
+    private final Account account;
+
+    @Autowired
+    public ResponseCacheTest(VehicleClient client, AccountClient accountClient, MeterRegistry meterRegistry, DataSource dataSource) {
+        this.client = client;
+        this.accountClient = accountClient;
+        this.meterRegistry = meterRegistry;
+        this.dataSource = dataSource;
+        account = accountClient.createEmptyAccount();
+    }
+
+    @Test
+    void testGetVehicle_Cached() {
+        Vehicle v1 = client.createVehicle(account.getName(), Vehicle.newBuilder().setDisplayName("cached").build());
+        assertEquals(v1, client.getVehicle(v1.getName()));
+        double hits = cacheHits();
+        assertEquals(v1, client.getVehicle(v1.getName()));
+        assertTrue(cacheHits() > hits);
+
+        Vehicle v2 = client.updateVehicle(v1.toBuilder().setDisplayName("updated").build());
+        assertEquals(v2, client.getVehicle(v2.getName()));
+
+        Vehicle notModified = client.getVehicle(v2.getName(), v2.getEtag());
+        assertEquals(Vehicle.newBuilder().setName(v2.getName()).setEtag(v2.getEtag()).build(), notModified);
+
+        client.deleteVehicle(v2.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.getVehicle(v2.getName()));
+    }
+
+    @Test
+    void testGetVehicle_CachedByFormattedName() {
+        Vehicle v1 = client.createVehicle(account.getName(), Vehicle.newBuilder().setDisplayName("formatted").build());
+        assertEquals(v1, client.getVehicle(v1.getName()));
+
+        VehicleName name = VehicleName.parse(v1.getName());
+        String padded = "accounts/0%d/vehicles/0%d".formatted(name.accountId(), name.vehicleId());
+        double hits = cacheHits();
+        assertEquals(v1, client.getVehicle(padded));
+        assertTrue(cacheHits() > hits);
+
+        Vehicle v2 = client.updateVehicle(v1.toBuilder().setName(padded).setDisplayName("updated").build());
+        assertEquals(v2, client.getVehicle(v1.getName()));
+    }
+
+    @Test
+    void testGetVehicle_ChangedElsewhere() throws SQLException {
+        Vehicle v1 = client.createVehicle(account.getName(), Vehicle.newBuilder().setDisplayName("before").build());
+        assertEquals(v1, client.getVehicle(v1.getName()));
+
+        // as if updated by another node, which does not invalidate this node's cache
+        VehicleName name = VehicleName.parse(v1.getName());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("update vehicle set display_name = 'after', version = version + 1 where account_id = ? and vehicle_id = ?")) {
+            statement.setLong(1, name.accountId());
+            statement.setLong(2, name.vehicleId());
+            assertEquals(1, statement.executeUpdate());
+        }
+
+        Vehicle v2 = client.getVehicle(v1.getName());
+        assertEquals("after", v2.getDisplayName());
+        assertEquals(VersionEtag.parse(v1.getEtag()).version() + 1, VersionEtag.parse(v2.getEtag()).version());
+    }
+
+    @Test
+    void testGetAccount_Cached() {
+        Account a1 = accountClient.createEmptyAccount();
+        assertEquals(a1, accountClient.getAccount(a1.getName()));
+        assertEquals(a1, accountClient.getAccount(a1.getName()));
+
+        Account a2 = accountClient.updateAccount(a1);
+        assertEquals(VersionEtag.parse(a1.getEtag()).version() + 1, VersionEtag.parse(a2.getEtag()).version());
+        assertEquals(a2, accountClient.getAccount(a2.getName()));
+        assertEquals(Account.newBuilder().setName(a2.getName()).setEtag(a2.getEtag()).build(), accountClient.getAccount(a2.getName(), a2.getEtag()));
+
+        accountClient.deleteAccount(a2.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> accountClient.getAccount(a2.getName()));
+    }
+
+    private double cacheHits() {
+        return meterRegistry.get("cache.gets").tag("cache", "response").tag("result", "hit").functionCounter().count();
+    }
+}
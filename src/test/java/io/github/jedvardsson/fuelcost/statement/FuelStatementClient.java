@@ -0,0 +1,29 @@
+package io.github.jedvardsson.fuelcost.statement;
+
+import com.google.type.Date;
+import io.github.jedvardsson.fuelcost.grpc.GrpcChannelWrapper;
+import io.github.jedvardsson.fuelcost.v1.FuelStatementRun;
+import io.github.jedvardsson.fuelcost.v1.FuelStatementServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.GetFuelStatementRunRequest;
+import io.github.jedvardsson.fuelcost.v1.StartFuelStatementRunRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+@Service
+public class FuelStatementClient {
+
+    private final FuelStatementServiceGrpc.FuelStatementServiceBlockingStub fuelStatementStub;
+
+    @Autowired
+    public FuelStatementClient(GrpcChannelWrapper wrapper) {
+        fuelStatementStub = FuelStatementServiceGrpc.newBlockingStub(wrapper.getChannel());
+    }
+
+    public FuelStatementRun startFuelStatementRun(Date month) {
+        return fuelStatementStub.startFuelStatementRun(StartFuelStatementRunRequest.newBuilder().setMonth(month).build());
+    }
+
+    public FuelStatementRun getFuelStatementRun(Date month) {
+        return fuelStatementStub.getFuelStatementRun(GetFuelStatementRunRequest.newBuilder().setMonth(month).build());
+    }
+}
@@ -0,0 +1,262 @@
+package io.github.jedvardsson.fuelcost.statement;
+
+import com.google.protobuf.util.Timestamps;
+import com.google.type.Date;
+import com.google.type.Money;
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.account.AccountName;
+import io.github.jedvardsson.fuelcost.fuelpurchase.FuelPurchaseClient;
+import io.github.jedvardsson.fuelcost.grpc.GrpcAssertions;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.FuelPurchase;
+import io.github.jedvardsson.fuelcost.v1.FuelStatementRun;
+import io.github.jedvardsson.fuelcost.v1.IngestFuelPurchasesRequest;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleClient;
+import io.github.jedvardsson.fuelcost.vehicle.VehicleName;
+import io.grpc.Status;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Each test uses its own month, as jobs and statements of a month are shared by every account.
+ */
+@SuppressWarnings("ThrowableNotThrown")
+@SpringBootTest(classes = {ApplicationTestConfig.class, FuelStatementServiceTest.FailureConfig.class}, properties = {
+        "fuel-statement.workers.threads=2",
+})
+@ActiveProfiles({"test"})
+class FuelStatementServiceTest {
+
+    // the test profile retries after 100 to 200 ms, at most 3 attempts
+
+    /**
+     * Not a {@code @Configuration}, so that component scanning does not add it to other tests.
+     */
+    static class FailureConfig {
+        @Bean
+        @Primary
+        public FailingFuelStatementWriter failingFuelStatementWriter() {
+            return new FailingFuelStatementWriter();
+        }
+    }
+
+    /**
+     * Runs the failure of the account, if any, before writing its statement.
+     */
+    static class FailingFuelStatementWriter extends FuelStatementWriter {
+        private final Map<Long, Consumer<Handle>> failures = new ConcurrentHashMap<>();
+
+        @Override
+        public void write(Handle h, FuelStatementDao.Job job) {
+            failures.getOrDefault(job.accountId(), ignore -> {
+            }).accept(h);
+            super.write(h, job);
+        }
+    }
+
+    private final FuelStatementClient client;
+    private final FuelStatementDao fuelStatementDao;
+    private final FuelPurchaseClient fuelPurchaseClient;
+    private final VehicleClient vehicleClient;
+    private final AccountClient accountClient;
+    private final FailingFuelStatementWriter writer;
+    private final Jdbi jdbi;
+
+    @Autowired
+    public FuelStatementServiceTest(FuelStatementClient client, FuelStatementDao fuelStatementDao, FuelPurchaseClient fuelPurchaseClient,
+                                    VehicleClient vehicleClient, AccountClient accountClient, FailingFuelStatementWriter writer, Jdbi jdbi) {
+        this.client = client;
+        this.fuelStatementDao = fuelStatementDao;
+        this.fuelPurchaseClient = fuelPurchaseClient;
+        this.vehicleClient = vehicleClient;
+        this.accountClient = accountClient;
+        this.writer = writer;
+        this.jdbi = jdbi;
+    }
+
+    @Test
+    void testProcess_WritesStatements() {
+        LocalDate month = LocalDate.of(1975, 6, 1);
+        Account account = accountClient.createEmptyAccount();
+        Vehicle vehicle1 = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        Vehicle vehicle2 = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        Account empty = accountClient.createEmptyAccount();
+        ingest(vehicle1, month, "SEK", 3);
+        ingest(vehicle1, month, "EUR", 1);
+        ingest(vehicle2, month, "SEK", 2);
+        ingest(vehicle2, month.plusMonths(1), "SEK", 2);
+
+        List<Long> accountIds = List.of(accountId(account), accountId(empty));
+        assertEquals(2, fuelStatementDao.enqueue(month, accountIds));
+        assertEquals(0, fuelStatementDao.enqueue(month, accountIds));
+        awaitJobs(month, accountIds, "done");
+        assertEquals(List.of(
+                "%s SEK 3 210000000 120".formatted(vehicle1.getName()),
+                "%s EUR 1 70000000 40".formatted(vehicle1.getName()),
+                "%s SEK 2 140000000 80".formatted(vehicle2.getName())), selectStatement(account, month));
+        assertEquals(List.of(), selectStatement(empty, month));
+
+        // writing again replaces the statement
+        VehicleName name1 = VehicleName.parse(vehicle1.getName());
+        jdbi.useHandle(h -> h.execute("delete from fuel_purchase where account_id = ? and vehicle_id = ? and currency_code = 'SEK'",
+                name1.accountId(), name1.vehicleId()));
+        ingest(vehicle2, month, "SEK", 1);
+        jdbi.useHandle(h -> h.execute("update fuel_statement_job set state = 'pending' where month = ? and account_id = ?", month, accountId(account)));
+        awaitJobs(month, accountIds, "done");
+        assertEquals(List.of(
+                "%s EUR 1 70000000 40".formatted(vehicle1.getName()),
+                "%s SEK 3 210000000 120".formatted(vehicle2.getName())), selectStatement(account, month));
+    }
+
+    @Test
+    void testProcess_RetriesWithBackoff() {
+        LocalDate month = LocalDate.of(1975, 7, 1);
+        Account account = accountClient.createEmptyAccount();
+        Vehicle vehicle = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        ingest(vehicle, month, "SEK", 1);
+        long accountId = accountId(account);
+
+        writer.failures.put(accountId, h -> h.execute("do $$ begin raise exception 'test failure'; end $$"));
+        try {
+            fuelStatementDao.enqueue(month, List.of(accountId));
+            awaitJobs(month, List.of(accountId), "failed");
+            String job = selectJob(month, accountId);
+            assertTrue(job.startsWith("3 ") && job.contains("test failure"), job);
+            assertEquals(List.of(), selectStatement(account, month));
+        } finally {
+            writer.failures.remove(accountId);
+        }
+
+        jdbi.useHandle(h -> h.execute("update fuel_statement_job set state = 'pending', attempt_count = 0 where month = ? and account_id = ?", month, accountId));
+        awaitJobs(month, List.of(accountId), "done");
+        assertEquals(List.of("%s SEK 1 70000000 40".formatted(vehicle.getName())), selectStatement(account, month));
+        FuelStatementRun run = client.getFuelStatementRun(month(month));
+        assertEquals(month(month), run.getMonth());
+        assertTrue(run.getDoneCount() >= 1, run.toString());
+    }
+
+    @Test
+    void testProcess_RecordsAttemptOfLostTransaction() {
+        LocalDate month = LocalDate.of(1975, 8, 1);
+        Account account = accountClient.createEmptyAccount();
+        long accountId = accountId(account);
+
+        // rolling back to the savepoint fails on the terminated connection
+        writer.failures.put(accountId, h -> h.execute("select pg_terminate_backend(pg_backend_pid())"));
+        try {
+            fuelStatementDao.enqueue(month, List.of(accountId));
+            awaitJobs(month, List.of(accountId), "failed");
+            String job = selectJob(month, accountId);
+            assertTrue(job.startsWith("3 "), job);
+        } finally {
+            writer.failures.remove(accountId);
+        }
+    }
+
+    @Test
+    void testStartFuelStatementRun_Ok() {
+        Account account = accountClient.createEmptyAccount();
+        Date month = Date.newBuilder().setYear(1960).setMonth(1).build();
+        FuelStatementRun run = client.startFuelStatementRun(month);
+        assertEquals(month, run.getMonth());
+        assertTrue(run.getAccountCount() >= 1, run.toString());
+        assertEquals(run.getAccountCount(), run.getDoneCount() + run.getPendingCount() + run.getFailedCount());
+        awaitJobs(LocalDate.of(1960, 1, 1), List.of(accountId(account)), "done");
+    }
+
+    @Test
+    void testFuelStatementRun_InvalidArgument() {
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.startFuelStatementRun(Date.newBuilder().setYear(2024).setMonth(13).build()));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.getFuelStatementRun(Date.newBuilder().setYear(2024).setMonth(1).setDay(1).build()));
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.getFuelStatementRun(Date.newBuilder().setYear(1900).setMonth(1).build()));
+    }
+
+    private void ingest(Vehicle vehicle, LocalDate month, String currencyCode, int count) {
+        IngestFuelPurchasesRequest.Builder request = IngestFuelPurchasesRequest.newBuilder().setParent(vehicle.getName());
+        for (int i = 0; i < count; i++) {
+            request.addFuelPurchases(FuelPurchase.newBuilder()
+                    .setPurchaseTime(Timestamps.fromSeconds(month.atStartOfDay(ZoneOffset.UTC).toEpochSecond() + 3600L * i))
+                    .setVolumeLiters(40)
+                    .setPrice(Money.newBuilder().setCurrencyCode(currencyCode).setUnits(70)));
+        }
+        fuelPurchaseClient.ingestFuelPurchases(List.of(request.build()));
+    }
+
+    private void awaitJobs(LocalDate month, List<Long> accountIds, String state) {
+        for (int i = 0; i < 100; i++) {
+            long count = jdbi.withHandle(h -> h.createQuery("select count(*) from fuel_statement_job where month = :month and account_id = any(:account_ids) and state = :state")
+                    .bind("month", month)
+                    .bind("account_ids", accountIds.stream().mapToLong(Long::longValue).toArray())
+                    .bind("state", state)
+                    .mapTo(Long.class)
+                    .one());
+            if (count == accountIds.size()) {
+                return;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new AssertionError("jobs of %s not %s: %s".formatted(month, state, accountIds));
+    }
+
+    /**
+     * Returns {@code attempt_count last_error} of the job.
+     */
+    private String selectJob(LocalDate month, long accountId) {
+        return jdbi.withHandle(h -> h.createQuery("select attempt_count || ' ' || last_error from fuel_statement_job where month = :month and account_id = :account_id")
+                .bind("month", month)
+                .bind("account_id", accountId)
+                .mapTo(String.class)
+                .one());
+    }
+
+    /**
+     * Returns {@code vehicle currency_code purchase_count price_micros volume_liters} of the statement.
+     */
+    private List<String> selectStatement(Account account, LocalDate month) {
+        return jdbi.withHandle(h -> h.createQuery("""
+                        select vehicle_id, currency_code, purchase_count, price_micros, volume_liters
+                        from fuel_statement
+                        where account_id = :account_id and month = :month
+                        order by vehicle_id, currency_code desc
+                        """)
+                .bind("account_id", accountId(account))
+                .bind("month", month)
+                .map(r -> "%s %s %d %d %s".formatted(
+                        new VehicleName(accountId(account), r.getColumn("vehicle_id", Long.class)),
+                        r.getColumn("currency_code", String.class),
+                        r.getColumn("purchase_count", Long.class),
+                        r.getColumn("price_micros", Long.class),
+                        r.getColumn("volume_liters", String.class)))
+                .list());
+    }
+
+    private static long accountId(Account account) {
+        return AccountName.parse(account.getName()).accountId();
+    }
+
+    private static Date month(LocalDate month) {
+        return Date.newBuilder().setYear(month.getYear()).setMonth(month.getMonthValue()).build();
+    }
+}
@@ -1,17 +1,25 @@
 package io.github.jedvardsson.fuelcost.vehicle;
 
 import io.github.jedvardsson.fuelcost.grpc.GrpcChannelWrapper;
+import io.github.jedvardsson.fuelcost.v1.BatchCreateVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchGetVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.DeleteVehicleRequest;
+import io.github.jedvardsson.fuelcost.v1.FuelCostSummary;
+import io.github.jedvardsson.fuelcost.v1.GetFuelCostSummaryRequest;
 import io.github.jedvardsson.fuelcost.v1.GetVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.ListVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.ListVehiclesResponse;
+import io.github.jedvardsson.fuelcost.v1.StreamVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.UpdateVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleChange;
 import io.github.jedvardsson.fuelcost.v1.VehicleServiceGrpc;
+import io.github.jedvardsson.fuelcost.v1.WatchVehiclesRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -33,6 +41,16 @@ public class VehicleClient {
         return vehicleStub.createVehicle(request);
     }
 
+    public List<Vehicle> batchCreateVehicles(BatchCreateVehiclesRequest request) {
+        return vehicleStub.batchCreateVehicles(request).getVehiclesList();
+    }
+
+    public List<Vehicle> batchCreateVehicles(String parent, List<Vehicle> vehicles) {
+        BatchCreateVehiclesRequest.Builder request = BatchCreateVehiclesRequest.newBuilder().setParent(parent);
+        vehicles.forEach(v -> request.addRequestsBuilder().setVehicle(v));
+        return batchCreateVehicles(request.build());
+    }
+
     public Vehicle updateVehicle(UpdateVehicleRequest request) {
         return vehicleStub.updateVehicle(request);
     }
@@ -62,6 +80,18 @@ public class VehicleClient {
         return getVehicle(GetVehicleRequest.newBuilder().setName(name).build());
     }
 
+    public Vehicle getVehicle(String name, String ifNoneMatch) {
+        return getVehicle(GetVehicleRequest.newBuilder().setName(name).setIfNoneMatch(ifNoneMatch).build());
+    }
+
+    public List<Vehicle> batchGetVehicles(BatchGetVehiclesRequest request) {
+        return vehicleStub.batchGetVehicles(request).getVehiclesList();
+    }
+
+    public List<Vehicle> batchGetVehicles(List<String> names) {
+        return batchGetVehicles(BatchGetVehiclesRequest.newBuilder().addAllNames(names).build());
+    }
+
     public ListVehiclesResponse listVehicles(ListVehiclesRequest request) {
         return vehicleStub.listVehicles(request);
     }
@@ -77,4 +107,16 @@ public class VehicleClient {
         ListVehiclesRequest request = ListVehiclesRequest.newBuilder().setParent(parent).setPageSize(pageSize).build();
         return streamVehicles(request).map(ListVehiclesResponse::getVehiclesList);
     }
+
+    public Iterator<Vehicle> streamAllVehicles(String parent) {
+        return vehicleStub.streamVehicles(StreamVehiclesRequest.newBuilder().setParent(parent).build());
+    }
+
+    public Iterator<VehicleChange> watchVehicles(String parent) {
+        return vehicleStub.watchVehicles(WatchVehiclesRequest.newBuilder().setParent(parent).build());
+    }
+
+    public FuelCostSummary getFuelCostSummary(GetFuelCostSummaryRequest request) {
+        return vehicleStub.getFuelCostSummary(request);
+    }
 }
@@ -0,0 +1,106 @@
+package io.github.jedvardsson.fuelcost.vehicle;
+
+import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
+import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.grpc.ProtoHelpers;
+import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.ExportRecord;
+import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The test profile exports through a 4 KB buffer, so that records span many writes to the channel.
+ */
+@SpringBootTest(classes = ApplicationTestConfig.class)
+@ActiveProfiles({"test"})
+@Execution(ExecutionMode.SAME_THREAD)
+class VehicleExportTest {
+
+    private final VehicleExportEndpoint endpoint;
+    private final VehicleClient vehicleClient;
+    private final AccountClient accountClient;
+
+    @Autowired
+    public VehicleExportTest(VehicleExportEndpoint endpoint, VehicleClient vehicleClient, AccountClient accountClient) {
+        this.endpoint = endpoint;
+        this.vehicleClient = vehicleClient;
+        this.accountClient = accountClient;
+    }
+
+    @Test
+    void testExport_Delimited() throws IOException {
+        List<ExportRecord> expected = createAccount();
+
+        VehicleExport.Result result = endpoint.export(null, null);
+        assertEquals(VehicleExport.Format.DELIMITED, result.format());
+        assertFalse(result.compressed());
+        assertTrue(result.file().getFileName().toString().endsWith(".binpb"), result.file().toString());
+        assertEquals(Files.size(result.file()), result.size());
+
+        List<ExportRecord> records = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(result.file())) {
+            ExportRecord record;
+            while ((record = ExportRecord.parseDelimitedFrom(in)) != null) {
+                records.add(record);
+            }
+        }
+        assertRecords(expected, records, result);
+    }
+
+    @Test
+    void testExport_NdjsonCompressed() throws IOException {
+        List<ExportRecord> expected = createAccount();
+
+        VehicleExport.Result result = endpoint.export(VehicleExport.Format.NDJSON, true);
+        assertTrue(result.file().getFileName().toString().endsWith(".ndjson.gz"), result.file().toString());
+
+        List<ExportRecord> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(result.file())), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                records.add(ProtoHelpers.parseJson(line, ExportRecord.newBuilder()).build());
+            }
+        }
+        assertRecords(expected, records, result);
+    }
+
+    private List<ExportRecord> createAccount() {
+        Account account = accountClient.createEmptyAccount();
+        Vehicle vehicle1 = vehicleClient.createVehicle(account.getName(), Vehicle.newBuilder().setDisplayName("Volvo ✓").build());
+        Vehicle vehicle2 = vehicleClient.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+        return List.of(
+                ExportRecord.newBuilder().setAccount(account).build(),
+                ExportRecord.newBuilder().setVehicle(vehicle1).build(),
+                ExportRecord.newBuilder().setVehicle(vehicle2).build());
+    }
+
+    private static void assertRecords(List<ExportRecord> expected, List<ExportRecord> records, VehicleExport.Result result) {
+        int i = records.indexOf(expected.get(0));
+        assertTrue(i >= 0, "account not exported");
+        assertEquals(expected, records.subList(i, i + expected.size()));
+        if (i + expected.size() < records.size()) {
+            assertEquals(ExportRecord.RecordCase.ACCOUNT, records.get(i + expected.size()).getRecordCase());
+        }
+        assertEquals(result.accountCount(), records.stream().filter(ExportRecord::hasAccount).count());
+        assertEquals(result.vehicleCount(), records.stream().filter(ExportRecord::hasVehicle).count());
+    }
+}
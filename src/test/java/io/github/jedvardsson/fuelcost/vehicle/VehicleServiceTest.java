@@ -3,11 +3,16 @@ package io.github.jedvardsson.fuelcost.vehicle;
 import com.google.protobuf.util.Timestamps;
 import io.github.jedvardsson.fuelcost.ApplicationTestConfig;
 import io.github.jedvardsson.fuelcost.account.AccountClient;
+import io.github.jedvardsson.fuelcost.account.AccountName;
 import io.github.jedvardsson.fuelcost.common.VersionEtag;
 import io.github.jedvardsson.fuelcost.grpc.GrpcAssertions;
 import io.github.jedvardsson.fuelcost.v1.Account;
+import io.github.jedvardsson.fuelcost.v1.BatchCreateVehiclesRequest;
+import io.github.jedvardsson.fuelcost.v1.BatchGetVehiclesRequest;
 import io.github.jedvardsson.fuelcost.v1.CreateVehicleRequest;
 import io.github.jedvardsson.fuelcost.v1.Vehicle;
+import io.github.jedvardsson.fuelcost.v1.VehicleChange;
+import io.grpc.Context;
 import io.grpc.Status;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -15,6 +20,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -22,7 +35,9 @@ import java.util.stream.IntStream;
 
 import static java.util.Comparator.comparing;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SuppressWarnings("ThrowableNotThrown")
 @SpringBootTest(classes = ApplicationTestConfig.class)
@@ -30,13 +45,19 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 class VehicleServiceTest {
 
     private final VehicleClient client;
+    private final AccountClient accountClient;
+    private final DataSource dataSource;
+    private final VehicleChangeFeed changeFeed;
     private final Account account1;
     private final Account account2;
 
 
     @Autowired
-    public VehicleServiceTest(VehicleClient client, AccountClient accountClient) {
+    public VehicleServiceTest(VehicleClient client, AccountClient accountClient, DataSource dataSource, VehicleChangeFeed changeFeed) {
         this.client = client;
+        this.accountClient = accountClient;
+        this.dataSource = dataSource;
+        this.changeFeed = changeFeed;
         account1 = accountClient.createEmptyAccount();
         account2 = accountClient.createEmptyAccount();
     }
@@ -85,6 +106,24 @@ class VehicleServiceTest {
         assertEquals(e1, client.getVehicle(e1.getName()));
     }
 
+    @Test
+    void testGet_IfNoneMatch() {
+        Vehicle e1 = client.createVehicle(newCreateVehicleRequest());
+        Vehicle notModified = Vehicle.newBuilder().setName(e1.getName()).setEtag(e1.getEtag()).build();
+        assertEquals(notModified, client.getVehicle(e1.getName(), e1.getEtag()));
+        // with the name formatted, not as requested
+        VehicleName name = VehicleName.parse(e1.getName());
+        String padded = "accounts/0%d/vehicles/0%d".formatted(name.accountId(), name.vehicleId());
+        assertEquals(notModified, client.getVehicle(padded, e1.getEtag()));
+
+        Vehicle e2 = client.updateVehicle(newVehicleForUpdate(e1));
+        assertEquals(e2, client.getVehicle(e1.getName(), e1.getEtag()));
+
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.getVehicle(e1.getName(), "1"));
+        client.deleteVehicle(e1.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.getVehicle(e1.getName(), e2.getEtag()));
+    }
+
     @Test
     void testCreate() {
         CreateVehicleRequest e0 = newCreateVehicleRequest();
@@ -103,6 +142,18 @@ class VehicleServiceTest {
         assertEquals(expected, e1);
     }
 
+    @Test
+    void testCreate_AccountDeletedByOtherNode() throws Exception {
+        Account account = accountClient.createEmptyAccount();
+        accountClient.getAccount(account.getName());
+        // bypasses the account cache of this node
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("delete from account where account_id = " + AccountName.parse(account.getName()).accountId());
+        }
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.createVehicle(account.getName(), Vehicle.getDefaultInstance()));
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.batchCreateVehicles(account.getName(), List.of(Vehicle.getDefaultInstance())));
+    }
+
     @Test
     void testUpdate() {
         Vehicle e1 = client.createVehicle(newCreateVehicleRequest());
@@ -185,4 +236,193 @@ class VehicleServiceTest {
 
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBatchGet_Ok() {
+        Vehicle e1 = client.createVehicle(newCreateVehicleRequest());
+        Vehicle e2 = client.createVehicle(newCreateVehicleRequest().toBuilder().setParent(account2.getName()).build());
+        Vehicle e3 = client.createVehicle(newCreateVehicleRequest());
+
+        assertEquals(List.of(e3, e1, e2, e1), client.batchGetVehicles(List.of(e3.getName(), e1.getName(), e2.getName(), e1.getName())));
+        assertEquals(List.of(), client.batchGetVehicles(List.of()));
+    }
+
+    @Test
+    void testBatchGet_Parent() {
+        Vehicle e1 = client.createVehicle(newCreateVehicleRequest());
+        Vehicle e2 = client.createVehicle(newCreateVehicleRequest().toBuilder().setParent(account2.getName()).build());
+
+        assertEquals(List.of(e1), client.batchGetVehicles(BatchGetVehiclesRequest.newBuilder().setParent(account1.getName()).addNames(e1.getName()).build()));
+        assertEquals(List.of(e1, e2), client.batchGetVehicles(BatchGetVehiclesRequest.newBuilder().setParent("accounts/-").addNames(e1.getName()).addNames(e2.getName()).build()));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.batchGetVehicles(BatchGetVehiclesRequest.newBuilder().setParent(account1.getName()).addNames(e2.getName()).build()));
+    }
+
+    @Test
+    void testBatchGet_NotFound() {
+        Vehicle e1 = client.createVehicle(newCreateVehicleRequest());
+        Vehicle e2 = client.createVehicle(newCreateVehicleRequest());
+        client.deleteVehicle(e2.getName());
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.batchGetVehicles(List.of(e1.getName(), e2.getName())));
+    }
+
+    @Test
+    void testBatchGet_Invalid() {
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.batchGetVehicles(List.of("accounts/1/vehicles/x")));
+        List<String> names = IntStream.range(0, 1001).mapToObj(i -> new VehicleName(1, i + 1).toString()).toList();
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.batchGetVehicles(names));
+    }
+
+    @Test
+    void testBatchCreate_Ok() {
+        List<Vehicle> requested = IntStream.range(0, 50)
+                .mapToObj(i -> i % 3 == 0 ? Vehicle.getDefaultInstance() : Vehicle.newBuilder().setDisplayName("vehicle " + i).build())
+                .toList();
+        List<Vehicle> created = client.batchCreateVehicles(account1.getName(), requested);
+
+        assertEquals(requested.size(), created.size());
+        for (int i = 0; i < requested.size(); i++) {
+            Vehicle e = created.get(i);
+            assertEquals(requested.get(i), e.toBuilder().clearName().clearEtag().clearCreateTime().clearUpdateTime().build());
+            assertEquals(VersionEtag.of(1).toString(), e.getEtag());
+            assertEquals(AccountName.parse(account1.getName()).accountId(), VehicleName.parse(e.getName()).accountId());
+        }
+        assertEquals(created, client.batchGetVehicles(created.stream().map(Vehicle::getName).toList()));
+    }
+
+    @Test
+    void testBatchCreate_Invalid() {
+        Vehicle tooLong = Vehicle.newBuilder().setDisplayName("x".repeat(31)).build();
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.batchCreateVehicles(account1.getName(), List.of(Vehicle.getDefaultInstance(), tooLong)));
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.batchCreateVehicles(BatchCreateVehiclesRequest.newBuilder()
+                .setParent(account1.getName())
+                .addRequests(newCreateVehicleRequest().toBuilder().setParent(account2.getName()))
+                .build()));
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.batchCreateVehicles("accounts/999999999", List.of(Vehicle.getDefaultInstance())));
+    }
+
+    @Test
+    void testStream_Ok() {
+        client.batchCreateVehicles(account2.getName(), List.of(Vehicle.getDefaultInstance()));
+        List<Vehicle> expected = client.batchCreateVehicles(account1.getName(), IntStream.range(0, 25)
+                .mapToObj(i -> Vehicle.newBuilder().setDisplayName("vehicle " + i).build())
+                .toList());
+
+        List<Vehicle> actual = new ArrayList<>();
+        client.streamAllVehicles(account1.getName()).forEachRemaining(actual::add);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testStream_NotFound() {
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.streamAllVehicles("accounts/999999999").hasNext());
+    }
+
+    @Test
+    void testStream_Cancel() throws Exception {
+        client.batchCreateVehicles(account1.getName(), IntStream.range(0, 50).mapToObj(i -> Vehicle.getDefaultInstance()).toList());
+
+        Set<String> cursors;
+        try (Context.CancellableContext context = Context.current().withCancellation()) {
+            cursors = context.call(() -> {
+                Iterator<Vehicle> vehicles = client.streamAllVehicles(account1.getName());
+                for (int i = 0; i < 3; i++) {
+                    vehicles.next();
+                }
+                return streamTransactions();
+            });
+        }
+        assertFalse(cursors.isEmpty());
+
+        // the cursor and its connection are released on cancel
+        Set<String> open = streamTransactions();
+        for (int i = 0; i < 50 && open.stream().anyMatch(cursors::contains); i++) {
+            Thread.sleep(100);
+            open = streamTransactions();
+        }
+        assertTrue(open.stream().noneMatch(cursors::contains), "cursor transaction is still open");
+    }
+
+    /**
+     * Returns the transactions, as pid and start time, of other sessions whose last statement is the vehicle stream.
+     */
+    private Set<String> streamTransactions() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("""
+                     select pid || '@' || xact_start
+                     from pg_stat_activity
+                     where pid <> pg_backend_pid()
+                       and xact_start is not null
+                       and query like '%from vehicle t%order by t.account_id, t.vehicle_id%'
+                     """)) {
+            Set<String> transactions = new HashSet<>();
+            while (rs.next()) {
+                transactions.add(rs.getString(1));
+            }
+            return transactions;
+        }
+    }
+
+    @Test
+    void testWatch_Ok() {
+        long accountId = AccountName.parse(account1.getName()).accountId();
+        try (Context.CancellableContext context = Context.current().withCancellation()) {
+            context.run(() -> {
+                Iterator<VehicleChange> changes = client.watchVehicles(account1.getName());
+                awaitWatchers(accountId, 1);
+
+                Vehicle v1 = client.createVehicle(account1.getName(), Vehicle.newBuilder().setDisplayName("watched").build());
+                assertEquals(VehicleChange.newBuilder().setType(VehicleChange.Type.UPSERT).setVehicle(v1).build(), changes.next());
+
+                // other accounts are not watched
+                client.createVehicle(account2.getName(), Vehicle.getDefaultInstance());
+                Vehicle v2 = client.updateVehicle(v1.toBuilder().setDisplayName("").build());
+                assertEquals(VehicleChange.newBuilder().setType(VehicleChange.Type.UPSERT).setVehicle(v2).build(), changes.next());
+
+                client.deleteVehicle(v2.getName());
+                Vehicle deleted = Vehicle.newBuilder().setName(v2.getName()).setEtag(v2.getEtag()).build();
+                assertEquals(VehicleChange.newBuilder().setType(VehicleChange.Type.DELETE).setVehicle(deleted).build(), changes.next());
+            });
+        }
+        awaitWatchers(accountId, 0);
+    }
+
+    @Test
+    void testWatch_Coalesced() {
+        Account account = accountClient.createEmptyAccount();
+        try (Context.CancellableContext context = Context.current().withCancellation()) {
+            context.run(() -> {
+                Iterator<VehicleChange> changes = client.watchVehicles(account.getName());
+                awaitWatchers(AccountName.parse(account.getName()).accountId(), 1);
+
+                Vehicle vehicle = client.createVehicle(account.getName(), Vehicle.getDefaultInstance());
+                for (int i = 0; i < 10; i++) {
+                    vehicle = client.updateVehicle(vehicle.toBuilder().setDisplayName("update " + i).build());
+                }
+
+                // changes not yet requested by the client are replaced by later ones
+                List<VehicleChange> received = new ArrayList<>();
+                do {
+                    received.add(changes.next());
+                } while (!received.getLast().getVehicle().equals(vehicle));
+                assertTrue(received.size() < 11, "received " + received.size());
+            });
+        }
+    }
+
+    @Test
+    void testWatch_NotFound() {
+        GrpcAssertions.assertThrows(Status.Code.NOT_FOUND, () -> client.watchVehicles("accounts/999999999").hasNext());
+        GrpcAssertions.assertThrows(Status.Code.INVALID_ARGUMENT, () -> client.watchVehicles("").hasNext());
+    }
+
+    private void awaitWatchers(long accountId, int count) {
+        for (int i = 0; i < 50 && changeFeed.getWatcherCount(accountId) != count; i++) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        assertEquals(count, changeFeed.getWatcherCount(accountId));
+    }
+}